@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2024 Licensed under the Apache License, Version 2.0
+ */
+package nl.beeldengeluid.mapping.processor;
+
+import java.util.*;
+
+import javax.lang.model.element.*;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+
+import static nl.beeldengeluid.mapping.processor.SourceAnnotationProcessor.stringList;
+
+/**
+ * Produces the source code of one {@code PrecompiledMapper}.
+ *
+ * @author Michiel Meeuwissen
+ * @since 0.8
+ */
+class MapperSourceWriter {
+
+    private static final String PACKAGE = "nl.beeldengeluid.mapping.";
+
+    private final Elements elements;
+    private final PackageElement pkg;
+    private final TypeElement source;
+    private final TypeElement destination;
+    private final boolean json;
+    private final String simpleName;
+
+    private final StringBuilder constants = new StringBuilder();
+    private final StringBuilder body = new StringBuilder();
+    private int count = 0;
+
+    MapperSourceWriter(Elements elements, PackageElement pkg, TypeElement source, TypeElement destination, boolean json) {
+        this.elements = elements;
+        this.pkg = pkg;
+        this.source = source;
+        this.destination = destination;
+        this.json = json;
+        this.simpleName = flatName(destination) + "_From_" + flatName(source) + "_Mapper";
+    }
+
+    /**
+     * How to get a value for a field, for one matching {@code @Source} annotation.
+     * @param effective The values of the effective source
+     * @param reads Expressions to read the value from the source object, and following the path (empty for json sources)
+     * @param subJson Whether a json pointer or json path must be applied on the value
+     */
+    record Getter(Map<String, Object> effective, List<String> reads, boolean subJson) {
+    }
+
+    String qualifiedName() {
+        return pkg.isUnnamed() ? simpleName : pkg.getQualifiedName() + "." + simpleName;
+    }
+
+    void field(VariableElement field, TypeMirror type, String write, List<Getter> getters) {
+        body.append("        // ").append(field.getSimpleName()).append('\n');
+        body.append("        value = null;\n");
+        for (Getter getter : getters) {
+            int i = count++;
+            constants.append("    private static final ").append(PACKAGE).append("EffectiveSource ES_").append(i).append(" = ").append(effectiveSource(getter.effective())).append(";\n");
+            constants.append("    private static final ").append(PACKAGE).append("MappedField MF_").append(i).append(" = ").append(PACKAGE).append("MappedField.of(")
+                .append(((TypeElement) field.getEnclosingElement()).getQualifiedName()).append(".class, \"").append(field.getSimpleName()).append("\", ES_").append(i).append(");\n");
+            if (json) {
+                constants.append("    private static final java.util.function.Function<Object, java.util.Optional<Object>> G_").append(i).append(" = ").append(PACKAGE).append("PrecompiledMapper.jsonGetter(ES_").append(i).append(");\n");
+                body.append("        v = G_").append(i).append(".apply(source).orElse(null);\n");
+            } else {
+                List<String> reads = getter.reads();
+                body.append("        v = source").append(reads.get(0)).append(";\n");
+                for (String read : reads.subList(1, reads.size())) {
+                    body.append("        if (v != null) {\n");
+                    body.append("            v = ").append(read).append(";\n");
+                    body.append("        }\n");
+                }
+                if (getter.subJson()) {
+                    body.append("        if (v != null) {\n");
+                    body.append("            v = ").append(PACKAGE).append("PrecompiledMapper.jsonValue(ES_").append(i).append(", v);\n");
+                    body.append("        }\n");
+                }
+            }
+            body.append("        if (v != null) {\n");
+            body.append("            value = mapper.mapLeafOrValue(MF_").append(i).append(", ES_").append(i).append(", v, result);\n");
+            body.append("        }\n");
+        }
+        body.append("        if (value != null) {\n");
+        body.append("            try {\n");
+        body.append("                ").append(write).append(cast(type)).append(") value").append(write.endsWith("((") ? ")" : "").append(";\n");
+        body.append("            } catch (ClassCastException cce) {\n");
+        body.append("                // value of wrong type, not set, like Mapper would do\n");
+        body.append("            }\n");
+        body.append("        }\n");
+    }
+
+    private String effectiveSource(Map<String, Object> effective) {
+        StringBuilder result = new StringBuilder(PACKAGE + "EffectiveSource.builder()");
+        for (Map.Entry<String, Object> e : effective.entrySet()) {
+            result.append("\n        .").append(e.getKey()).append('(');
+            if (e.getKey().equals("leafMappers")) {
+                StringJoiner joiner = new StringJoiner(", ", "java.util.List.of(", ")");
+                for (String leafMapper : stringList(e.getValue())) {
+                    joiner.add(PACKAGE + "EffectiveSource.instantiateMapper(" + leafMapper + ".class)");
+                }
+                result.append(joiner);
+            } else if (e.getKey().equals("sourceClass")) {
+                result.append(e.getValue()).append(".class");
+            } else if (e.getValue() instanceof List<?> list) {
+                StringJoiner joiner = new StringJoiner(", ", "java.util.List.of(", ")");
+                for (Object o : list) {
+                    joiner.add(elements.getConstantExpression(o));
+                }
+                result.append(joiner);
+            } else {
+                result.append(elements.getConstantExpression(e.getValue()));
+            }
+            result.append(')');
+        }
+        return result.append("\n        .build()").toString();
+    }
+
+    private static String cast(TypeMirror type) {
+        return switch (type.getKind()) {
+            case BOOLEAN -> "java.lang.Boolean";
+            case BYTE -> "java.lang.Byte";
+            case SHORT -> "java.lang.Short";
+            case INT -> "java.lang.Integer";
+            case LONG -> "java.lang.Long";
+            case CHAR -> "java.lang.Character";
+            case FLOAT -> "java.lang.Float";
+            case DOUBLE -> "java.lang.Double";
+            default -> type.toString();
+        };
+    }
+
+    private static String flatName(TypeElement type) {
+        StringBuilder result = new StringBuilder(type.getSimpleName());
+        for (Element e = type.getEnclosingElement(); e instanceof TypeElement t; e = t.getEnclosingElement()) {
+            result.insert(0, t.getSimpleName() + "_");
+        }
+        return result.toString();
+    }
+
+    @Override
+    public String toString() {
+        String s = source.getQualifiedName().toString();
+        String d = destination.getQualifiedName().toString();
+        StringBuilder result = new StringBuilder();
+        if (!pkg.isUnnamed()) {
+            result.append("package ").append(pkg.getQualifiedName()).append(";\n\n");
+        }
+        result.append("/**\n");
+        result.append(" * Maps {@link ").append(s).append("} to {@link ").append(d).append("}.\n");
+        result.append(" * <p>\n");
+        result.append(" * Generated by {@code ").append(SourceAnnotationProcessor.class.getName()).append("}, from the {@code @Source} annotations on {@code ").append(destination.getSimpleName()).append("}.\n");
+        result.append(" */\n");
+        result.append("public final class ").append(simpleName).append(" implements ").append(PACKAGE).append("PrecompiledMapper<").append(s).append(", ").append(d).append("> {\n\n");
+        result.append(constants).append('\n');
+        result.append("    @Override\n");
+        result.append("    public Class<").append(s).append("> sourceClass() {\n");
+        result.append("        return ").append(s).append(".class;\n");
+        result.append("    }\n\n");
+        result.append("    @Override\n");
+        result.append("    public Class<").append(d).append("> destinationClass() {\n");
+        result.append("        return ").append(d).append(".class;\n");
+        result.append("    }\n\n");
+        if (json) {
+            result.append("    @Override\n");
+            result.append("    public boolean appliesTo(Class<?> sourceClass) {\n");
+            result.append("        return ").append(s).append(".class.isAssignableFrom(sourceClass);\n");
+            result.append("    }\n\n");
+        }
+        result.append("    @Override\n");
+        result.append("    @SuppressWarnings({\"unchecked\", \"rawtypes\"})\n");
+        result.append("    public void map(").append(PACKAGE).append("Mapper mapper, ").append(s).append(" source, ").append(d).append(" destination) {\n");
+        if (count > 0) {
+            result.append("        Object value;\n");
+            result.append("        Object v;\n");
+            result.append("        ").append(PACKAGE).append("LeafResult result = new ").append(PACKAGE).append("LeafResult();\n");
+        }
+        result.append(body);
+        result.append("    }\n\n");
+        result.append("    @Override\n");
+        result.append("    public String toString() {\n");
+        result.append("        return \"").append(simpleName).append("\";\n");
+        result.append("    }\n");
+        result.append("}\n");
+        return result.toString();
+    }
+}
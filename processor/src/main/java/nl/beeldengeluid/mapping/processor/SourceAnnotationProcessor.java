@@ -0,0 +1,505 @@
+/*
+ * Copyright (C) 2024 Licensed under the Apache License, Version 2.0
+ */
+package nl.beeldengeluid.mapping.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.annotation.RetentionPolicy;
+import java.util.*;
+
+import javax.annotation.processing.*;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.*;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Generates a {@code nl.beeldengeluid.mapping.PrecompiledMapper} for every class with {@code @Source} annotated fields, and every explicitly mentioned {@code sourceClass}.
+ * <p>
+ * The generated mappers are registered in {@code META-INF/services}, so that {@code Mapper} finds them and does not need reflection for these class pairs. They do exactly what the reflective mapping would do:
+ * <ul>
+ *     <li>The same rules are used to find matching {@code @Source} annotations, including the defaults on class level and {@code @Source} annotations on other annotations</li>
+ *     <li>If more than one {@code @Source} annotation matches, the last one that produces a value wins</li>
+ *     <li>All values go through {@code Mapper#mapLeafOrValue}, so the leaf mappers of the mapper and of the annotations are applied</li>
+ * </ul>
+ * Fields are read and written directly, or via getters and setters. If that is not possible (e.g. because a field is private and has no accessors), no mapper is generated for the class pair, and mapping just happens reflectively for it.
+ * <p>
+ * This processor only works on the names of the annotations, so it does not need {@code mapping-annotations} on its own class path.
+ *
+ * @author Michiel Meeuwissen
+ * @since 0.8
+ */
+@SupportedAnnotationTypes("*")
+public class SourceAnnotationProcessor extends AbstractProcessor {
+
+    static final String SOURCE = "nl.beeldengeluid.mapping.annotations.Source";
+    static final String SOURCES = "nl.beeldengeluid.mapping.annotations.Sources";
+    static final String JSON_NODE = "com.fasterxml.jackson.databind.JsonNode";
+    static final String SERVICE = "META-INF/services/nl.beeldengeluid.mapping.PrecompiledMapper";
+    static final String UNSET = "#UNSET";
+
+    private final Set<String> generated = new TreeSet<>();
+
+    private Elements elements;
+    private Types types;
+    private Messager messager;
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        this.elements = processingEnv.getElementUtils();
+        this.types = processingEnv.getTypeUtils();
+        this.messager = processingEnv.getMessager();
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        TypeElement source = elements.getTypeElement(SOURCE);
+        if (source != null) {
+            for (Element element : roundEnv.getRootElements()) {
+                scan(element);
+            }
+        }
+        if (roundEnv.processingOver() && !generated.isEmpty()) {
+            writeServices();
+        }
+        return false;
+    }
+
+    private void scan(Element element) {
+        if (element.getKind() == ElementKind.CLASS) {
+            destination((TypeElement) element);
+        }
+        for (Element enclosed : element.getEnclosedElements()) {
+            if (enclosed instanceof TypeElement) {
+                scan(enclosed);
+            }
+        }
+    }
+
+    /**
+     * Generates the mappers for one destination class, one per explicitly mentioned source class.
+     */
+    private void destination(TypeElement destination) {
+        Map<VariableElement, List<Map<String, Object>>> sources = new LinkedHashMap<>();
+        Map<String, Object> classDefaults = classDefaults(destination);
+        for (VariableElement field : fields(destination)) {
+            List<Map<String, Object>> effective = new ArrayList<>();
+            for (AnnotationMirror mirror : sourceAnnotations(field, new HashSet<>(), new ArrayList<>())) {
+                effective.add(effective(values(mirror), classDefaults));
+            }
+            if (!effective.isEmpty()) {
+                sources.put(field, effective);
+            }
+        }
+        if (sources.isEmpty()) {
+            return;
+        }
+        String reason = unsupported(destination);
+        if (reason != null) {
+            note(destination, "No mapper generated for " + destination + ": " + reason);
+            return;
+        }
+        Set<String> sourceClasses = new LinkedHashSet<>();
+        sources.values().forEach(list -> list.forEach(s -> sourceClasses.add((String) s.get("sourceClass"))));
+        sourceClasses.remove(Object.class.getName());
+        for (String sourceClass : sourceClasses) {
+            TypeElement sourceElement = elements.getTypeElement(sourceClass);
+            if (sourceElement == null) {
+                continue;
+            }
+            String sourceReason = sourceElement.getKind().isInterface() ? null : unsupported(sourceElement);
+            if (sourceReason != null) {
+                note(destination, "No mapper generated for " + sourceClass + " -> " + destination + ": " + sourceReason);
+                continue;
+            }
+            generate(destination, sourceElement, sources);
+        }
+    }
+
+    private void generate(TypeElement destination, TypeElement source, Map<VariableElement, List<Map<String, Object>>> sources) {
+        PackageElement pkg = elements.getPackageOf(destination);
+        boolean json = isJson(source);
+        MapperSourceWriter writer = new MapperSourceWriter(elements, pkg, source, destination, json);
+        for (Map.Entry<VariableElement, List<Map<String, Object>>> entry : sources.entrySet()) {
+            VariableElement field = entry.getKey();
+            List<MapperSourceWriter.Getter> getters = new ArrayList<>();
+            for (Map<String, Object> effective : entry.getValue()) {
+                if (!matches(source, effective, field, json)) {
+                    continue;
+                }
+                String sourceFieldName = (String) effective.get("field");
+                if (sourceFieldName.equals(UNSET)) {
+                    sourceFieldName = field.getSimpleName().toString();
+                }
+                boolean subJson = !(UNSET.equals(effective.get("jsonPointer")) && UNSET.equals(effective.get("jsonPath")));
+                List<String> reads = new ArrayList<>();
+                if (!json) {
+                    String problem = reads(source, sourceFieldName, stringList(effective.get("path")), pkg, reads);
+                    if (problem != null) {
+                        note(field, "No mapper generated for " + source + " -> " + destination + ": " + problem);
+                        return;
+                    }
+                }
+                if (json && !subJson) {
+                    // nothing to read from a json node then
+                    continue;
+                }
+                getters.add(new MapperSourceWriter.Getter(effective, reads, subJson));
+            }
+            if (getters.isEmpty()) {
+                continue;
+            }
+            String write = write(destination, field, pkg);
+            if (write == null) {
+                note(field, "No mapper generated for " + source + " -> " + destination + ": " + field.getSimpleName() + " cannot be set");
+                return;
+            }
+            if (!accessible((TypeElement) field.getEnclosingElement(), pkg)) {
+                note(field, "No mapper generated for " + source + " -> " + destination + ": " + field.getEnclosingElement() + " is not accessible");
+                return;
+            }
+            writer.field(field, types.erasure(field.asType()), write, getters);
+        }
+        String qualifiedName = writer.qualifiedName();
+        try {
+            try (Writer w = processingEnv.getFiler().createSourceFile(qualifiedName, destination, source).openWriter()) {
+                w.write(writer.toString());
+            }
+            generated.add(qualifiedName);
+        } catch (FilerException fe) {
+            // generated already (e.g. in an earlier round)
+        } catch (IOException ioe) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "Could not write " + qualifiedName + ": " + ioe.getMessage(), destination);
+        }
+    }
+
+    private void writeServices() {
+        try {
+            FileObject resource = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", SERVICE);
+            try (Writer w = resource.openWriter()) {
+                for (String name : generated) {
+                    w.write(name);
+                    w.write('\n');
+                }
+            }
+        } catch (IOException ioe) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "Could not write " + SERVICE + ": " + ioe.getMessage());
+        }
+    }
+
+    /**
+     * Like {@code Util#matches}
+     */
+    private boolean matches(TypeElement source, Map<String, Object> effective, VariableElement destinationField, boolean json) {
+        TypeElement sourceClass = elements.getTypeElement((String) effective.get("sourceClass"));
+        if (sourceClass == null || !types.isSubtype(types.erasure(source.asType()), types.erasure(sourceClass.asType()))) {
+            return false;
+        }
+        String field = (String) effective.get("field");
+        if (field.equals(UNSET)) {
+            if (json) {
+                return true;
+            }
+            field = destinationField.getSimpleName().toString();
+        }
+        return findField(source, field) != null;
+    }
+
+    /**
+     * Determines the expressions to read a value from the source, on field, and then following the path. The first expression is applied to {@code source}, the others to the result of the previous one.
+     * @return {@code null} if successful, otherwise the reason why it is not possible
+     */
+    private String reads(TypeElement source, String fieldName, List<String> path, PackageElement pkg, List<String> result) {
+        TypeElement current = source;
+        List<String> names = new ArrayList<>();
+        names.add(fieldName);
+        names.addAll(path);
+        for (int i = 0; i < names.size(); i++) {
+            String name = names.get(i);
+            if (current == null) {
+                return "cannot follow path to " + name;
+            }
+            VariableElement field = findField(current, name);
+            if (field == null) {
+                return current + " has no field " + name;
+            }
+            String read = read(current, field, pkg);
+            if (read == null) {
+                return current + "#" + name + " cannot be read";
+            }
+            if (i > 0) {
+                if (!accessible(current, pkg)) {
+                    return current + " is not accessible";
+                }
+                read = "((" + current.getQualifiedName() + ") v)" + read;
+            }
+            result.add(read);
+            TypeMirror type = types.erasure(field.asType());
+            current = type.getKind() == TypeKind.DECLARED ? (TypeElement) types.asElement(type) : null;
+        }
+        return null;
+    }
+
+    /**
+     * @return An expression to be appended to an object of type {@code type} to read the field, or {@code null}
+     */
+    private String read(TypeElement type, VariableElement field, PackageElement pkg) {
+        if (accessible(field, pkg)) {
+            return "." + field.getSimpleName();
+        }
+        String name = field.getSimpleName().toString();
+        List<String> candidates = List.of(name, "get" + capitalize(name), "is" + capitalize(name));
+        for (ExecutableElement method : methods(type)) {
+            if (method.getParameters().isEmpty() && method.getReturnType().getKind() != TypeKind.VOID && candidates.contains(method.getSimpleName().toString()) && accessible(method, pkg)) {
+                return "." + method.getSimpleName() + "()";
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The start of a statement setting the field, to be completed with the value and {@code );}, or {@code null}
+     */
+    private String write(TypeElement destination, VariableElement field, PackageElement pkg) {
+        if (accessible(field, pkg) && !field.getModifiers().contains(Modifier.FINAL)) {
+            return "destination." + field.getSimpleName() + " = (";
+        }
+        String name = field.getSimpleName().toString();
+        List<String> candidates = List.of("set" + capitalize(name), name);
+        TypeMirror fieldType = types.erasure(field.asType());
+        for (ExecutableElement method : methods(destination)) {
+            if (method.getParameters().size() == 1 && candidates.contains(method.getSimpleName().toString())
+                && types.isSameType(types.erasure(method.getParameters().get(0).asType()), fieldType)
+                && accessible(method, pkg)) {
+                return "destination." + method.getSimpleName() + "((";
+            }
+        }
+        return null;
+    }
+
+    private List<ExecutableElement> methods(TypeElement type) {
+        List<ExecutableElement> result = new ArrayList<>();
+        for (Element member : elements.getAllMembers(type)) {
+            if (member.getKind() == ElementKind.METHOD && !member.getModifiers().contains(Modifier.STATIC)) {
+                result.add((ExecutableElement) member);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Like {@code Util#getSourceField}, finds a (non-static) field in the class or its super classes.
+     */
+    private VariableElement findField(TypeElement type, String name) {
+        while (type != null) {
+            for (Element member : type.getEnclosedElements()) {
+                if (member.getKind() == ElementKind.FIELD && !member.getModifiers().contains(Modifier.STATIC) && member.getSimpleName().contentEquals(name)) {
+                    return (VariableElement) member;
+                }
+            }
+            type = superClass(type);
+        }
+        return null;
+    }
+
+    /**
+     * The non-static fields of the class and its super classes, the ones of super classes first. Like the order in which {@code MappingPlan} maps them.
+     */
+    private List<VariableElement> fields(TypeElement type) {
+        List<VariableElement> result = new ArrayList<>();
+        TypeElement superClass = superClass(type);
+        if (superClass != null) {
+            result.addAll(fields(superClass));
+        }
+        for (Element member : type.getEnclosedElements()) {
+            if (member.getKind() == ElementKind.FIELD && !member.getModifiers().contains(Modifier.STATIC)) {
+                result.add((VariableElement) member);
+            }
+        }
+        return result;
+    }
+
+    private TypeElement superClass(TypeElement type) {
+        TypeMirror superClass = type.getSuperclass();
+        if (superClass.getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+        return (TypeElement) types.asElement(superClass);
+    }
+
+    /**
+     * The values of the {@code @Source} annotation on the class, or one of its super classes. Like {@code Util#getAnnotation}.
+     */
+    private Map<String, Object> classDefaults(TypeElement destination) {
+        for (TypeElement type = destination; type != null; type = superClass(type)) {
+            for (AnnotationMirror mirror : type.getAnnotationMirrors()) {
+                if (name(mirror).equals(SOURCE)) {
+                    return values(mirror);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * All {@code @Source} annotations on the element, also the ones on other (runtime retained) annotations on it. Like {@code Util#getAllSourceAnnotations}.
+     */
+    private List<AnnotationMirror> sourceAnnotations(Element element, Set<String> dealtWith, List<AnnotationMirror> result) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            String name = name(mirror);
+            if (name.equals(SOURCE)) {
+                result.add(mirror);
+            } else if (name.equals(SOURCES)) {
+                for (Object value : (List<?>) valueOf(mirror, "value").getValue()) {
+                    result.add((AnnotationMirror) ((AnnotationValue) value).getValue());
+                }
+            } else if (dealtWith.add(name)) {
+                Element annotationType = mirror.getAnnotationType().asElement();
+                if (runtimeRetained(annotationType)) {
+                    sourceAnnotations(annotationType, dealtWith, result);
+                }
+            }
+        }
+        return result;
+    }
+
+    private boolean runtimeRetained(Element annotationType) {
+        for (AnnotationMirror mirror : annotationType.getAnnotationMirrors()) {
+            if (name(mirror).equals("java.lang.annotation.Retention")) {
+                return valueOf(mirror, "value").getValue().toString().equals(RetentionPolicy.RUNTIME.name());
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Like {@code EffectiveSource#of}: attributes with their default value are taken from the class level annotation
+     */
+    private Map<String, Object> effective(Map<String, Object> source, Map<String, Object> classDefaults) {
+        Map<String, Object> defaults = defaults();
+        if (classDefaults == null) {
+            classDefaults = defaults;
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> e : source.entrySet()) {
+            if (Objects.equals(e.getValue(), defaults.get(e.getKey()))) {
+                result.put(e.getKey(), classDefaults.get(e.getKey()));
+            } else {
+                result.put(e.getKey(), e.getValue());
+            }
+        }
+        return result;
+    }
+
+    private Map<String, Object> defaults() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        for (Element element : elements.getTypeElement(SOURCE).getEnclosedElements()) {
+            if (element instanceof ExecutableElement method && method.getDefaultValue() != null) {
+                result.put(method.getSimpleName().toString(), normalize(method.getDefaultValue()));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The values of all attributes of an annotation, class values are represented by their name, arrays by lists.
+     */
+    private Map<String, Object> values(AnnotationMirror mirror) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> e : elements.getElementValuesWithDefaults(mirror).entrySet()) {
+            result.put(e.getKey().getSimpleName().toString(), normalize(e.getValue()));
+        }
+        return result;
+    }
+
+    private Object normalize(AnnotationValue annotationValue) {
+        Object value = annotationValue.getValue();
+        if (value instanceof TypeMirror type) {
+            return types.erasure(type).toString();
+        }
+        if (value instanceof List<?> list) {
+            List<Object> result = new ArrayList<>();
+            for (Object o : list) {
+                result.add(normalize((AnnotationValue) o));
+            }
+            return result;
+        }
+        return value;
+    }
+
+    private AnnotationValue valueOf(AnnotationMirror mirror, String name) {
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> e : elements.getElementValuesWithDefaults(mirror).entrySet()) {
+            if (e.getKey().getSimpleName().contentEquals(name)) {
+                return e.getValue();
+            }
+        }
+        throw new IllegalArgumentException(mirror + " has no " + name);
+    }
+
+    private static String name(AnnotationMirror mirror) {
+        return ((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    static List<String> stringList(Object value) {
+        return (List<String>) value;
+    }
+
+    private boolean isJson(TypeElement source) {
+        TypeElement jsonNode = elements.getTypeElement(JSON_NODE);
+        return jsonNode != null && types.isSubtype(types.erasure(source.asType()), types.erasure(jsonNode.asType()));
+    }
+
+    /**
+     * @return {@code null} if a mapper can be generated with this class as source or destination, otherwise the reason why not
+     */
+    private String unsupported(TypeElement type) {
+        if (type.getModifiers().contains(Modifier.ABSTRACT) && !isJson(type)) {
+            return "it is abstract";
+        }
+        if (!type.getTypeParameters().isEmpty()) {
+            return "it is generic";
+        }
+        if (type.getNestingKind() == NestingKind.MEMBER && !type.getModifiers().contains(Modifier.STATIC)) {
+            return "it is an inner class";
+        }
+        if (type.getNestingKind() == NestingKind.LOCAL || type.getNestingKind() == NestingKind.ANONYMOUS) {
+            return "it is not a member";
+        }
+        if (!accessible(type, elements.getPackageOf(type))) {
+            return "it is private";
+        }
+        return null;
+    }
+
+    private boolean accessible(Element element, PackageElement from) {
+        Set<Modifier> modifiers = element.getModifiers();
+        if (modifiers.contains(Modifier.PRIVATE)) {
+            return false;
+        }
+        Element enclosing = element.getEnclosingElement();
+        if (!modifiers.contains(Modifier.PUBLIC) && !elements.getPackageOf(element).equals(from)) {
+            return false;
+        }
+        return !(enclosing instanceof TypeElement) || accessible(enclosing, from);
+    }
+
+    private void note(Element element, String message) {
+        messager.printMessage(Diagnostic.Kind.NOTE, message, element);
+    }
+
+    private static String capitalize(String name) {
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+}
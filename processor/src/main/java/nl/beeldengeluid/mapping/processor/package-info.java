@@ -0,0 +1,4 @@
+/**
+ * Contains an annotation processor that generates {@code nl.beeldengeluid.mapping.PrecompiledMapper}s for classes with {@code @Source} annotations.
+ */
+package nl.beeldengeluid.mapping.processor;
@@ -0,0 +1,227 @@
+package nl.beeldengeluid.mapping.processor;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import javax.tools.*;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import nl.beeldengeluid.mapping.Mapper;
+import nl.beeldengeluid.mapping.PrecompiledMapper;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compiles some classes with {@link SourceAnnotationProcessor}, and checks whether the generated mappers do the same as the reflective ones.
+ */
+class SourceAnnotationProcessorTest {
+
+    static final Map<String, String> SOURCES = Map.of(
+        "test.Sub", """
+            package test;
+            public class Sub {
+                public Long id;
+            }
+            """,
+        "test.Src", """
+            package test;
+            public class Src {
+                public String title;
+                public String json;
+                public Sub sub;
+                private long count;
+                private String hidden;
+                public long getCount() {
+                    return count;
+                }
+                public Src count(long count) {
+                    this.count = count;
+                    return this;
+                }
+            }
+            """,
+        "test.Meta", """
+            package test;
+            import java.lang.annotation.*;
+            import nl.beeldengeluid.mapping.annotations.Source;
+            @Retention(RetentionPolicy.RUNTIME)
+            @Source(field = "json", jsonPointer = "/b")
+            public @interface Meta {
+            }
+            """,
+        "test.Dest", """
+            package test;
+            import com.fasterxml.jackson.databind.JsonNode;
+            import nl.beeldengeluid.mapping.annotations.Source;
+            @Source(sourceClass = Src.class)
+            public class Dest {
+                @Source
+                public String title;
+                @Source(field = "json", jsonPointer = "/a")
+                String a;
+                @Meta
+                String b;
+                @Source(field = "sub", path = "id")
+                Long id;
+                @Source
+                private Long count;
+                @Source(sourceClass = JsonNode.class, jsonPointer = "/x")
+                String x;
+                String notMapped;
+
+                public void setCount(Long count) {
+                    this.count = count;
+                }
+                public Long getCount() {
+                    return count;
+                }
+            }
+            """,
+        "test.Hidden", """
+            package test;
+            import nl.beeldengeluid.mapping.annotations.Source;
+            public class Hidden {
+                @Source(sourceClass = Src.class)
+                String hidden;
+            }
+            """
+    );
+
+    @TempDir
+    static Path output;
+
+    static List<Diagnostic<? extends JavaFileObject>> diagnostics;
+
+    static ClassLoader classLoader;
+
+    @BeforeAll
+    static void compile() throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> collector = new DiagnosticCollector<>();
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(collector, Locale.ROOT, StandardCharsets.UTF_8)) {
+            fileManager.setLocation(StandardLocation.CLASS_OUTPUT, List.of(output.toFile()));
+            fileManager.setLocation(StandardLocation.SOURCE_OUTPUT, List.of(output.toFile()));
+            List<JavaFileObject> units = SOURCES.entrySet().stream()
+                .map(e -> (JavaFileObject) new Unit(e.getKey(), e.getValue()))
+                .toList();
+            JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, collector,
+                List.of("-classpath", classPath()), null, units);
+            task.setProcessors(List.of(new SourceAnnotationProcessor()));
+            assertThat(task.call()).withFailMessage(() -> collector.getDiagnostics().toString()).isTrue();
+        }
+        diagnostics = collector.getDiagnostics();
+        classLoader = new URLClassLoader(new java.net.URL[] {output.toUri().toURL()}, SourceAnnotationProcessorTest.class.getClassLoader());
+    }
+
+    @Test
+    void services() throws IOException {
+        assertThat(Files.readAllLines(output.resolve("META-INF/services/nl.beeldengeluid.mapping.PrecompiledMapper"))).containsExactly(
+            "test.Dest_From_JsonNode_Mapper",
+            "test.Dest_From_Src_Mapper"
+        );
+    }
+
+    @Test
+    void notGenerated() {
+        assertThat(Files.exists(output.resolve("test/Hidden_From_Src_Mapper.java"))).isFalse();
+        assertThat(diagnostics.stream().map(d -> d.getMessage(Locale.ROOT)))
+            .contains("No mapper generated for test.Src -> test.Hidden: test.Src#hidden cannot be read");
+    }
+
+    @Test
+    void map() throws Exception {
+        Class<?> srcClass = classLoader.loadClass("test.Src");
+        Class<?> subClass = classLoader.loadClass("test.Sub");
+        Class<?> destClass = classLoader.loadClass("test.Dest");
+        Object src = srcClass.getConstructor().newInstance();
+        Object sub = subClass.getConstructor().newInstance();
+        subClass.getField("id").set(sub, 5L);
+        srcClass.getField("title").set(src, "title");
+        srcClass.getField("json").set(src, "{\"a\": \"A\", \"b\": \"B\"}");
+        srcClass.getField("sub").set(src, sub);
+        srcClass.getMethod("count", long.class).invoke(src, 10L);
+
+        PrecompiledMapper<Object, Object> precompiled = mapper("test.Dest_From_Src_Mapper");
+        assertThat(precompiled.sourceClass()).isEqualTo(srcClass);
+        assertThat(precompiled.destinationClass()).isEqualTo(destClass);
+
+        Mapper reflective = Mapper.MAPPER.withUsesPrecompiledMappers(false);
+        Object generated = destClass.getConstructor().newInstance();
+        precompiled.map(reflective, src, generated);
+        Object expected = reflective.map(src, destClass);
+
+        for (String field : List.of("title", "a", "b", "id", "count")) {
+            assertThat(get(generated, field)).isEqualTo(get(expected, field));
+        }
+        assertThat(get(generated, "title")).isEqualTo("title");
+        assertThat(get(generated, "a")).isEqualTo("A");
+        assertThat(get(generated, "b")).isEqualTo("B");
+        assertThat(get(generated, "id")).isEqualTo(5L);
+        assertThat(get(generated, "count")).isEqualTo(10L);
+        assertThat(get(generated, "x")).isNull();
+    }
+
+    @Test
+    void json() throws Exception {
+        Class<?> destClass = classLoader.loadClass("test.Dest");
+        PrecompiledMapper<Object, Object> precompiled = mapper("test.Dest_From_JsonNode_Mapper");
+        Object json = new ObjectMapper().readTree("{\"x\": \"X\", \"title\": \"ignored\"}");
+        assertThat(precompiled.appliesTo(json.getClass())).isTrue();
+
+        Object generated = destClass.getConstructor().newInstance();
+        precompiled.map(Mapper.MAPPER, json, generated);
+        assertThat(get(generated, "x")).isEqualTo("X");
+        assertThat(get(generated, "title")).isNull();
+    }
+
+    /**
+     * The class path of the test may be hidden in a manifest, or not contain the libraries at all, so explicitly add the jars of the needed classes.
+     */
+    static String classPath() {
+        StringJoiner result = new StringJoiner(java.io.File.pathSeparator);
+        result.add(System.getProperty("java.class.path"));
+        for (Class<?> c : List.of(Mapper.class, ObjectMapper.class, com.fasterxml.jackson.core.JsonParser.class, com.fasterxml.jackson.annotation.JsonProperty.class)) {
+            try {
+                result.add(Path.of(c.getProtectionDomain().getCodeSource().getLocation().toURI()).toString());
+            } catch (java.net.URISyntaxException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return result.toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    static PrecompiledMapper<Object, Object> mapper(String name) throws ReflectiveOperationException {
+        return (PrecompiledMapper<Object, Object>) classLoader.loadClass(name).getConstructor().newInstance();
+    }
+
+    static Object get(Object object, String field) throws ReflectiveOperationException {
+        java.lang.reflect.Field f = object.getClass().getDeclaredField(field);
+        f.setAccessible(true);
+        return f.get(object);
+    }
+
+    static class Unit extends SimpleJavaFileObject {
+        private final String code;
+
+        Unit(String name, String code) {
+            super(URI.create("string:///" + name.replace('.', '/') + Kind.SOURCE.extension), Kind.SOURCE);
+            this.code = code;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return code;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 /**
  * See {@link Mapper}
+ * <p>
+ * Fields are accessed using {@link java.lang.invoke.MethodHandle}s. If source or destination classes live in a named module, that module should either open its packages to this one, or a {@link java.lang.invoke.MethodHandles.Lookup} created in it must be provided via {@link nl.beeldengeluid.mapping.Mapper#withLookup(java.lang.invoke.MethodHandles.Lookup)}.
  */
 module nl.beeldengeluid.mapping.annotations {
     requires static lombok;
@@ -15,4 +17,6 @@ module nl.beeldengeluid.mapping.annotations {
     exports nl.beeldengeluid.mapping.bind;
     exports nl.beeldengeluid.mapping;
 
+    uses nl.beeldengeluid.mapping.PrecompiledMapper;
+
 }
@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2024 Licensed under the Apache License, Version 2.0
+ */
+package nl.beeldengeluid.mapping;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The implementations of {@link BatchStrategy}.
+ *
+ * @author Michiel Meeuwissen
+ * @since 0.8
+ */
+final class BatchStrategies {
+
+    private BatchStrategies() {
+        // no instances
+    }
+
+    static <T> List<T> newList(Spliterator<?> sources) {
+        long size = sources.getExactSizeIfKnown();
+        return size >= 0 && size < Integer.MAX_VALUE ? new ArrayList<>((int) size) : new ArrayList<>();
+    }
+
+    /**
+     * Maps all remaining source objects in the current thread
+     */
+    static <T> List<T> sequential(Mapper mapper, Spliterator<?> sources, Class<T> destinationClass) {
+        List<T> result = newList(sources);
+        try (Mapper.Batch<T> batch = mapper.batch(destinationClass)) {
+            sources.forEachRemaining(source -> result.add(batch.map(source)));
+        }
+        return result;
+    }
+
+    static RuntimeException rethrow(Throwable e) {
+        if (e instanceof CompletionException || e instanceof ExecutionException) {
+            e = e.getCause();
+        }
+        if (e instanceof RuntimeException re) {
+            return re;
+        }
+        if (e instanceof Error error) {
+            throw error;
+        }
+        return new MapException(e.getMessage(), e);
+    }
+
+    enum Sequential implements BatchStrategy {
+        INSTANCE;
+
+        @Override
+        public <T> List<T> mapAll(Mapper mapper, Spliterator<?> sources, Class<T> destinationClass) {
+            return sequential(mapper, sources, destinationClass);
+        }
+
+        @Override
+        public boolean ordered() {
+            return true;
+        }
+    }
+
+    /**
+     * @param chunkSize Spliterators are split until their estimated size is smaller than this
+     */
+    record ForkJoin(ForkJoinPool pool, boolean ordered, int chunkSize) implements BatchStrategy {
+
+        static final int DEFAULT_CHUNK_SIZE = 256;
+
+        @Override
+        public <T> List<T> mapAll(Mapper mapper, Spliterator<?> sources, Class<T> destinationClass) {
+            List<T> result = newList(sources);
+            Queue<List<T>> ready = ordered ? null : new ConcurrentLinkedQueue<>();
+            List<List<T>> chunks = pool.invoke(new Chunk<>(mapper, sources, destinationClass, chunkSize, ready));
+            for (List<T> chunk : ordered ? chunks : ready) {
+                result.addAll(chunk);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Maps one chunk of the source objects, or splits it in two. If it is ordered, the results of all chunks are returned in order, otherwise they are just added to {@code ready}.
+     */
+    static final class Chunk<T> extends RecursiveTask<List<List<T>>> {
+        private static final long serialVersionUID = 1L;
+
+        private final Mapper mapper;
+        private final Spliterator<?> sources;
+        private final Class<T> destinationClass;
+        private final int chunkSize;
+        private final Queue<List<T>> ready;
+
+        Chunk(Mapper mapper, Spliterator<?> sources, Class<T> destinationClass, int chunkSize, Queue<List<T>> ready) {
+            this.mapper = mapper;
+            this.sources = sources;
+            this.destinationClass = destinationClass;
+            this.chunkSize = chunkSize;
+            this.ready = ready;
+        }
+
+        @Override
+        protected List<List<T>> compute() {
+            Spliterator<?> prefix;
+            if (sources.estimateSize() > chunkSize && (prefix = sources.trySplit()) != null) {
+                Chunk<T> left = new Chunk<>(mapper, prefix, destinationClass, chunkSize, ready);
+                left.fork();
+                List<List<T>> right = new Chunk<>(mapper, sources, destinationClass, chunkSize, ready).compute();
+                List<List<T>> result = left.join();
+                if (ready == null) {
+                    result = new ArrayList<>(result);
+                    result.addAll(right);
+                }
+                return result;
+            }
+            List<T> chunk = sequential(mapper, sources, destinationClass);
+            if (ready == null) {
+                return List.of(chunk);
+            }
+            ready.add(chunk);
+            return List.of();
+        }
+    }
+
+    record PerItem(Executor executor, int maxInFlight, boolean ordered) implements BatchStrategy {
+
+        PerItem {
+            if (maxInFlight < 1) {
+                throw new IllegalArgumentException("maxInFlight must be positive");
+            }
+        }
+
+        @Override
+        public <T> List<T> mapAll(Mapper mapper, Spliterator<?> sources, Class<T> destinationClass) {
+            final Semaphore inFlight = new Semaphore(maxInFlight);
+            final List<CompletableFuture<T>> futures = ordered ? newList(sources) : null;
+            final List<T> ready = ordered ? null : Collections.synchronizedList(newList(sources));
+            final AtomicReference<Throwable> failure = new AtomicReference<>();
+            try {
+                // no new items are submitted after the first failure
+                while (failure.get() == null && sources.tryAdvance(source -> {
+                    acquire(inFlight, 1);
+                    CompletableFuture<T> future;
+                    try {
+                        future = CompletableFuture.supplyAsync(() -> {
+                            try (Mapper.Batch<T> batch = mapper.batch(destinationClass)) {
+                                return batch.map(source);
+                            }
+                        }, executor);
+                    } catch (RuntimeException e) {
+                        // e.g. rejected by the executor
+                        inFlight.release();
+                        throw e;
+                    }
+                    future.whenComplete((destination, e) -> {
+                        if (e != null) {
+                            failure.compareAndSet(null, e);
+                        } else if (ready != null) {
+                            ready.add(destination);
+                        }
+                        inFlight.release();
+                    });
+                    if (futures != null) {
+                        futures.add(future);
+                    }
+                })) {
+                    // submitted
+                }
+            } finally {
+                // wait for everything that is still running
+                acquire(inFlight, maxInFlight);
+            }
+            if (failure.get() != null) {
+                throw rethrow(failure.get());
+            }
+            if (ready != null) {
+                return new ArrayList<>(ready);
+            }
+            List<T> result = new ArrayList<>(futures.size());
+            for (CompletableFuture<T> future : futures) {
+                result.add(future.join());
+            }
+            return result;
+        }
+
+        private static void acquire(Semaphore semaphore, int permits) {
+            try {
+                semaphore.acquire(permits);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MapException("Interrupted while mapping", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2024 Licensed under the Apache License, Version 2.0
+ */
+package nl.beeldengeluid.mapping;
+
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * How {@link Mapper#mapAll(Iterable, Class)} distributes the work. See {@link Mapper#batchStrategy()}.
+ * <p>
+ * Every strategy maps via a batch with its own json cache per thread (or task), which is cleared after each source object, so the json cache does not need any consideration when mapping in parallel.
+ *
+ * @author Michiel Meeuwissen
+ * @since 0.8
+ */
+public interface BatchStrategy {
+
+    /**
+     * Maps all objects
+     * @param mapper The mapper to use
+     * @param sources The source objects
+     * @param destinationClass The class to create destination objects for
+     * @param <T> Type of the destination objects
+     * @return A new, modifiable, list with the destination objects
+     */
+    <T> List<T> mapAll(Mapper mapper, Spliterator<?> sources, Class<T> destinationClass);
+
+    /**
+     * @return Whether the destination objects are returned in the encounter order of the source objects
+     */
+    boolean ordered();
+
+    /**
+     * The default: all objects are mapped one after another, in the calling thread.
+     * @return The sequential strategy
+     */
+    static BatchStrategy sequential() {
+        return BatchStrategies.Sequential.INSTANCE;
+    }
+
+    /**
+     * The source objects are split into chunks (using {@link Spliterator#trySplit()}), which are mapped in parallel by the given pool. This is suited for CPU bound mapping.
+     * @param pool The pool to map in. E.g. {@link ForkJoinPool#commonPool()}
+     * @param ordered Whether the result must be in encounter order. If not, chunks are collected as soon as they are ready.
+     * @return A new fork/join strategy
+     */
+    static BatchStrategy forkJoin(ForkJoinPool pool, boolean ordered) {
+        return new BatchStrategies.ForkJoin(pool, ordered, BatchStrategies.ForkJoin.DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Like {@link #forkJoin(ForkJoinPool, boolean)}, using the {@link ForkJoinPool#commonPool() common pool}, in encounter order.
+     * @return A fork/join strategy
+     */
+    static BatchStrategy forkJoin() {
+        return forkJoin(ForkJoinPool.commonPool(), true);
+    }
+
+    /**
+     * Every source object is mapped in its own task, submitted to the given executor. This is suited if leaf mappers may block (e.g. because they do some I/O), especially with an executor that creates a (virtual) thread per task, or with a bounded thread pool that is large enough.
+     * <p>
+     * The calling thread blocks if {@code maxInFlight} objects are being mapped, so tasks are not piling up in the executor.
+     * @param executor The executor to submit tasks to
+     * @param maxInFlight The maximal number of objects that are submitted but not yet mapped
+     * @param ordered Whether the result must be in encounter order. If not, the destination objects are in the order they were ready.
+     * @return A new per item strategy
+     */
+    static BatchStrategy executor(Executor executor, int maxInFlight, boolean ordered) {
+        return new BatchStrategies.PerItem(executor, maxInFlight, ordered);
+    }
+}
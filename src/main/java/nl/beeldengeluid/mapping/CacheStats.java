@@ -0,0 +1,17 @@
+/*
+ * Copyright (C) 2024 Licensed under the Apache License, Version 2.0
+ */
+package nl.beeldengeluid.mapping;
+
+/**
+ * Statistics of one of the caches of this library. See {@link Mapper#cacheStats()}.
+ *
+ * @param name The name of the cache
+ * @param hits The number of times a value was found in the cache
+ * @param misses The number of times a value had to be calculated
+ * @param size The current number of entries, or {@code -1} if that is unknown
+ * @author Michiel Meeuwissen
+ * @since 0.8
+ */
+public record CacheStats(String name, long hits, long misses, long size) {
+}
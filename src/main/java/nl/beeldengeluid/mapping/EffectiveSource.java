@@ -5,6 +5,7 @@ import java.util.Arrays;
 import java.util.List;
 
 import nl.beeldengeluid.mapping.annotations.Source;
+import nl.beeldengeluid.mapping.impl.Cache;
 
 
 /**
@@ -16,6 +17,7 @@ import nl.beeldengeluid.mapping.annotations.Source;
  * @param field See {@link Source#field()}
  * @param path See {@link Source#path()}
  * @param leafMappers See {@link Source#leafMappers()}
+ * @param dateTimeFormat See {@link Source#dateTimeFormat()}
  */
 @lombok.Builder
 public record EffectiveSource(
@@ -29,10 +31,19 @@ public record EffectiveSource(
 
     List<String> path,
 
-    List<? extends LeafMapper> leafMappers
+    List<? extends LeafMapper> leafMappers,
+
+    String dateTimeFormat
 
 ) {
 
+    /**
+     * The canonical constructor before {@link #dateTimeFormat()} was added. It is left {@link Source#UNSET unset}.
+     */
+    public EffectiveSource(Class<?> sourceClass, String jsonPath, String jsonPointer, String field, List<String> path, List<? extends LeafMapper> leafMappers) {
+        this(sourceClass, jsonPath, jsonPointer, field, path, leafMappers, Source.UNSET);
+    }
+
     @Source
     private static class DefaultHolder { }
     static Source DEFAULTS = DefaultHolder.class.getAnnotation(Source.class);
@@ -82,10 +93,30 @@ public record EffectiveSource(
                 .toList());
         }
 
+        if (DEFAULTS.dateTimeFormat().equals(source.dateTimeFormat())) {
+            builder.dateTimeFormat(defaults.dateTimeFormat());
+        } else {
+            builder.dateTimeFormat(source.dateTimeFormat());
+        }
+
          return builder.build();
     }
 
+    /**
+     * Returns the instance of the given leaf mapper class. Leaf mappers are supposed to be stateless, so it is instantiated only once (using its public no-args constructor, or its public static {@code INSTANCE} field), and then shared.
+     * @param clazz A {@link LeafMapper} class
+     * @return The shared instance of this class
+     * @param <T> The type of the leaf mapper
+     * @throws IllegalStateException if no instance could be made
+     */
+    @SuppressWarnings("unchecked")
     public static <T extends LeafMapper> T  instantiateMapper(Class<T> clazz) {
+        return (T) LEAF_MAPPERS.get(clazz);
+    }
+
+    private static final Cache<Class<?>, LeafMapper> LEAF_MAPPERS = Cache.<LeafMapper>perClass("leafMappers", type -> newMapper(type.asSubclass(LeafMapper.class))).global();
+
+    private static <T extends LeafMapper> T newMapper(Class<T> clazz) {
         try {
             Constructor<T> constructor = clazz.getConstructor();
             return constructor.newInstance();
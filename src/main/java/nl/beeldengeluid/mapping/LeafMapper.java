@@ -1,5 +1,7 @@
 package nl.beeldengeluid.mapping;
 
+import nl.beeldengeluid.mapping.impl.Util;
+
 /**
  * At the end of the mapping process, the actual found value can be mapped. All kind of strategies can be though of. That's why it is pluggable.
  */
@@ -15,6 +17,50 @@ public interface LeafMapper extends Comparable<LeafMapper> {
      */
     Leaf map(Mapper mapper, EffectiveSource effectiveSource,  MappedField destinationField, Object o);
 
+    /**
+     * Like {@link #map(Mapper, EffectiveSource, MappedField, Object)}, but records a successful result in {@code result}, rather than returning a new {@link Leaf}. This is what {@link Mapper} calls.
+     * <p>
+     * Defaults to calling {@link #map(Mapper, EffectiveSource, MappedField, Object)}. Leaf mappers that are applied to many values should override it, and can implement {@code map} with {@link LeafResult#leaf(LeafMapper, Mapper, EffectiveSource, MappedField, Object)}.
+     * @param mapper The mapper for which this is happening
+     * @param destinationField Information about the field the mapped value has to be stored in
+     * @param o The incoming object
+     * @param result Receives the mapped value, via {@link LeafResult#mapped(Object)} or {@link LeafResult#mappedTerminal(Object)}
+     * @return Whether a value was recorded in {@code result}
+     * @since 0.8
+     */
+    default boolean mapInto(Mapper mapper, EffectiveSource effectiveSource, MappedField destinationField, Object o, LeafResult result) {
+        return result.accept(map(mapper, effectiveSource, destinationField, o));
+    }
+
+    /**
+     * The type of values this leaf mapper can map. Defaults to {@link Object}
+     * @since 0.8
+     */
+    default Class<?> sourceType() {
+        return Object.class;
+    }
+
+    /**
+     * The type of destination fields this leaf mapper can produce values for. Defaults to {@link Object}
+     * @since 0.8
+     */
+    default Class<?> destinationType() {
+        return Object.class;
+    }
+
+    /**
+     * Whether {@link #map(Mapper, EffectiveSource, MappedField, Object)} may do anything for values of class {@code valueClass}, for the given destination field. If not, {@link Mapper} won't call it for such values.
+     * <p>
+     * The result is cached per field and value class, so it must only depend on its arguments. Defaults to checking {@link #sourceType()} and {@link #destinationType()} (where a primitive field is considered of its wrapper type).
+     * @param destinationField Information about the field the mapped value has to be stored in
+     * @param valueClass The class of the incoming object
+     * @since 0.8
+     */
+    default boolean mayMap(MappedField destinationField, Class<?> valueClass) {
+        return sourceType().isAssignableFrom(valueClass) &&
+            (destinationType() == Object.class || destinationType().isAssignableFrom(Util.wrap(destinationField.type())));
+    }
+
 
     /**
      * The order of the registered 'leaf mappers' may be influenced using this.
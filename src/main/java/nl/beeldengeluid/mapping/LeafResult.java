@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2024 Licensed under the Apache License, Version 2.0
+ */
+package nl.beeldengeluid.mapping;
+
+import java.util.Optional;
+
+import nl.beeldengeluid.mapping.impl.JsonCache;
+import nl.beeldengeluid.mapping.impl.JsonUtil;
+
+/**
+ * Receives the outcome of {@link LeafMapper#mapInto(Mapper, EffectiveSource, MappedField, Object, LeafResult)}.
+ * <p>
+ * Where {@link LeafMapper#map(Mapper, EffectiveSource, MappedField, Object)} returns a new {@link LeafMapper.Leaf} for every mapped value, {@code mapInto} writes into an instance of this, which the {@link Mapper} creates once per mapped object and reuses for all its fields. So leaf mapping itself need not allocate anything.
+ * <p>
+ * It also carries the {@link JsonCache} of the mapping, so that leaf mappers that map recursively (or parse json) can use the same one.
+ * <p>
+ * Instances are not thread safe, and leaf mappers should not keep references to them.
+ *
+ * @author Michiel Meeuwissen
+ * @since 0.8
+ */
+public final class LeafResult {
+
+    private final JsonCache jsonCache;
+    private Object value;
+    private boolean terminate;
+
+    public LeafResult() {
+        this(null);
+    }
+
+    /**
+     * @param jsonCache The json cache of the mapping, or {@code null} to use the one of the current thread
+     * @since 0.8
+     */
+    public LeafResult(JsonCache jsonCache) {
+        this.jsonCache = jsonCache;
+    }
+
+    /**
+     * @return A new instance, for leaf mapping nested values (e.g. the elements of a collection), sharing the json cache of this one
+     */
+    public LeafResult nested() {
+        return new LeafResult(jsonCache);
+    }
+
+    /**
+     * @return The json cache of the mapping. If none was given, the one of the current thread (see {@link JsonUtil#cache()}).
+     */
+    public JsonCache jsonCache() {
+        return jsonCache == null ? JsonUtil.cache() : jsonCache;
+    }
+
+    /**
+     * Records a successfully mapped value. Further leaf mappers will be consulted with it.
+     * @param value The mapped value
+     * @return {@code true}, so leaf mappers can just {@code return result.mapped(value)}
+     */
+    public boolean mapped(Object value) {
+        this.value = value;
+        this.terminate = false;
+        return true;
+    }
+
+    /**
+     * Records a successfully mapped value, which is final. No further leaf mappers will be consulted.
+     * @param value The mapped value
+     * @return {@code true}
+     */
+    public boolean mappedTerminal(Object value) {
+        this.value = value;
+        this.terminate = true;
+        return true;
+    }
+
+    /**
+     * @return The last recorded value
+     */
+    public Object value() {
+        return value;
+    }
+
+    /**
+     * @return Whether the last recorded value was {@link #mappedTerminal(Object) terminal}
+     */
+    public boolean terminate() {
+        return terminate;
+    }
+
+    /**
+     * Records the result of {@link LeafMapper#map(Mapper, EffectiveSource, MappedField, Object)}
+     * @return Whether it was a success
+     */
+    boolean accept(LeafMapper.Leaf leaf) {
+        if (!leaf.success()) {
+            return false;
+        }
+        return leaf.terminate() ? mappedTerminal(leaf.result()) : mapped(leaf.result());
+    }
+
+    /**
+     * For leaf mappers implementing {@link LeafMapper#mapInto(Mapper, EffectiveSource, MappedField, Object, LeafResult) mapInto}, to implement {@link LeafMapper#map(Mapper, EffectiveSource, MappedField, Object) map} with it.
+     * @return The outcome as a {@link LeafMapper.Leaf}
+     */
+    public static LeafMapper.Leaf leaf(LeafMapper leafMapper, Mapper mapper, EffectiveSource effectiveSource, MappedField destinationField, Object o) {
+        LeafResult result = new LeafResult();
+        if (leafMapper.mapInto(mapper, effectiveSource, destinationField, o, result)) {
+            return new LeafMapper.Leaf(result.value, true, result.terminate);
+        }
+        return LeafMapper.NOT_MAPPED;
+    }
+
+    /**
+     * @param mapped Whether anything was recorded
+     * @return The value, if {@code mapped}
+     */
+    Optional<Object> toOptional(boolean mapped) {
+        return mapped ? Optional.ofNullable(value) : Optional.empty();
+    }
+
+    @Override
+    public String toString() {
+        return "LeafResult " + value + (terminate ? " (terminal)" : "");
+    }
+}
@@ -1,7 +1,7 @@
 package nl.beeldengeluid.mapping;
 
 /**
- * May get thrown by {@link Mapper}, currently only wrapping {@link ReflectiveOperationException}s.
+ * May get thrown by {@link Mapper}, mostly wrapping {@link ReflectiveOperationException}s.
  * @since 0.2
  */
 public class MapException extends RuntimeException {
@@ -13,4 +13,14 @@ public class MapException extends RuntimeException {
     public MapException(ReflectiveOperationException e) {
         super(e);
     }
+
+    /**
+     * Constructor
+     * @param message message
+     * @param cause cause
+     * @since 0.8
+     */
+    public MapException(String message, Throwable cause) {
+        super(message, cause);
+    }
 }
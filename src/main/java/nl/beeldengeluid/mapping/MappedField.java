@@ -8,6 +8,8 @@ import nl.beeldengeluid.mapping.impl.ReflectMappedField;
 /**
  * Representation of a mapped field. The most basic implementation is {@link ReflectMappedField} which just wraps an actual {@link Field}.
  * But sometimes a field is kind of 'virtual', e.g. entries in a collection. In that case {@link nl.beeldengeluid.mapping.impl.MappedFieldImpl} is used.
+ * <p>
+ * Implementations have value based {@code equals} and {@code hashCode}, so {@link LeafMapper}s can use them as keys for caching. {@link MappingPlan}s create them only once per field.
  */
 public interface MappedField {
 
@@ -36,4 +38,19 @@ public interface MappedField {
         return new ReflectMappedField(field, source);
     }
 
+    /**
+     * @param declaringClass The class declaring the field
+     * @param name The name of the field
+     * @param source The effective source for the field
+     * @throws IllegalArgumentException if there is no such field
+     * @since 0.8
+     */
+    static MappedField of(Class<?> declaringClass, String name, EffectiveSource source) {
+        try {
+            return of(declaringClass.getDeclaredField(name), source);
+        } catch (NoSuchFieldException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+    }
+
 }
@@ -6,19 +6,18 @@ package nl.beeldengeluid.mapping;
 import lombok.*;
 import lombok.extern.slf4j.Slf4j;
 
-import java.lang.reflect.Field;
+import java.lang.invoke.*;
+import java.lang.reflect.*;
+import java.time.ZoneId;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.stream.Stream;
 
-import org.meeuw.functional.*;
-
 import nl.beeldengeluid.mapping.annotations.Source;
 import nl.beeldengeluid.mapping.impl.*;
 
-import static nl.beeldengeluid.mapping.annotations.Source.UNSET;
 import static nl.beeldengeluid.mapping.impl.Util.*;
 
 /**
@@ -46,6 +45,105 @@ public class Mapper {
     private final boolean clearsJsonCacheEveryTime;
 
 
+    /**
+     * The {@link MethodHandles.Lookup} used to obtain {@link java.lang.invoke.MethodHandle}s to read and write fields, and to call constructors. Defaults to a lookup of this library's own module.
+     * <p>
+     * If the source and destination classes are in a named module that does not {@code open} its packages to this library, a lookup created in that module (using {@link MethodHandles#lookup()}) can be provided here. Then no {@code --add-opens} is needed.
+     * @since 0.8
+     */
+    @With
+    @lombok.Builder.Default
+    @Getter
+    private final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+
+    /**
+     * Whether {@link MappingPlan}s that are used often are compiled to a dedicated hidden class, which does the mapping without reflection. Defaults to {@code false}.
+     * @since 0.8
+     * @see #generateMapperThreshold
+     */
+    @With
+    @Getter
+    private final boolean generatesMappers;
+
+    /**
+     * If {@link #generatesMappers}, the number of times a {@link MappingPlan} is used before it is compiled. Defaults to {@code 1000}.
+     * @since 0.8
+     */
+    @With
+    @lombok.Builder.Default
+    @Getter
+    private final int generateMapperThreshold = 1000;
+
+    /**
+     * Whether json in {@code byte[]} or {@code String} fields of source objects is parsed only partially. If set, a {@link MappingPlan} collects all {@link Source#jsonPointer() json pointers} it uses on a field, and the json is parsed in one streaming pass that builds only the values at those pointers, skipping the rest. Defaults to {@code false}.
+     * <p>
+     * This doesn't apply to fields also used with a {@link Source#jsonPath() json path}, or to {@link PrecompiledMapper}s.
+     * @since 0.8
+     */
+    @With
+    @Getter
+    private final boolean filtersJson;
+
+    /**
+     * Whether json in {@code byte[]} or {@code String} fields of source objects is indexed with a {@link JsonTape} instead of parsed to a tree. The {@link Source#jsonPointer() json pointers} (and definite json paths) are then evaluated on that index, and only the values found are converted to {@link com.fasterxml.jackson.databind.JsonNode}s. For large json of which few values are needed, this takes much less memory. Defaults to {@code false}.
+     * <p>
+     * This takes precedence over {@link #filtersJson()}. Like that, it doesn't apply to fields also used with a json path that is not definite, or to {@link PrecompiledMapper}s. If a {@link #contentJsonCache() content json cache} is configured, the trees shared in that are used instead.
+     * @since 0.8
+     */
+    @With
+    @Getter
+    private final boolean indexesJson;
+
+    /**
+     * Whether {@link PrecompiledMapper}s (found via {@link ServiceLoader}) are used when available. Defaults to {@code true}.
+     * @since 0.8
+     */
+    @With
+    @lombok.Builder.Default
+    @Getter
+    private final boolean usesPrecompiledMappers = true;
+
+    /**
+     * How {@link #mapAll(Iterable, Class)} distributes the work. Defaults to {@link BatchStrategy#sequential()}.
+     * @since 0.8
+     */
+    @With
+    @lombok.Builder.Default
+    @Getter
+    private final BatchStrategy batchStrategy = BatchStrategy.sequential();
+
+    /**
+     * The conversions between scalar types (e.g. from {@code String} to {@code long}) that the {@link ScalarLeafMapper} can do. Defaults to {@link ScalarConverters#DEFAULT}.
+     * @since 0.8
+     * @see #withScalarConverter(Class, Class, Function)
+     */
+    @With
+    @lombok.Builder.Default
+    @Getter
+    private final ScalarConverters scalarConverters = ScalarConverters.DEFAULT;
+
+    /**
+     * The maximum number of entries of the json cache of a {@link #context() mapping context}, and of {@link #mapAll(Iterable, Class) batches}. Defaults to {@link JsonCache#DEFAULT_MAX_ENTRIES}.
+     * @since 0.8
+     */
+    @With
+    @lombok.Builder.Default
+    @Getter
+    private final int jsonCacheSize = JsonCache.DEFAULT_MAX_ENTRIES;
+
+    /**
+     * A cache of parsed json shared by all mappings (and threads), keyed on the content of the json. This helps if many source objects carry the same json. Defaults to {@code null}, i.e. no such cache.
+     * <p>
+     * If set, {@link #map(Object, Object)} uses a new json cache for every call, backed by this one, rather than the one of the current thread. It doesn't apply to {@link PrecompiledMapper}s.
+     * <p>
+     * It may be backed by a {@link nl.beeldengeluid.mapping.impl.DiskJsonCache}, to reuse parsed json in later runs.
+     * @since 0.8
+     */
+    @With
+    @Getter
+    private final ContentJsonCache contentJsonCache;
+
     /**
      * The {@link LeafMapper leaf mappers} of this Mapper. An unmodifiable and sorted list of them.
      *
@@ -56,6 +154,7 @@ public class Mapper {
     private final List<LeafMapper> leafMappers = Stream.of(
         UnwrapCollectionsLeafMapper.INSTANCE,
         JaxbLeafMapper.INSTANCE,
+        DateTimeLeafMapper.INSTANCE,
         ScalarLeafMapper.INSTANCE,
         new EnumLeafMapper(true, false),
         RecursiveLeafMapper.INSTANCE
@@ -88,10 +187,14 @@ public class Mapper {
      */
 
     public <T> T newInstance(Class<T> destinationClass)  {
+        return newInstance(destinationClass, CONSTRUCTORS.get(destinationClass));
+    }
+
+    private static <T> T newInstance(Class<T> destinationClass, MethodHandle constructor) {
         try {
-            return destinationClass.getDeclaredConstructor().newInstance();
-        } catch (ReflectiveOperationException e) {
-            throw new MapException(e);
+            return destinationClass.cast((Object) constructor.invokeExact());
+        } catch (Throwable e) {
+            throw new MapException(new InvocationTargetException(e));
         }
     }
 
@@ -102,7 +205,7 @@ public class Mapper {
      */
     public void map(Object source, Object destination) {
         try {
-            privateMap(source, destination, destination.getClass());
+            plan(source.getClass(), destination.getClass()).map(source, destination, contentJsonCache == null ? null : new JsonCache(jsonCacheSize, contentJsonCache));
         } finally {
             if (clearsJsonCacheEveryTime) {
                 JsonUtil.clearCache();
@@ -111,6 +214,48 @@ public class Mapper {
     }
 
 
+    /**
+     * Opens a scope for a number of mappings, which parses json in source objects only once, using a json cache of at most {@link #jsonCacheSize()} entries, rather than the cache of the current thread. It should be closed after use, which releases everything cached:
+     * <pre>{@code
+     * try (MappingContext context = mapper.context()) {
+     *     Destination destination = context.map(source, Destination.class);
+     * }
+     * }</pre>
+     * @return A new context, which is not thread safe
+     * @since 0.8
+     */
+    public MappingContext context() {
+        return new MappingContext(this, new JsonCache(jsonCacheSize, contentJsonCache));
+    }
+
+    /**
+     * Maps all objects of {@code sources} to new objects of {@code destinationClass}, like {@link #map(Object, Class)} would do for each of them.
+     * <p>
+     * This is cheaper than calling {@link #map(Object, Class)} in a loop: the constructor and the {@link #plan(Class, Class) plan} are looked up once per distinct source class, and the json cache is cleared after every source object (which is what is needed, since it is keyed on the identity of the source values) and at the end, regardless of {@link #clearsJsonCacheEveryTime()}.
+     * <p>
+     * How the work is distributed (e.g. over several threads) is determined by {@link #batchStrategy()}.
+     * @param sources The source objects. {@code null} elements are mapped to {@code null}.
+     * @param destinationClass The class to create destination objects for
+     * @param <T> Type of the destination objects
+     * @return A new, modifiable, list with the destination objects, in the order of {@code sources} (if the {@link BatchStrategy#ordered() batch strategy is ordered})
+     * @since 0.8
+     */
+    public <T> List<T> mapAll(Iterable<?> sources, Class<T> destinationClass) {
+        return batchStrategy.mapAll(this, sources.spliterator(), destinationClass);
+    }
+
+    /**
+     * As {@link #mapAll(Iterable, Class)}, but consumes a {@link Stream}.
+     * @param sources The source objects. This is a terminal operation on the stream.
+     * @param destinationClass The class to create destination objects for
+     * @param <T> Type of the destination objects
+     * @return A new, modifiable, list with the destination objects, in encounter order of {@code sources} (if the {@link BatchStrategy#ordered() batch strategy is ordered})
+     * @since 0.8
+     */
+    public <T> List<T> mapAll(Stream<?> sources, Class<T> destinationClass) {
+        return batchStrategy.mapAll(this, sources.spliterator(), destinationClass);
+    }
+
     /**
      * For now just checks whether there is a no args accessible constructor in the destination class.
      * If so, that suffices to conclude that this mapper can map to it.
@@ -122,16 +267,18 @@ public class Mapper {
      * @return
      */
     public boolean canMap(Object source, Class<?> destinationClass, Class<?>... groups) {
+        return !destinationClass.isInstance(source) && HAS_NO_ARGS_CONSTRUCTOR.get(destinationClass);
+    }
+
+    private static final Cache<Class<?>, Boolean> HAS_NO_ARGS_CONSTRUCTOR = Cache.<Boolean>perClass("hasNoArgsConstructor", destinationClass -> {
         try {
-            if (!destinationClass.isInstance(source)) {
-                destinationClass.getDeclaredConstructor();
-                return true;
-            }
+            destinationClass.getDeclaredConstructor();
+            return true;
         } catch (ReflectiveOperationException e) {
             log.debug("No declared constructor found for {} ({})", destinationClass.getName(), e.getMessage());
+            return false;
         }
-        return false;
-    }
+    }).global();
 
     /**
      * Just like {@link #map(Object, Object)}, but for example the json cache will not be cleared (if {@link #clearsJsonCacheEveryTime}). This is basically meant to be called by {@link RecursiveLeafMapper sub mappings}
@@ -139,9 +286,87 @@ public class Mapper {
      * @param destination The destination object
      */
      public void subMap(Object source, Object destination, Class<?> destinationClass) {
-         privateMap(source, destination, destinationClass);
+         plan(source.getClass(), destinationClass).map(source, destination);
      }
 
+    /**
+     * Like {@link #subMap(Object, Object, Class)}, using the json cache of the mapping it is part of
+     * @param jsonCache The json cache, e.g. {@link LeafResult#jsonCache()}
+     * @since 0.8
+     */
+     public void subMap(Object source, Object destination, Class<?> destinationClass, JsonCache jsonCache) {
+         plan(source.getClass(), destinationClass).map(source, destination, jsonCache);
+     }
+
+    /**
+     * Returns functions that get the values from a source object that map to the destination field.
+     *
+     * @param sourceClass      Class of a source object
+     * @param destinationClass Class of the destination
+     * @param destinationField Field of the destination
+     * @return A list of functions that can produce optionals of {@link ValueAndEffectiveSource}
+     * @deprecated The mapper uses its {@link #plan(Class, Class) plans} now, which this delegates to
+     */
+    @Deprecated
+    protected List<? extends Function<Object, Optional<ValueAndEffectiveSource>>> sourceGetter(Class<?> sourceClass, Class<?> destinationClass, Field destinationField) {
+        return plan(sourceClass, destinationClass).valueGetters(destinationField);
+    }
+
+    /**
+     * Returns the {@link MappingPlan} to map objects of {@code sourceClass} to objects of {@code destinationClass}. Plans are created only once per mapper and class pair.
+     * @param sourceClass Class of a source object
+     * @param destinationClass Class of a destination object
+     * @return The (cached) plan
+     * @since 0.8
+     */
+    public MappingPlan plan(Class<?> sourceClass, Class<?> destinationClass) {
+        Map<Class<?>, MappingPlan> plans = PLANS.get(sourceClass);
+        MappingPlan plan = plans.get(destinationClass);
+        if (plan == null) {
+            plan = plans.computeIfAbsent(destinationClass, c -> new MappingPlan(this, sourceClass, destinationClass));
+        }
+        return plan;
+    }
+
+    /**
+     * Clears all caches: the {@link #plan(Class, Class) plans} of this mapper, its {@link #contentJsonCache() content json cache}, and all caches of the library itself (containing e.g. reflection results, and the {@link PrecompiledMapper}s found). They will be filled again when needed.
+     * <p>
+     * All caches are either associated with the classes themselves, bounded in size, or held by this mapper, so normally this is not needed. Other mappers have their own plans, which are not cleared by this.
+     * @since 0.8
+     */
+    public void clearCaches() {
+        PLANS.clear();
+        CONSTRUCTORS.clear();
+        LEAF_DISPATCH.clear();
+        scalarConverters.cache().clear();
+        Cache.clearAll();
+        PrecompiledMappers.clear();
+        if (contentJsonCache != null) {
+            contentJsonCache.clear();
+        }
+    }
+
+    /**
+     * Statistics about the caches of this mapper, and of the library itself. See {@link #clearCaches()}.
+     * @return A list of {@link CacheStats}, one for every cache
+     * @since 0.8
+     */
+    public List<CacheStats> cacheStats() {
+        List<CacheStats> result = new ArrayList<>();
+        result.add(PLANS.stats());
+        result.add(CONSTRUCTORS.stats());
+        result.add(LEAF_DISPATCH.stats());
+        result.add(scalarConverters.cache().stats());
+        result.addAll(Cache.statsAll());
+        if (contentJsonCache != null) {
+            result.add(contentJsonCache.stats());
+            if (contentJsonCache.disk() != null) {
+                result.add(contentJsonCache.disk().stats());
+            }
+        }
+        return result;
+    }
+
     /**
      * Given a {@code sourceClass} and a {@code destinationClass} will indicate which fields  (in the destination) will be mapped.
      * @param sourceClass Class of a source object
@@ -223,6 +448,18 @@ public class Mapper {
         });
     }
 
+    /**
+     * Adds a conversion to the {@link #scalarConverters() scalar converters}.
+     * @param source The class of values the converter accepts, which includes its subclasses
+     * @param destination The type the converter produces. For a wrapper class, this also applies to fields of the primitive type.
+     * @param converter The conversion
+     * @return A new {@link Mapper}
+     * @since 0.8
+     */
+    public <S, D> Mapper withScalarConverter(Class<S> source, Class<D> destination, Function<? super S, ? extends D> converter) {
+        return withScalarConverters(scalarConverters.with(source, destination, converter));
+    }
+
     public Mapper withoutLeafMapper(LeafMapper instance) {
         List<LeafMapper> list = new ArrayList<>(leafMappers);
         if (list.removeIf(v -> v.equals(instance))) {
@@ -232,226 +469,325 @@ public class Mapper {
     }
 
     public Mapper withSupportsJaxbAnnotations(Boolean supportsJaxbAnnotations) {
+        Map<Class<?>, Enum<?>> fallbacks = enumFallbacks();
         if (supportsJaxbAnnotations) {
-            return withLeafMapper(new EnumLeafMapper(true, false))
-                .withoutLeafMapper(new EnumLeafMapper(false, false))
+            return withLeafMapper(new EnumLeafMapper(true, false, fallbacks))
+                .withoutLeafMapper(new EnumLeafMapper(false, false, fallbacks))
                 .withLeafMapper(JaxbLeafMapper.INSTANCE);
         } else {
-            return withLeafMapper(new EnumLeafMapper(false, false))
-                .withoutLeafMapper(new EnumLeafMapper(true, false))
+            return withLeafMapper(new EnumLeafMapper(false, false, fallbacks))
+                .withoutLeafMapper(new EnumLeafMapper(true, false, fallbacks))
                 .withoutLeafMapper(JaxbLeafMapper.INSTANCE);
         }
     }
 
     /**
-     * Performs the actual 'leaf mapping'
-     * @param destinationField
-     * @param effectiveSource
-     * @param o
-     * @return
+     * Makes the {@link EnumLeafMapper}s of this mapper map strings that match no constant of the enum class of {@code fallback} to {@code fallback}. E.g. {@code withEnumFallback(Genre.UNKNOWN)}.
+     * @param fallback The constant to use if nothing matches
+     * @return A new {@link Mapper}
+     * @since 0.8
      */
-    public Optional<Object> mapLeaf(MappedField destinationField, EffectiveSource effectiveSource, Object o) {
+    public Mapper withEnumFallback(Enum<?> fallback) {
+        return withLeafMappers(leafMappers.stream()
+            .map(l -> l instanceof EnumLeafMapper enumLeafMapper ? enumLeafMapper.withFallback(fallback) : l)
+            .toList());
+    }
 
-        Optional<Object> returnValue = Optional.empty();
-        for (LeafMapper lm : effectiveSource.leafMappers()) {
-            LeafMapper.Leaf result = lm.map(this, effectiveSource, destinationField, o);
-            if (result.success()) {
-                o = result.result();
-                returnValue = Optional.of(o);
-                if (result.terminate()) {
-                    return returnValue;
-                }
-            }
-        }
+    /**
+     * Makes the {@link DateTimeLeafMapper}s of this mapper take date/time values without an offset to be in the given zone. Defaults to {@link java.time.ZoneOffset#UTC UTC}.
+     * @param zone The zone of values without an offset
+     * @return A new {@link Mapper}
+     * @since 0.8
+     */
+    public Mapper withDateTimeZone(ZoneId zone) {
+        return withLeafMappers(leafMappers.stream()
+            .map(l -> l instanceof DateTimeLeafMapper ? new DateTimeLeafMapper(zone) : l)
+            .toList());
+    }
+
+    /**
+     * Makes the {@link UnwrapCollectionsLeafMapper} of this mapper map the elements of collections with at least {@code threshold} elements in parallel.
+     * @param threshold The minimal number of elements
+     * @return A new {@link Mapper}
+     * @since 0.8
+     */
+    public Mapper withParallelCollectionThreshold(int threshold) {
+        return withLeafMappers(leafMappers.stream()
+            .map(l -> l instanceof UnwrapCollectionsLeafMapper unwrap ? unwrap.withParallelThreshold(threshold) : l)
+            .toList());
+    }
+
+    private Map<Class<?>, Enum<?>> enumFallbacks() {
+        Map<Class<?>, Enum<?>> result = new HashMap<>();
         for (LeafMapper leafMapper : leafMappers) {
-            LeafMapper.Leaf result = leafMapper.map(this, effectiveSource, destinationField, o);
-            if (result.success()) {
-                o = result.result();
-                returnValue = Optional.of(o);
-                if (result.terminate()) {
-                    break;
-                }
+            if (leafMapper instanceof EnumLeafMapper enumLeafMapper) {
+                result.putAll(enumLeafMapper.fallbacks());
             }
         }
-        return returnValue;
+        return result;
     }
 
-
-    ///  PRIVATE METHODS
-    ///
-    ///
     /**
-     * Returns a function that will use reflection get the value from a source object that maps to the destination field.
-     *
-     * @param sourceClass      Class of a source object
-     * @param destinationField Field of the destination
-     * @param destinationClass Field of the destination
-     * @return A list of functions that can produes optionals of {@link ValueAndEffectiveSource}
+     * Performs the actual 'leaf mapping'
+     * <p>
+     * The leaf mappers of the {@code effectiveSource} are called first, and then the ones of this mapper, until one {@link LeafMapper.Leaf#terminate() terminates}. Every successful leaf mapper replaces the value for the next ones.
+     * Leaf mappers that {@link LeafMapper#mayMap(MappedField, Class) can not map} the current value are skipped. Which ones those are is determined only once per field and value class.
+     * @param destinationField The field the value is for
+     * @param effectiveSource The source annotation the value was found for
+     * @param o The value
+     * @return The mapped value, or empty if no leaf mapper did anything
+     * @see #mapLeaf(MappedField, EffectiveSource, Object, LeafResult)
      */
-    protected List<? extends Function<Object, Optional<ValueAndEffectiveSource>>> sourceGetter(Class<?> sourceClass, Class<?> destinationClass, Field destinationField) {
-        Map<Class<?>, List<? extends Function<Object, Optional<ValueAndEffectiveSource>>>> c = GETTER_CACHE.computeIfAbsent(destinationField, (fi) -> new ConcurrentHashMap<>());
-        return c.computeIfAbsent(sourceClass, cl -> _sourceGetter(sourceClass, destinationClass, destinationField));
-
+    public Optional<Object> mapLeaf(MappedField destinationField, EffectiveSource effectiveSource, Object o) {
+        LeafResult result = new LeafResult();
+        return result.toOptional(mapLeaf(destinationField, effectiveSource, o, result));
     }
 
-
+    /**
+     * Like {@link #mapLeaf(MappedField, EffectiveSource, Object)}, but records the mapped value in {@code result}, using {@link LeafMapper#mapInto(Mapper, EffectiveSource, MappedField, Object, LeafResult)}. Nothing needs to be allocated for this, so {@code result} can be reused for many values.
+     * @param destinationField The field the value is for
+     * @param effectiveSource The source annotation the value was found for
+     * @param o The value
+     * @param result Receives the mapped value
+     * @return Whether any leaf mapper did anything. If not, the contents of {@code result} are undefined.
+     * @since 0.8
+     */
+    public boolean mapLeaf(MappedField destinationField, EffectiveSource effectiveSource, Object o, LeafResult result) {
+        return mapLeaf(destinationField, effectiveSource, o, result, LEAF_DISPATCH.get(destinationField));
+    }
 
     /**
-     * Helper method for {@link #map(Object, Object)}, recursively called for the class and superclass of the destination
-     * object.
+     * @param dispatches The leaf mappers applicable per value class, for this field. Filled as needed.
      */
-    private void privateMap(Object source, Object destination, Class<?> forClass) {
-        final Class<?> sourceClass = source.getClass();
-        final Class<?> superClass = forClass.getSuperclass();
-        if (superClass != null) {
-            privateMap(source, destination, superClass);
+    boolean mapLeaf(MappedField destinationField, EffectiveSource effectiveSource, Object o, LeafResult result, Map<Class<?>, LeafDispatch> dispatches) {
+        boolean mapped = false;
+        LeafDispatch dispatch = dispatch(dispatches, destinationField, effectiveSource, o);
+        int from = 0;
+        int i = 0;
+        while (i < dispatch.mappers().length) {
+            if (dispatch.indices()[i] >= from) {
+                if (dispatch.mappers()[i].mapInto(this, effectiveSource, destinationField, o, result)) {
+                    o = result.value();
+                    mapped = true;
+                    if (result.terminate()) {
+                        break;
+                    }
+                    from = dispatch.indices()[i] + 1;
+                    if (o == null || o.getClass() != dispatch.valueClass()) {
+                        // the next leaf mappers get a value of another class
+                        dispatch = dispatch(dispatches, destinationField, effectiveSource, o);
+                        i = 0;
+                        continue;
+                    }
+                }
+            }
+            i++;
         }
-        for (Field f: forClass.getDeclaredFields()) {
-            getAndSet(f, sourceClass, source, destination);
+        if (mapped) {
+            // a later, unsuccessful, leaf mapper may have touched it
+            result.mapped(o);
         }
+        return mapped;
     }
 
 
     /**
-     * For a field in the destination object, try to get value from the source, and set
-     * this value in destination. Or do nothing if there is no match found
+     * Like {@link #mapLeaf(MappedField, EffectiveSource, Object)}, but returns the value itself if no leaf mapper did anything, or if leaf mapping failed.
+     * @param destinationField The field the value is for
+     * @param effectiveSource The source annotation the value was found for
+     * @param value The value found in the source object
+     * @return The value to set in the destination field
+     * @since 0.8
      */
-    private void getAndSet(
-        Field destinationField,
-        Class<?> sourceClass,
-        Object sourceObject,
-        Object destination) {
+    public Object mapLeafOrValue(MappedField destinationField, EffectiveSource effectiveSource, Object value) {
+        return mapLeafOrValue(destinationField, effectiveSource, value, new LeafResult());
+    }
 
-        List<? extends Function<Object, Optional<ValueAndEffectiveSource>>> getters = sourceGetter(sourceClass,  destination.getClass(), destinationField);
+    /**
+     * Like {@link #mapLeafOrValue(MappedField, EffectiveSource, Object)}, reusing {@code result}.
+     * @param destinationField The field the value is for
+     * @param effectiveSource The source annotation the value was found for
+     * @param value The value found in the source object
+     * @param result Used to receive the mapped value
+     * @return The value to set in the destination field
+     * @since 0.8
+     */
+    public Object mapLeafOrValue(MappedField destinationField, EffectiveSource effectiveSource, Object value, LeafResult result) {
+        return mapLeafOrValue(destinationField, effectiveSource, value, result, LEAF_DISPATCH.get(destinationField));
+    }
 
-        Object determinedValue = null;
-        for (Function<Object, Optional<ValueAndEffectiveSource>> getter : getters) {
-            Optional<ValueAndEffectiveSource> value = getter.apply(sourceObject);
-            if (value.isPresent()) {
-                ValueAndEffectiveSource result = value.get();
-                var function = destinationValueGetter(destination.getClass(), destinationField, sourceClass);
-                Optional<Object> v = function.apply(result.effectiveSource, destination, result.value);
-                determinedValue = v.orElseGet(() -> value.get().value);
-            }
-        }
-        if (determinedValue != null) {
-            try {
-                destinationField.setAccessible(true);
-                destinationField.set(destination, determinedValue);
-            } catch (IllegalArgumentException iae) {
-                log.debug("Cannot set {} in {}", determinedValue, destinationField);
-            } catch (IllegalAccessException e) {
-                log.warn(e.getMessage());
-            }
-        } else {
-            log.debug("Ignored destination field {} (No (matching) @Source annotation for {})", destinationField, sourceClass);
+    /**
+     * @param dispatches The leaf mappers applicable per value class, for this field. Filled as needed.
+     */
+    Object mapLeafOrValue(MappedField destinationField, EffectiveSource effectiveSource, Object value, LeafResult result, Map<Class<?>, LeafDispatch> dispatches) {
+        Object mapped;
+        try {
+            mapped = mapLeaf(destinationField, effectiveSource, value, result, dispatches) ? result.value() : value;
+        } catch (Exception e) {
+            log.warn("When setting '{}' in {}: {} (because {})", value, destinationField.name(), e.getMessage(), effectiveSource);
+            mapped = value;
         }
+        return JsonUtil.unshare(mapped, result.jsonCache());
     }
 
 
-    private final Map<Field, Map<Class<?>, List<? extends Function<Object, Optional<ValueAndEffectiveSource>>>>> GETTER_CACHE = new ConcurrentHashMap<>();
+    ///  PRIVATE METHODS
+    ///
+    ///
 
+    /**
+     * Plans refer to this mapper, so these are not associated with the (source) classes, but held by the mapper, so that they are released with it.
+     */
+    private final Cache<Class<?>, Map<Class<?>, MappingPlan>> PLANS = Cache.unbounded("plans", c -> new ConcurrentHashMap<>());
 
+    private final Cache<Class<?>, MethodHandle> CONSTRUCTORS = Cache.unbounded("constructors", this::constructor);
 
     /**
-     * Uncached version of {@link #sourceGetter(Class, Field, Class)}
+     * The leaf dispatch tables of fields that are not in a {@link MappingPlan} (which keeps them itself). This is bounded, and not keyed on the (often JDK) value classes, so that it doesn't keep classes of the destination fields loaded.
      */
-    private List<? extends Function<Object, Optional<ValueAndEffectiveSource>>> _sourceGetter(Class<?> sourceClass,  Class<?> destinationClass, Field destinationField) {
-        final boolean json = isJson(sourceClass);
-        return getAnnotation(sourceClass, destinationClass, destinationField)
-            .stream()
-            .map(effectiveSource -> new Function<Object, Optional<ValueAndEffectiveSource>>() {
-                @Override
-                public Optional<ValueAndEffectiveSource> apply(Object o) {
+    private final Cache<MappedField, Map<Class<?>, LeafDispatch>> LEAF_DISPATCH = Cache.bounded("leafDispatch", 10_000, f -> new ConcurrentHashMap<>());
 
-                    String sourceFieldName = effectiveSource.field();
-                    if (sourceFieldName.equals(UNSET)) {
-                        sourceFieldName = destinationField.getName();
-                    }
-                    boolean subJson = !(effectiveSource.jsonPointer().equals(UNSET) && effectiveSource.jsonPath().equals(UNSET));
-
-                    if (json) {
-                        if (subJson) {
-                            Function<Object, Optional<Object>> v = JsonUtil.valueFromJsonGetter(effectiveSource);
-                            Optional<Object> value = v.apply(o);
-                            if (value.isPresent()) {
-                                return Optional.of(new ValueAndEffectiveSource(effectiveSource, value.get()));
-                            }
-                        }
-                    }
+    /**
+     * A value found in a source object, with the source annotation it was found for
+     * @deprecated Only used by {@link #sourceGetter(Class, Class, Field)}
+     */
+    @Deprecated
+    public record ValueAndEffectiveSource(EffectiveSource effectiveSource, Object value) {}
 
-                    Optional<Field> sourceField = getSourceField(sourceClass, sourceFieldName);
-                    if (sourceField.isPresent()) {
-                        final Field sf = sourceField.get();
-                        Optional<Object> sourceValue = getSourceValue(o, sf, effectiveSource.path());
-                        if (sourceValue.isPresent()) {
-                            if (subJson) {
-                                Optional<Object> sourceJsonValue = JsonUtil.getSourceJsonValue(effectiveSource, o, sf, destinationField);
-                                if (sourceJsonValue.isPresent()) {
-                                    return sourceJsonValue.map(jval -> new ValueAndEffectiveSource(effectiveSource, jval));
-                                }
-                            } else {
-                                return Optional.of(new ValueAndEffectiveSource(effectiveSource, sourceValue.get()));
-                            }
-                        }
-                    }
-                    return Optional.empty();
-                }
-            }).toList();
+    /**
+     * The leaf mappers that {@link LeafMapper#mayMap(MappedField, Class) may map} a value of a certain class, for a certain destination field.
+     * @param valueClass The class of the value, or {@code null} if the value is {@code null}, in which case all leaf mappers are applicable
+     * @param effectiveSource Whose leaf mappers come first
+     * @param mappers The applicable leaf mappers
+     * @param indices For every applicable leaf mapper, its index in the complete chain.
+     */
+    record LeafDispatch(Class<?> valueClass, EffectiveSource effectiveSource, LeafMapper[] mappers, int[] indices) {
+    }
 
+    private LeafDispatch dispatch(Map<Class<?>, LeafDispatch> dispatches, MappedField destinationField, EffectiveSource effectiveSource, Object value) {
+        if (value == null) {
+            return leafDispatch(destinationField, effectiveSource, null);
+        }
+        Class<?> valueClass = value.getClass();
+        LeafDispatch dispatch = dispatches.get(valueClass);
+        if (dispatch == null) {
+            dispatch = leafDispatch(destinationField, effectiveSource, valueClass);
+            dispatches.putIfAbsent(valueClass, dispatch);
+        } else if (dispatch.effectiveSource() != effectiveSource && !dispatch.effectiveSource().equals(effectiveSource)) {
+            // not the effective source of the field itself. Unusual, don't cache
+            dispatch = leafDispatch(destinationField, effectiveSource, valueClass);
+        }
+        return dispatch;
     }
 
-    private final Map<Class<?>, Map<Field, Map<Class<?>, TriFunction<EffectiveSource, Object, Object, Optional<Object>>>>> SETTER_CACHE = new ConcurrentHashMap<>();
+    private LeafDispatch leafDispatch(MappedField destinationField, EffectiveSource effectiveSource, Class<?> valueClass) {
+        List<LeafMapper> chain = new ArrayList<>(effectiveSource.leafMappers());
+        chain.addAll(leafMappers);
+        List<LeafMapper> mappers = new ArrayList<>();
+        int[] indices = new int[chain.size()];
+        for (int i = 0; i < chain.size(); i++) {
+            LeafMapper leafMapper = chain.get(i);
+            if (valueClass == null || mayMap(leafMapper, destinationField, valueClass)) {
+                indices[mappers.size()] = i;
+                mappers.add(leafMapper);
+            }
+        }
+        return new LeafDispatch(valueClass, effectiveSource, mappers.toArray(new LeafMapper[0]), Arrays.copyOf(indices, mappers.size()));
+    }
 
     /**
-     * Returns a BiConsumer, that for a certain {@code destinationField} consumes a destination object, and sets a value
-     * for the given field.
-     * @param destinationField The field to set
-     * @param sourceClass The currently matched class of the source object
-     * @return A {@link TriConsumer} (effective source, destination object, new value) that can set the actual value in the destination
+     * Whether leaf mapping a value of class {@code valueClass} for the given field does nothing else than what {@link ScalarConverters#DEFAULT} would do. See {@link PrimitiveFieldPlan}.
      */
-    private  TriFunction<EffectiveSource, Object, Object, Optional<Object>> destinationValueGetter(Class<?> destinationClass, Field destinationField, Class<?> sourceClass) {
-        Map<Field, Map<Class<?>, TriFunction<EffectiveSource, Object, Object, Optional<Object>>>> classCache = SETTER_CACHE.computeIfAbsent(destinationClass, fi -> new ConcurrentHashMap<>());
-        Map<Class<?>, TriFunction<EffectiveSource, Object, Object, Optional<Object>>> cache = classCache.computeIfAbsent(destinationField, fi -> new ConcurrentHashMap<>());
+    boolean onlyDefaultScalarConversion(MappedField destinationField, EffectiveSource effectiveSource, Class<?> valueClass) {
+        Class<?> type = destinationField.type();
+        for (LeafMapper leafMapper : leafDispatch(destinationField, effectiveSource, valueClass).mappers()) {
+            if (leafMapper == ScalarLeafMapper.INSTANCE) {
+                if (scalarConverters.converter(valueClass, type) != ScalarConverters.DEFAULT.converter(valueClass, type)) {
+                    return false;
+                }
+            } else if (!(leafMapper == RecursiveLeafMapper.INSTANCE && type.isPrimitive())) {
+                // the recursive leaf mapper can't instantiate primitives, others may do anything
+                return false;
+            }
+        }
+        return true;
+    }
 
-        return cache.computeIfAbsent(sourceClass, c -> _destinationValueGetter(destinationClass, destinationField, c));
+    private static boolean mayMap(LeafMapper leafMapper, MappedField destinationField, Class<?> valueClass) {
+        try {
+            return leafMapper.mayMap(destinationField, valueClass);
+        } catch (RuntimeException e) {
+            // e.g. the type of the destination field can't be determined. Let the leaf mapper itself decide.
+            log.debug("{}: {}", leafMapper, e.getMessage());
+            return true;
+        }
     }
 
     /**
-     * Uncached version of {@link #destinationSetter(Class, Field, Class)}
+     * Prepares mapping many objects to {@code destinationClass} in the current thread. See {@link BatchStrategy}.
      */
-    private TriFunction<EffectiveSource, Object, Object, Optional<Object>> _destinationValueGetter(Class<?> destinationClass, Field destinationField, Class<?> sourceClass) {
-        List<EffectiveSource> annotation = getAnnotation(sourceClass, destinationClass, destinationField);
+    <T> Batch<T> batch(Class<T> destinationClass) {
+        return new Batch<>(destinationClass);
+    }
 
-        if (isJson(sourceClass)) {
-            destinationField.setAccessible(true);
-            return (effectiveSource, destination, o) -> {
-                try {
-                    MappedField f = MappedField.of(destinationField, effectiveSource);
-                    return mapLeaf(f, effectiveSource, o);
-                } catch (Exception e) {
-                    log.warn("When setting {} in {}: {}", o, destinationField, e.getMessage());
-                    return Optional.empty();
-                }
-            };
-        } else {
+    /**
+     * State for mapping many objects in one thread, with its own json cache. Not thread safe. Closing it clears the json cache.
+     */
+    final class Batch<T> implements AutoCloseable {
+        private final Class<T> destinationClass;
+        private final MethodHandle constructor;
+        private final JsonCache jsonCache = new JsonCache(jsonCacheSize, contentJsonCache);
+        private final Map<Class<?>, MappingPlan> plans = new HashMap<>();
+        private Class<?> sourceClass;
+        private MappingPlan plan;
+
+        Batch(Class<T> destinationClass) {
+            this.destinationClass = destinationClass;
+            this.constructor = CONSTRUCTORS.get(destinationClass);
+        }
 
-            destinationField.setAccessible(true);
-            return (effectiveSource, destination, o) -> {
-                try {
-                    MappedField f = MappedField.of(destinationField, effectiveSource);
-                    return mapLeaf(f, effectiveSource, o);
+        T map(Object source) {
+            if (source == null) {
+                return null;
+            }
+            if (source.getClass() != sourceClass) {
+                sourceClass = source.getClass();
+                plan = plans.computeIfAbsent(sourceClass, c -> plan(c, destinationClass));
+            }
+            T destination = newInstance(destinationClass, constructor);
+            try {
+                plan.map(source, destination, jsonCache);
+            } finally {
+                close();
+            }
+            return destination;
+        }
 
-                } catch (Exception e) {
-                    log.warn("When setting '{}' in {}: {} (because {})", o, destinationField, e.getMessage(), annotation);
-                    return Optional.empty();
-                }
-            };
+        @Override
+        public void close() {
+            jsonCache.clear();
         }
     }
 
-
-    public record ValueAndEffectiveSource(EffectiveSource effectiveSource, Object value) {}
-
+    /**
+     * A handle of type {@code ()Object} calling the no-args constructor of the given class
+     */
+    private MethodHandle constructor(Class<?> destinationClass) {
+        MethodType type = MethodType.methodType(void.class);
+        try {
+            MethodHandle handle;
+            try {
+                handle = MethodHandles.privateLookupIn(destinationClass, lookup).findConstructor(destinationClass, type);
+            } catch (IllegalAccessException e) {
+                log.debug("{}, falling back to setAccessible", e.getMessage());
+                Constructor<?> constructor = destinationClass.getDeclaredConstructor();
+                constructor.setAccessible(true);
+                handle = lookup.unreflectConstructor(constructor);
+            }
+            return handle.asType(MethodType.methodType(Object.class));
+        } catch (ReflectiveOperationException e) {
+            throw new MapException(e);
+        }
+    }
 
 }
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2024 Licensed under the Apache License, Version 2.0
+ */
+package nl.beeldengeluid.mapping;
+
+import nl.beeldengeluid.mapping.impl.JsonCache;
+
+/**
+ * A scope for a number of mappings, with its own {@link JsonCache}. Json in source objects is parsed only once within it, and everything cached is released when it is {@link #close() closed}:
+ * <pre>{@code
+ * try (MappingContext context = mapper.context()) {
+ *     Destination destination = context.map(source, Destination.class);
+ * }
+ * }</pre>
+ * <p>
+ * This does not depend on thread locals (which {@link Mapper#map(Object, Object)} uses), so it is suitable for e.g. virtual threads: just create a context per task. Instances are not thread safe.
+ * <p>
+ * This doesn't apply to {@link PrecompiledMapper}s, which still use the json cache of the current thread.
+ *
+ * @author Michiel Meeuwissen
+ * @since 0.8
+ */
+public final class MappingContext implements AutoCloseable {
+
+    private final Mapper mapper;
+    private final JsonCache jsonCache;
+
+    MappingContext(Mapper mapper, JsonCache jsonCache) {
+        this.mapper = mapper;
+        this.jsonCache = jsonCache;
+    }
+
+    /**
+     * As {@link Mapper#map(Object, Class)}, but using the json cache of this context.
+     */
+    public <T> T map(Object source, Class<T> destinationClass) {
+        T destination = mapper.newInstance(destinationClass);
+        map(source, destination);
+        return destination;
+    }
+
+    /**
+     * As {@link Mapper#map(Object, Object)}, but using the json cache of this context.
+     */
+    public void map(Object source, Object destination) {
+        mapper.plan(source.getClass(), destination.getClass()).map(source, destination, jsonCache);
+    }
+
+    public Mapper mapper() {
+        return mapper;
+    }
+
+    /**
+     * @return The json cache of this context
+     */
+    public JsonCache jsonCache() {
+        return jsonCache;
+    }
+
+    /**
+     * Clears the json cache. The context can still be used after this.
+     */
+    @Override
+    public void close() {
+        jsonCache.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "MappingContext " + jsonCache;
+    }
+}
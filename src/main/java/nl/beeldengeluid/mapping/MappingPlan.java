@@ -0,0 +1,503 @@
+/*
+ * Copyright (C) 2024 Licensed under the Apache License, Version 2.0
+ */
+package nl.beeldengeluid.mapping;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import nl.beeldengeluid.mapping.annotations.Source;
+import nl.beeldengeluid.mapping.impl.JsonCache;
+import nl.beeldengeluid.mapping.impl.JsonPointerFilter;
+import nl.beeldengeluid.mapping.impl.JsonPointerTrie;
+import nl.beeldengeluid.mapping.impl.JsonTape;
+import nl.beeldengeluid.mapping.impl.JsonUtil;
+
+import static nl.beeldengeluid.mapping.annotations.Source.UNSET;
+import static nl.beeldengeluid.mapping.impl.Util.*;
+
+/**
+ * The precompiled mapping of one source class to one destination class.
+ * <p>
+ * All reflection needed to map objects of {@link #sourceClass()} to objects of {@link #destinationClass()} is done once, when the plan is created by {@link Mapper#plan(Class, Class)}. The plan only contains the destination fields that actually match a {@link Source} annotation, so that
+ * {@link #map(Object, Object)} is just a flat loop over those.
+ * <p>
+ * Fields are read and written using {@link MethodHandle}s, obtained once via the {@link Mapper#lookup() lookup} of the mapper.
+ * <p>
+ * If the mapper {@link Mapper#generatesMappers() generates mappers}, then after {@link Mapper#generateMapperThreshold()} mappings the plan is compiled to a dedicated hidden class (see {@link MappingPlanCompiler}), which is used from then on.
+ * <p>
+ * If a {@link PrecompiledMapper} is available for the class pair, the plan just delegates to that.
+ * <p>
+ * Besides that, a {@code MappingPlan} is immutable, and hence thread safe.
+ *
+ * @author Michiel Meeuwissen
+ * @since 0.8
+ */
+@Slf4j
+public final class MappingPlan {
+
+    @Getter
+    private final Class<?> sourceClass;
+
+    @Getter
+    private final Class<?> destinationClass;
+
+    private final List<FieldPlan> fields;
+
+    private final Mapper mapper;
+
+    private final MethodHandles.Lookup lookup;
+
+    @SuppressWarnings("rawtypes")
+    private final PrecompiledMapper precompiled;
+
+    /**
+     * The number of mappings after which this plan is compiled to a hidden class, or {@code -1} if that never happens.
+     */
+    private final int compileThreshold;
+
+    private int count = 0;
+
+    private volatile MappingPlanCompiler.Compiled compiled;
+
+    /**
+     * Per source field (and {@link Source#path() path}) containing json, how the json pointers used on it are evaluated.
+     */
+    private final Map<List<String>, JsonField> jsonFields;
+
+    MappingPlan(Mapper mapper, Class<?> sourceClass, Class<?> destinationClass) {
+        this.sourceClass = sourceClass;
+        this.destinationClass = destinationClass;
+        this.mapper = mapper;
+        this.lookup = mapper.lookup();
+        this.compileThreshold = mapper.generatesMappers() ? mapper.generateMapperThreshold() : -1;
+        this.precompiled = mapper.usesPrecompiledMappers() ? PrecompiledMappers.find(sourceClass, destinationClass) : null;
+        if (precompiled == null) {
+            this.jsonFields = isJson(sourceClass) ? Map.of() : jsonFields();
+            List<FieldPlan> list = new ArrayList<>();
+            collectFields(destinationClass, list);
+            this.fields = List.copyOf(list);
+        } else {
+            log.debug("Using {} for {} -> {}", precompiled, sourceClass, destinationClass);
+            this.jsonFields = Map.of();
+            this.fields = List.of();
+        }
+    }
+
+    /**
+     * The destination fields this plan will fill, in the order they are filled.
+     * @return An unmodifiable list of fields
+     */
+    public List<Field> mappedFields() {
+        List<FieldPlan> result = fields;
+        if (precompiled != null) {
+            result = new ArrayList<>();
+            collectFields(destinationClass, result);
+        }
+        return result.stream().map(FieldPlan::destinationField).toList();
+    }
+
+    /**
+     * The getters of the values for one destination field, for {@link Mapper#sourceGetter(Class, Class, Field)}
+     */
+    @SuppressWarnings("deprecation")
+    List<Function<Object, Optional<Mapper.ValueAndEffectiveSource>>> valueGetters(Field destinationField) {
+        List<FieldPlan> result = fields;
+        if (precompiled != null) {
+            result = new ArrayList<>();
+            collectFields(destinationClass, result);
+        }
+        return result.stream()
+            .filter(f -> f.destinationField().equals(destinationField))
+            .flatMap(f -> f.getters().stream())
+            .<Function<Object, Optional<Mapper.ValueAndEffectiveSource>>>map(getter -> source ->
+                Optional.ofNullable(getter.value(source, new LeafResult()))
+                    .map(value -> new Mapper.ValueAndEffectiveSource(getter.effectiveSource(), value)))
+            .toList();
+    }
+
+    /**
+     * @return The {@link PrecompiledMapper} this plan delegates to, if there is one.
+     */
+    public Optional<PrecompiledMapper<?, ?>> precompiled() {
+        return Optional.ofNullable(precompiled);
+    }
+
+    /**
+     * Performs the mapping. {@code source} must be an instance of {@link #sourceClass()}, {@code destination} of {@link #destinationClass()}
+     * @param source The source object
+     * @param destination The destination object
+     */
+    void map(Object source, Object destination) {
+        map(source, destination, null);
+    }
+
+    /**
+     * Like {@link #map(Object, Object)}
+     * @param jsonCache The json cache to use, or {@code null} to use the one of the current thread
+     */
+    @SuppressWarnings("unchecked")
+    void map(Object source, Object destination, JsonCache jsonCache) {
+        JsonCache cache = jsonCache == null ? JsonUtil.cache() : jsonCache;
+        cache.enter();
+        try {
+            if (precompiled != null) {
+                precompiled.map(mapper, source, destination);
+                return;
+            }
+            MappingPlanCompiler.Compiled c = compiled;
+            if (c == null && compileThreshold >= 0 && count++ >= compileThreshold) { // not thread safe, but that only may delay compilation a bit
+                c = compile();
+            }
+            LeafResult result = new LeafResult(cache);
+            if (c != null) {
+                c.map(source, destination, result);
+                return;
+            }
+            for (int i = 0; i < fields.size(); i++) { // no iterator
+                fields.get(i).map(source, destination, result);
+            }
+        } finally {
+            cache.exit();
+        }
+    }
+
+    /**
+     * Whether this plan was compiled to a hidden class already. See {@link Mapper#generatesMappers()}
+     * @return {@code true} if mapping happens via generated code now
+     */
+    public boolean generated() {
+        return compiled != null && ! (compiled instanceof Reflective);
+    }
+
+    private synchronized MappingPlanCompiler.Compiled compile() {
+        if (compiled == null) {
+            try {
+                compiled = MappingPlanCompiler.compile(this, fields);
+            } catch (Exception | LinkageError e) {
+                log.warn("Could not compile {}: {} {}. Keep mapping reflectively", this, e.getClass().getName(), e.getMessage());
+                compiled = new Reflective(fields);
+            }
+        }
+        return compiled;
+    }
+
+    /**
+     * Fall back if compilation failed.
+     */
+    private record Reflective(List<FieldPlan> fields) implements MappingPlanCompiler.Compiled {
+        @Override
+        public void map(Object source, Object destination, LeafResult result) {
+            for (int i = 0; i < fields.size(); i++) {
+                fields.get(i).map(source, destination, result);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MappingPlan " + sourceClass.getName() + " -> " + destinationClass.getName() + " " + fields.stream().map(f -> f.destinationField().getName()).toList();
+    }
+
+    /**
+     * Walks up the class hierarchy of the destination class. Fields of super classes are mapped first.
+     */
+    private void collectFields(Class<?> forClass, List<FieldPlan> result) {
+        final Class<?> superClass = forClass.getSuperclass();
+        if (superClass != null) {
+            collectFields(superClass, result);
+        }
+        for (Field destinationField : forClass.getDeclaredFields()) {
+            List<SourceGetter> getters = sourceGetters(destinationField);
+            if (getters.isEmpty()) {
+                log.debug("Ignored destination field {} (No (matching) @Source annotation for {})", destinationField, sourceClass);
+            } else {
+                result.add(new FieldPlan(mapper, destinationField, setter(lookup, destinationField), getters, PrimitiveFieldPlan.of(mapper, lookup, destinationField, getters)));
+            }
+        }
+    }
+
+    /**
+     * Collects the json pointers used on every source field (and path), over all destination fields. Definite json paths are converted to json pointers.
+     * <p>
+     * If more than one pointer is used on the same json, they are all evaluated at once, using a {@link JsonPointerTrie}. If the mapper {@link Mapper#filtersJson() filters json}, the json is parsed with a {@link JsonPointerFilter}, unless it is also used with a json path that is not definite, since that needs the entire json anyway.
+     * <p>
+     * If the mapper {@link Mapper#indexesJson() indexes json}, such json is not parsed at all, but every pointer is evaluated on a {@link JsonTape}.
+     */
+    private Map<List<String>, JsonField> jsonFields() {
+        Map<List<String>, List<String>> pointers = new HashMap<>();
+        Set<List<String>> withJsonPath = new HashSet<>();
+        for (Class<?> c = destinationClass; c != null; c = c.getSuperclass()) {
+            for (Field destinationField : c.getDeclaredFields()) {
+                for (EffectiveSource effectiveSource : getAnnotation(sourceClass, destinationClass, destinationField)) {
+                    List<String> key = jsonKey(destinationField, effectiveSource);
+                    String pointer = jsonPointer(effectiveSource);
+                    if (pointer != null) {
+                        pointers.computeIfAbsent(key, k -> new ArrayList<>()).add(pointer);
+                    } else if (!UNSET.equals(effectiveSource.jsonPath())) {
+                        withJsonPath.add(key);
+                    }
+                }
+            }
+        }
+        Map<List<String>, JsonField> result = new HashMap<>();
+        pointers.forEach((key, list) -> {
+            if (mapper.indexesJson() && !withJsonPath.contains(key)) {
+                result.put(key, new JsonField(null, null, true));
+                return;
+            }
+            JsonPointerFilter filter = mapper.filtersJson() && !withJsonPath.contains(key) ? JsonPointerFilter.of(list) : null;
+            JsonPointerTrie trie = new HashSet<>(list).size() > 1 ? JsonPointerTrie.of(list) : null;
+            if (filter != null || trie != null) {
+                result.put(key, new JsonField(filter, trie, false));
+            }
+        });
+        log.debug("Json fields for {}: {}", this, result);
+        return Map.copyOf(result);
+    }
+
+    /**
+     * @return The json pointer of the effective source, or the equivalent of its json path, or {@code null}
+     */
+    private static String jsonPointer(EffectiveSource effectiveSource) {
+        if (!UNSET.equals(effectiveSource.jsonPath())) {
+            return UNSET.equals(effectiveSource.jsonPointer()) ? JsonUtil.definitePointer(effectiveSource.jsonPath()) : null;
+        }
+        return UNSET.equals(effectiveSource.jsonPointer()) ? null : effectiveSource.jsonPointer();
+    }
+
+    /**
+     * @return The name of the source field, followed by the path
+     */
+    private static List<String> jsonKey(Field destinationField, EffectiveSource effectiveSource) {
+        List<String> key = new ArrayList<>();
+        key.add(UNSET.equals(effectiveSource.field()) ? destinationField.getName() : effectiveSource.field());
+        key.addAll(effectiveSource.path());
+        return key;
+    }
+
+    /**
+     * Creates for every matching {@link EffectiveSource} a function to get the value from a source object.
+     */
+    private List<SourceGetter> sourceGetters(Field destinationField) {
+        final boolean json = isJson(sourceClass);
+        return getAnnotation(sourceClass, destinationClass, destinationField)
+            .stream()
+            .map(effectiveSource -> {
+                String sourceFieldName = effectiveSource.field();
+                if (sourceFieldName.equals(UNSET)) {
+                    sourceFieldName = destinationField.getName();
+                }
+                final boolean subJson = !(effectiveSource.jsonPointer().equals(UNSET) && effectiveSource.jsonPath().equals(UNSET));
+                final Function<Object, Optional<Object>> jsonGetter = json && subJson ? JsonUtil.valueFromJsonGetter(effectiveSource) : null;
+                final Field sourceField = getSourceField(sourceClass, sourceFieldName).orElse(null);
+                final MethodHandle sourceGetter = sourceField == null ? null : getter(lookup, sourceField);
+                final boolean direct = !json && !subJson && effectiveSource.path().isEmpty();
+                final JsonField jsonField = subJson ? jsonFields.get(jsonKey(destinationField, effectiveSource)) : null;
+                final JsonPointerFilter filter = jsonField == null ? null : jsonField.filter();
+                final JsonPointerTrie trie = jsonField == null ? null : jsonField.trie();
+                final String pointer = jsonPointer(effectiveSource);
+                final int slot = trie == null || pointer == null ? -1 : trie.slot(pointer);
+                final JsonPointer tapePointer = jsonField != null && jsonField.tape() && pointer != null ? JsonPointer.compile(pointer) : null;
+                final UnaryOperator<JsonNode> navigator = subJson && !json && slot < 0 && tapePointer == null ? JsonUtil.navigator(effectiveSource) : null;
+                final BiFunction<Object, JsonCache, JsonNode> jsonNodeGetter;
+                if (!subJson) {
+                    jsonNodeGetter = null;
+                } else if (json) {
+                    final Function<Object, JsonNode> fromJson = JsonUtil.nodeFromJsonGetter(effectiveSource);
+                    jsonNodeGetter = (o, cache) -> fromJson.apply(o);
+                } else if (sourceGetter != null && slot >= 0) {
+                    jsonNodeGetter = (o, cache) -> {
+                        Object value = getSourceValue(lookup, o, sourceGetter, effectiveSource.path()).orElse(null);
+                        return value == null ? null : JsonUtil.getJsonNodes(value, filter, trie, cache)[slot];
+                    };
+                } else if (sourceGetter != null && tapePointer != null) {
+                    jsonNodeGetter = (o, cache) -> {
+                        Object value = getSourceValue(lookup, o, sourceGetter, effectiveSource.path()).orElse(null);
+                        return value == null ? null : JsonUtil.getJsonNode(value, tapePointer, cache);
+                    };
+                } else if (sourceGetter != null) {
+                    jsonNodeGetter = (o, cache) -> {
+                        Object value = getSourceValue(lookup, o, sourceGetter, effectiveSource.path()).orElse(null);
+                        return value == null ? null : navigator.apply(JsonUtil.getJson(value, filter, cache));
+                    };
+                } else {
+                    jsonNodeGetter = null;
+                }
+
+                return new SourceGetter(effectiveSource, MappedField.of(destinationField, effectiveSource), sourceField, direct ? sourceGetter : null, jsonNodeGetter, (o, cache) -> {
+                    if (jsonGetter != null) {
+                        Optional<Object> value = jsonGetter.apply(o);
+                        if (value.isPresent()) {
+                            return value;
+                        }
+                    }
+                    if (sourceGetter != null) {
+                        Optional<Object> sourceValue = getSourceValue(lookup, o, sourceGetter, effectiveSource.path());
+                        if (sourceValue.isPresent()) {
+                            if (slot >= 0) {
+                                return Optional.ofNullable(JsonUtil.unwrapJson(JsonUtil.getJsonNodes(sourceValue.get(), filter, trie, cache)[slot]));
+                            } else if (tapePointer != null) {
+                                return Optional.ofNullable(JsonUtil.unwrapJson(JsonUtil.getJsonNode(sourceValue.get(), tapePointer, cache)));
+                            } else if (subJson) {
+                                return Optional.ofNullable(JsonUtil.unwrapJson(navigator.apply(JsonUtil.getJson(sourceValue.get(), filter, cache))));
+                            } else {
+                                return sourceValue;
+                            }
+                        }
+                    }
+                    return Optional.empty();
+                }, new ConcurrentHashMap<>());
+            }).toList();
+    }
+
+    /**
+     * How the json in one source field is evaluated
+     * @param filter The filter to parse it with, or {@code null}
+     * @param trie The trie to evaluate all json pointers on it with at once, or {@code null}
+     * @param tape Whether the json pointers are evaluated on a {@link JsonTape} instead
+     */
+    record JsonField(JsonPointerFilter filter, JsonPointerTrie trie, boolean tape) {
+    }
+
+    /**
+     * Getting a value from a source object, for one {@link EffectiveSource}
+     * @param effectiveSource The source annotation this getter was created for
+     * @param mappedField The destination field, as passed to the leaf mappers. Created once, so that leaf mappers can use it as a key.
+     * @param sourceField The field of the source object the value is read from, if there is one
+     * @param directGetter If the value is just the value of one field of the source object, a handle of type {@code (Object)Object} to read it. Otherwise {@code null}.
+     * @param jsonNodeGetter If the value is taken from json with a json pointer or json path, a function to get the {@link JsonNode} itself (from the source object, using the given json cache). Otherwise {@code null}.
+     * @param getter Function producing the (optional) value from the source object, using the given json cache
+     * @param leafDispatch The leaf mappers applicable to {@link #mappedField()} per value class. Kept here, so it is released with the plan.
+     */
+    record SourceGetter(EffectiveSource effectiveSource, MappedField mappedField, Field sourceField, MethodHandle directGetter, BiFunction<Object, JsonCache, JsonNode> jsonNodeGetter, BiFunction<Object, JsonCache, Optional<Object>> getter, Map<Class<?>, Mapper.LeafDispatch> leafDispatch) {
+
+        /**
+         * Gets the value from the source object. For a {@link #directGetter()} without wrapping it in an {@link Optional}.
+         * @return The value, or {@code null} if there is none
+         */
+        Object value(Object source, LeafResult result) {
+            if (directGetter == null) {
+                return getter.apply(source, result.jsonCache()).orElse(null);
+            }
+            try {
+                return (Object) directGetter.invokeExact(source);
+            } catch (ClassCastException e) {
+                log.warn(e.getMessage());
+                return null;
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * The plan for one destination field: how to get its value(s), and how to set it.
+     */
+    static final class FieldPlan {
+        private final Mapper mapper;
+        private final Field destinationField;
+        private final MethodHandle setter;
+        private final List<SourceGetter> getters;
+        private final PrimitiveFieldPlan primitive;
+
+        FieldPlan(Mapper mapper, Field destinationField, MethodHandle setter, List<SourceGetter> getters, PrimitiveFieldPlan primitive) {
+            this.mapper = mapper;
+            this.destinationField = destinationField;
+            this.setter = setter;
+            this.getters = getters;
+            this.primitive = primitive;
+        }
+
+        Field destinationField() {
+            return destinationField;
+        }
+
+        List<SourceGetter> getters() {
+            return getters;
+        }
+
+        MethodHandle setter() {
+            return setter;
+        }
+
+        /**
+         * If the destination field is primitive, and its value can be copied without boxing, how to do that. Otherwise {@code null}.
+         */
+        PrimitiveFieldPlan primitive() {
+            return primitive;
+        }
+
+        /**
+         * For the destination field, try to get value from the source, and set
+         * this value in destination. Or do nothing if there is no match found
+         * @param result Reused for the leaf mapping
+         */
+        void map(Object source, Object destination, LeafResult result) {
+            if (primitive != null && mapPrimitive(source, destination, result)) {
+                return;
+            }
+            Object determinedValue = null;
+            for (int i = 0; i < getters.size(); i++) {
+                SourceGetter getter = getters.get(i);
+                Object value = getter.value(source, result);
+                if (value != null) {
+                    determinedValue = mapLeaf(getter, value, result);
+                }
+            }
+            if (determinedValue != null) {
+                try {
+                    setter.invokeExact(destination, determinedValue);
+                } catch (ClassCastException cce) {
+                    cannotSet(cce, destination, determinedValue);
+                } catch (RuntimeException | Error e) {
+                    throw e;
+                } catch (Throwable e) {
+                    log.warn(e.getMessage());
+                }
+            }
+        }
+
+        private boolean mapPrimitive(Object source, Object destination, LeafResult result) {
+            try {
+                return primitive.map(source, destination, result);
+            } catch (ClassCastException | MapException e) {
+                log.warn(e.getMessage());
+                return true;
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        Object mapLeafOrNull(SourceGetter getter, Object value, LeafResult result) {
+            return value == null ? null : mapLeaf(getter, value, result);
+        }
+
+        void cannotSet(ClassCastException cce, Object destination, Object value) {
+            log.debug("Cannot set {} in {}", value, destinationField);
+        }
+
+        /**
+         * Applies the leaf mappers to a found value. If that fails, the value itself is returned.
+         */
+        Object mapLeaf(SourceGetter getter, Object value, LeafResult result) {
+            return mapper.mapLeafOrValue(getter.mappedField(), getter.effectiveSource(), value, result, getter.leafDispatch());
+        }
+    }
+}
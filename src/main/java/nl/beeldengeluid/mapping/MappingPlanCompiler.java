@@ -0,0 +1,285 @@
+/*
+ * Copyright (C) 2024 Licensed under the Apache License, Version 2.0
+ */
+package nl.beeldengeluid.mapping;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.lang.constant.ConstantDescs;
+import java.lang.invoke.*;
+import java.util.*;
+
+import nl.beeldengeluid.mapping.MappingPlan.FieldPlan;
+import nl.beeldengeluid.mapping.MappingPlan.SourceGetter;
+
+import static java.lang.invoke.MethodType.methodType;
+
+/**
+ * Compiles a {@link MappingPlan} to a dedicated hidden class (see {@link MethodHandles.Lookup#defineHiddenClass(byte[], boolean, MethodHandles.Lookup.ClassOption...)}).
+ * <p>
+ * For every field of the plan a {@link MethodHandle} is composed. If the field is simply read from one field of the source, this directly reads the source field, applies the leaf mappers, and writes the destination field. If both fields are primitive, and no leaf mappers apply, the value is just copied (see {@link PrimitiveFieldPlan}). Otherwise, it just calls {@link FieldPlan#map(Object, Object, LeafResult)}.
+ * These handles are stored as {@code static final} fields of the generated class, and its {@link Compiled#map(Object, Object, LeafResult)} invokes them one by one. Since the JIT considers them constants, it can inline everything, as if the mapping code was written by hand.
+ *
+ * @author Michiel Meeuwissen
+ * @since 0.8
+ */
+@Slf4j
+final class MappingPlanCompiler {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private static final String HANDLE_DESCRIPTOR = "Ljava/lang/invoke/MethodHandle;";
+    private static final String MAP_DESCRIPTOR = "(Ljava/lang/Object;Ljava/lang/Object;" + LeafResult.class.descriptorString() + ")V";
+    private static final MethodType MAP_TYPE = methodType(void.class, Object.class, Object.class, LeafResult.class);
+
+    private MappingPlanCompiler() {
+        // no instances
+    }
+
+    /**
+     * What the generated class implements.
+     */
+    interface Compiled {
+        void map(Object source, Object destination, LeafResult result);
+    }
+
+    static Compiled compile(MappingPlan plan, List<FieldPlan> fields) throws ReflectiveOperationException {
+        List<MethodHandle> handles = new ArrayList<>();
+        for (FieldPlan field : fields) {
+            handles.add(handle(field));
+        }
+        String name = MappingPlanCompiler.class.getPackageName().replace('.', '/') + "/GeneratedMapping";
+        byte[] bytes = classBytes(name, handles.size());
+        MethodHandles.Lookup hidden = LOOKUP.defineHiddenClassWithClassData(bytes, handles, true);
+        try {
+            Compiled compiled = (Compiled) hidden.findConstructor(hidden.lookupClass(), methodType(void.class)).invoke();
+            log.debug("Compiled {} to {}", plan, hidden.lookupClass());
+            return compiled;
+        } catch (ReflectiveOperationException | RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * The handle of type {@code (Object source, Object destination, LeafResult result)void} mapping one field.
+     */
+    private static MethodHandle handle(FieldPlan field) throws ReflectiveOperationException {
+        List<SourceGetter> getters = field.getters();
+        if (field.primitive() != null && field.primitive().direct() != null) {
+            return MethodHandles.dropArguments(field.primitive().direct(), 2, LeafResult.class);
+        }
+        if (getters.size() == 1 && getters.get(0).directGetter() != null) {
+            SourceGetter getter = getters.get(0);
+            MethodHandle convert = LOOKUP.findVirtual(FieldPlan.class, "mapLeafOrNull", methodType(Object.class, SourceGetter.class, Object.class, LeafResult.class));
+            convert = MethodHandles.insertArguments(convert, 0, field, getter);
+            // (Object source, LeafResult result)Object
+            MethodHandle value = MethodHandles.filterArguments(convert, 0, getter.directGetter());
+
+            MethodHandle cannotSet = LOOKUP.findVirtual(FieldPlan.class, "cannotSet", methodType(void.class, ClassCastException.class, Object.class, Object.class))
+                .bindTo(field);
+            MethodHandle set = MethodHandles.catchException(field.setter(), ClassCastException.class, cannotSet);
+            MethodHandle isNull = LOOKUP.findStatic(Objects.class, "isNull", methodType(boolean.class, Object.class));
+            // (Object destination, Object value)void
+            set = MethodHandles.guardWithTest(
+                MethodHandles.dropArguments(isNull, 0, Object.class),
+                MethodHandles.empty(set.type()),
+                set);
+            // (Object destination, Object source, LeafResult result)void
+            MethodHandle combined = MethodHandles.collectArguments(set, 1, value);
+            return MethodHandles.permuteArguments(combined, MAP_TYPE, 1, 0, 2);
+        } else {
+            return LOOKUP.findVirtual(FieldPlan.class, "map", MAP_TYPE).bindTo(field);
+        }
+    }
+
+    /**
+     * Produces the byte code of the hidden class. It has a static final {@link MethodHandle} field for every field of the plan, which are initialized from the class data (see {@link MethodHandles#classDataAt(MethodHandles.Lookup, String, Class, int)}). The {@code map} method just invokes them all.
+     */
+    static byte[] classBytes(String internalName, int fieldCount) {
+        if (fieldCount > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many fields " + fieldCount);
+        }
+        try {
+            ConstantPool cp = new ConstantPool();
+            int thisClass = cp.classRef(internalName);
+            int objectClass = cp.classRef("java/lang/Object");
+            int compiledInterface = cp.classRef(Compiled.class.getName().replace('.', '/'));
+            int code = cp.utf8("Code");
+            int objectInit = cp.methodRef("java/lang/Object", "<init>", "()V");
+            int lookup = cp.methodRef("java/lang/invoke/MethodHandles", "lookup", "()Ljava/lang/invoke/MethodHandles$Lookup;");
+            int classDataAt = cp.methodRef("java/lang/invoke/MethodHandles", "classDataAt", "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/Class;I)Ljava/lang/Object;");
+            int defaultName = cp.string(ConstantDescs.DEFAULT_NAME);
+            int methodHandleClass = cp.classRef("java/lang/invoke/MethodHandle");
+            int invokeExact = cp.methodRef("java/lang/invoke/MethodHandle", "invokeExact", MAP_DESCRIPTOR);
+            int[] fieldNames = new int[fieldCount];
+            int[] fieldRefs = new int[fieldCount];
+            for (int i = 0; i < fieldCount; i++) {
+                fieldNames[i] = cp.utf8("f" + i);
+                fieldRefs[i] = cp.fieldRef(internalName, "f" + i, HANDLE_DESCRIPTOR);
+            }
+            int handleDescriptor = cp.utf8(HANDLE_DESCRIPTOR);
+            int initName = cp.utf8("<init>");
+            int clinitName = cp.utf8("<clinit>");
+            int voidDescriptor = cp.utf8("()V");
+            int mapName = cp.utf8("map");
+            int mapDescriptor = cp.utf8(MAP_DESCRIPTOR);
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(61); // java 17
+            cp.writeTo(out);
+            out.writeShort(0x0001 | 0x0010 | 0x0020); // public final super
+            out.writeShort(thisClass);
+            out.writeShort(objectClass);
+            out.writeShort(1);
+            out.writeShort(compiledInterface);
+
+            out.writeShort(fieldCount);
+            for (int i = 0; i < fieldCount; i++) {
+                out.writeShort(0x0002 | 0x0008 | 0x0010); // private static final
+                out.writeShort(fieldNames[i]);
+                out.writeShort(handleDescriptor);
+                out.writeShort(0);
+            }
+
+            out.writeShort(3);
+            {
+                ByteArrayOutputStream init = new ByteArrayOutputStream();
+                DataOutputStream c = new DataOutputStream(init);
+                c.writeByte(0x2a); // aload_0
+                c.writeByte(0xb7); // invokespecial
+                c.writeShort(objectInit);
+                c.writeByte(0xb1); // return
+                writeMethod(out, 0x0001, initName, voidDescriptor, code, 1, 1, init.toByteArray());
+            }
+            {
+                ByteArrayOutputStream clinit = new ByteArrayOutputStream();
+                DataOutputStream c = new DataOutputStream(clinit);
+                c.writeByte(0xb8); // invokestatic
+                c.writeShort(lookup);
+                c.writeByte(0x4b); // astore_0
+                for (int i = 0; i < fieldCount; i++) {
+                    c.writeByte(0x2a); // aload_0
+                    c.writeByte(0x13); // ldc_w
+                    c.writeShort(defaultName);
+                    c.writeByte(0x13); // ldc_w
+                    c.writeShort(methodHandleClass);
+                    c.writeByte(0x11); // sipush
+                    c.writeShort(i);
+                    c.writeByte(0xb8); // invokestatic
+                    c.writeShort(classDataAt);
+                    c.writeByte(0xc0); // checkcast
+                    c.writeShort(methodHandleClass);
+                    c.writeByte(0xb3); // putstatic
+                    c.writeShort(fieldRefs[i]);
+                }
+                c.writeByte(0xb1); // return
+                writeMethod(out, 0x0008, clinitName, voidDescriptor, code, 4, 1, clinit.toByteArray());
+            }
+            {
+                ByteArrayOutputStream map = new ByteArrayOutputStream();
+                DataOutputStream c = new DataOutputStream(map);
+                for (int i = 0; i < fieldCount; i++) {
+                    c.writeByte(0xb2); // getstatic
+                    c.writeShort(fieldRefs[i]);
+                    c.writeByte(0x2b); // aload_1
+                    c.writeByte(0x2c); // aload_2
+                    c.writeByte(0x2d); // aload_3
+                    c.writeByte(0xb6); // invokevirtual
+                    c.writeShort(invokeExact);
+                }
+                c.writeByte(0xb1); // return
+                writeMethod(out, 0x0001 | 0x0010, mapName, mapDescriptor, code, 4, 4, map.toByteArray());
+            }
+            out.writeShort(0); // class attributes
+            return bytes.toByteArray();
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    private static void writeMethod(DataOutputStream out, int access, int name, int descriptor, int codeAttribute, int maxStack, int maxLocals, byte[] code) throws IOException {
+        if (code.length > 0xFFFF) {
+            throw new IllegalArgumentException("Method too large");
+        }
+        out.writeShort(access);
+        out.writeShort(name);
+        out.writeShort(descriptor);
+        out.writeShort(1);
+        out.writeShort(codeAttribute);
+        out.writeInt(2 + 2 + 4 + code.length + 2 + 2);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(code.length);
+        out.write(code);
+        out.writeShort(0); // exception table
+        out.writeShort(0); // attributes
+    }
+
+    /**
+     * The constant pool of the class file being generated. Entries are deduplicated.
+     */
+    private static final class ConstantPool {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        private final Map<String, Integer> entries = new HashMap<>();
+        private int count = 1;
+
+        int utf8(String value) throws IOException {
+            Integer existing = entries.get("Utf8:" + value);
+            if (existing != null) {
+                return existing;
+            }
+            out.writeByte(1);
+            out.writeUTF(value);
+            return add("Utf8:" + value);
+        }
+
+        int classRef(String internalName) throws IOException {
+            return ref(7, "Class:" + internalName, utf8(internalName));
+        }
+
+        int string(String value) throws IOException {
+            return ref(8, "String:" + value, utf8(value));
+        }
+
+        int fieldRef(String owner, String name, String descriptor) throws IOException {
+            return ref(9, "Field:" + owner + "." + name + ":" + descriptor, classRef(owner), nameAndType(name, descriptor));
+        }
+
+        int methodRef(String owner, String name, String descriptor) throws IOException {
+            return ref(10, "Method:" + owner + "." + name + ":" + descriptor, classRef(owner), nameAndType(name, descriptor));
+        }
+
+        int nameAndType(String name, String descriptor) throws IOException {
+            return ref(12, "NameAndType:" + name + ":" + descriptor, utf8(name), utf8(descriptor));
+        }
+
+        private int ref(int tag, String key, int... indices) throws IOException {
+            Integer existing = entries.get(key);
+            if (existing != null) {
+                return existing;
+            }
+            out.writeByte(tag);
+            for (int index : indices) {
+                out.writeShort(index);
+            }
+            return add(key);
+        }
+
+        private int add(String key) {
+            entries.put(key, count);
+            return count++;
+        }
+
+        void writeTo(DataOutputStream dest) throws IOException {
+            dest.writeShort(count);
+            bytes.writeTo(dest);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2024 Licensed under the Apache License, Version 2.0
+ */
+package nl.beeldengeluid.mapping;
+
+import java.util.Optional;
+import java.util.function.Function;
+
+import nl.beeldengeluid.mapping.annotations.Source;
+import nl.beeldengeluid.mapping.impl.JsonUtil;
+
+/**
+ * A mapper from one source class to one destination class, which was generated at compile time from the {@link Source} annotations on the destination class (by the {@code mapping-annotations-processor}).
+ * <p>
+ * Implementations are found using {@link java.util.ServiceLoader}. If one is available for a certain pair of classes, {@link Mapper} uses it rather than a reflection based {@link MappingPlan} (unless {@link Mapper#usesPrecompiledMappers()} is false).
+ *
+ * @param <S> The source type
+ * @param <D> The destination type
+ * @author Michiel Meeuwissen
+ * @since 0.8
+ */
+public interface PrecompiledMapper<S, D> {
+
+    /**
+     * @return The class of the source objects this mapper can map
+     */
+    Class<S> sourceClass();
+
+    /**
+     * @return The class of the destination objects this mapper fills
+     */
+    Class<D> destinationClass();
+
+    /**
+     * Whether this mapper can be used for source objects of the given class. Defaults to an exact match with {@link #sourceClass()}, because for subclasses other {@link Source} annotations may match.
+     * @param sourceClass The actual class of a source object
+     * @return whether this mapper can map it
+     */
+    default boolean appliesTo(Class<?> sourceClass) {
+        return sourceClass() == sourceClass;
+    }
+
+    /**
+     * Fills all fields of the destination that are sourced from the source object
+     * @param mapper The mapper that is mapping. Its {@link Mapper#mapLeafOrValue(MappedField, EffectiveSource, Object) leaf mapping} is used for the values
+     * @param source The source object
+     * @param destination The destination object
+     */
+    void map(Mapper mapper, S source, D destination);
+
+    /**
+     * Helper for generated code. See {@link JsonUtil#getJsonValue(EffectiveSource, Object)}
+     */
+    static Object jsonValue(EffectiveSource effectiveSource, Object sourceValue) {
+        return JsonUtil.getJsonValue(effectiveSource, sourceValue).orElse(null);
+    }
+
+    /**
+     * Helper for generated code. See {@link JsonUtil#valueFromJsonGetter(EffectiveSource)}
+     */
+    static Function<Object, Optional<Object>> jsonGetter(EffectiveSource effectiveSource) {
+        return JsonUtil.valueFromJsonGetter(effectiveSource);
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2024 Licensed under the Apache License, Version 2.0
+ */
+package nl.beeldengeluid.mapping;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.*;
+
+/**
+ * Registry of the {@link PrecompiledMapper}s available via {@link ServiceLoader}. They are loaded only once.
+ *
+ * @author Michiel Meeuwissen
+ * @since 0.8
+ */
+@Slf4j
+final class PrecompiledMappers {
+
+    private static volatile Map<Class<?>, List<PrecompiledMapper<?, ?>>> byDestination;
+
+    private PrecompiledMappers() {
+        // no instances
+    }
+
+    /**
+     * @return The precompiled mapper for the given classes, or {@code null} if there is none.
+     */
+    static PrecompiledMapper<?, ?> find(Class<?> sourceClass, Class<?> destinationClass) {
+        for (PrecompiledMapper<?, ?> mapper : load().getOrDefault(destinationClass, List.of())) {
+            if (mapper.appliesTo(sourceClass)) {
+                return mapper;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Makes sure that the {@link ServiceLoader} is consulted again on the next call to {@link #find(Class, Class)}
+     */
+    static void clear() {
+        byDestination = null;
+    }
+
+    private static Map<Class<?>, List<PrecompiledMapper<?, ?>>> load() {
+        Map<Class<?>, List<PrecompiledMapper<?, ?>>> result = byDestination;
+        if (result == null) {
+            synchronized (PrecompiledMappers.class) {
+                result = byDestination;
+                if (result == null) {
+                    result = new HashMap<>();
+                    @SuppressWarnings("rawtypes")
+                    Iterator<PrecompiledMapper> iterator = ServiceLoader.load(PrecompiledMapper.class).iterator();
+                    while (true) {
+                        try {
+                            if (!iterator.hasNext()) {
+                                break;
+                            }
+                            PrecompiledMapper<?, ?> mapper = iterator.next();
+                            log.debug("Found {}", mapper);
+                            result.computeIfAbsent(mapper.destinationClass(), c -> new ArrayList<>()).add(mapper);
+                        } catch (ServiceConfigurationError e) {
+                            log.warn(e.getMessage());
+                        }
+                    }
+                    byDestination = result;
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2024 Licensed under the Apache License, Version 2.0
+ */
+package nl.beeldengeluid.mapping;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.invoke.*;
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.function.BiFunction;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import nl.beeldengeluid.mapping.MappingPlan.SourceGetter;
+import nl.beeldengeluid.mapping.impl.JsonCache;
+import nl.beeldengeluid.mapping.impl.Util;
+
+import static java.lang.invoke.MethodType.methodType;
+
+/**
+ * Maps a destination field of a primitive type without boxing, if the value is a primitive field of the source object, or a number or boolean in json.
+ * <p>
+ * This is only used if the outcome is the same as the outcome of the normal path via {@link Mapper#mapLeaf(MappedField, EffectiveSource, Object, LeafResult)}, i.e. if no leaf mappers apply, besides the {@link ScalarConverters#DEFAULT default scalar conversions} between numbers.
+ *
+ * @author Michiel Meeuwissen
+ * @since 0.8
+ */
+@Slf4j
+final class PrimitiveFieldPlan {
+
+    private final Class<?> type;
+
+    /**
+     * If the source is a primitive field: a handle of type {@code (Object source, Object destination)void} copying it.
+     */
+    private final MethodHandle direct;
+
+    /**
+     * Otherwise, gets the json node to read the value from.
+     */
+    private final BiFunction<Object, JsonCache, JsonNode> json;
+
+    /**
+     * Of type {@code (Object destination, type value)void}
+     */
+    private final MethodHandle setter;
+
+    private PrimitiveFieldPlan(Class<?> type, MethodHandle direct, BiFunction<Object, JsonCache, JsonNode> json, MethodHandle setter) {
+        this.type = type;
+        this.direct = direct;
+        this.json = json;
+        this.setter = setter;
+    }
+
+    /**
+     * @return A plan for the primitive destination field, or {@code null} if values have to go the normal way
+     */
+    static PrimitiveFieldPlan of(Mapper mapper, MethodHandles.Lookup lookup, Field destinationField, List<SourceGetter> getters) {
+        Class<?> type = destinationField.getType();
+        if (!type.isPrimitive() || type == char.class || getters.size() != 1) {
+            return null;
+        }
+        SourceGetter getter = getters.get(0);
+        try {
+            MethodHandle setter = Util.typedSetter(lookup, destinationField);
+            if (getter.directGetter() != null && getter.sourceField().getType().isPrimitive()) {
+                Class<?> sourceType = getter.sourceField().getType();
+                if (sourceType == boolean.class ? type != boolean.class : type == boolean.class) {
+                    return null;
+                }
+                if (!onlyDefaultScalarConversion(mapper, getter, List.of(Util.wrap(sourceType), Util.wrap(type)))) {
+                    return null;
+                }
+                // (Object source)type, widening if needed
+                MethodHandle get = Util.typedGetter(lookup, getter.sourceField())
+                    .asType(methodType(type, Object.class));
+                // (Object destination, Object source)void
+                MethodHandle copy = MethodHandles.filterArguments(setter, 1, get);
+                return new PrimitiveFieldPlan(type, MethodHandles.permuteArguments(copy, methodType(void.class, Object.class, Object.class), 1, 0), null, setter);
+            }
+            if (getter.jsonNodeGetter() != null && onlyDefaultScalarConversion(mapper, getter, jsonValueClasses(type))) {
+                return new PrimitiveFieldPlan(type, null, getter.jsonNodeGetter(), setter);
+            }
+        } catch (WrongMethodTypeException | IllegalArgumentException e) {
+            // e.g. narrowing from a source field, leave that to the scalar converters
+            log.debug("{}: {}", destinationField, e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Checks the leaf mappers for all classes of values the normal path would encounter: the class of the value as found, and the wrapper class of the destination type that the scalar conversion produces.
+     */
+    private static boolean onlyDefaultScalarConversion(Mapper mapper, SourceGetter getter, List<Class<?>> valueClasses) {
+        for (Class<?> valueClass : valueClasses) {
+            if (!mapper.onlyDefaultScalarConversion(getter.mappedField(), getter.effectiveSource(), valueClass)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The classes the normal path would see for the json values that {@link #map(Object, Object, LeafResult)} handles (see {@code JsonUtil#unwrapJson}), and the wrapper class of the destination type.
+     */
+    private static List<Class<?>> jsonValueClasses(Class<?> type) {
+        if (type == boolean.class) {
+            return List.of(Boolean.class);
+        } else if (type == double.class || type == float.class) {
+            return List.of(Integer.class, Long.class, Double.class, Util.wrap(type));
+        } else {
+            return List.of(Integer.class, Long.class, Util.wrap(type));
+        }
+    }
+
+    /**
+     * @return The handle of type {@code (Object source, Object destination)void} copying a primitive source field, or {@code null}
+     */
+    MethodHandle direct() {
+        return direct;
+    }
+
+    /**
+     * Maps the field
+     * @param result Only its json cache is used
+     * @return {@code false} if the value could not be handled, and needs to go the normal way. E.g. if it is out of range of the destination type, in which case the normal way fails like {@link ScalarConverters#DEFAULT} does.
+     */
+    boolean map(Object source, Object destination, LeafResult result) throws Throwable {
+        if (direct != null) {
+            direct.invokeExact(source, destination);
+            return true;
+        }
+        JsonNode node = json.apply(source, result.jsonCache());
+        if (node == null || node.isMissingNode() || node.isNull()) {
+            // nothing to set
+            return true;
+        }
+        if (type == long.class) {
+            if (node.isInt() || node.isLong()) {
+                setter.invokeExact(destination, node.longValue());
+                return true;
+            }
+        } else if (type == int.class) {
+            if (node.isInt() || (node.isLong() && inRange(node.longValue(), Integer.MIN_VALUE, Integer.MAX_VALUE))) {
+                setter.invokeExact(destination, node.intValue());
+                return true;
+            }
+        } else if (type == double.class) {
+            if (node.isInt() || node.isLong() || node.isDouble() || node.isFloat()) {
+                setter.invokeExact(destination, node.doubleValue());
+                return true;
+            }
+        } else if (type == float.class) {
+            if (node.isInt() || node.isLong() || node.isDouble() || node.isFloat()) {
+                setter.invokeExact(destination, node.floatValue());
+                return true;
+            }
+        } else if (type == boolean.class) {
+            if (node.isBoolean()) {
+                setter.invokeExact(destination, node.booleanValue());
+                return true;
+            }
+        } else if (type == short.class) {
+            if ((node.isInt() || node.isLong()) && inRange(node.longValue(), Short.MIN_VALUE, Short.MAX_VALUE)) {
+                setter.invokeExact(destination, (short) node.longValue());
+                return true;
+            }
+        } else if (type == byte.class) {
+            if ((node.isInt() || node.isLong()) && inRange(node.longValue(), Byte.MIN_VALUE, Byte.MAX_VALUE)) {
+                setter.invokeExact(destination, (byte) node.longValue());
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean inRange(long value, long min, long max) {
+        return value >= min && value <= max;
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2024 Licensed under the Apache License, Version 2.0
+ */
+package nl.beeldengeluid.mapping;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import nl.beeldengeluid.mapping.impl.Cache;
+import nl.beeldengeluid.mapping.impl.ScalarLeafMapper;
+
+import static nl.beeldengeluid.mapping.impl.Util.wrap;
+
+/**
+ * The conversions between scalar types that {@link ScalarLeafMapper} can do, e.g. from a {@code String} to a {@code long}. Every converter is registered for a source class and a destination class.
+ * <p>
+ * Primitive destination types are considered the same as their wrapper classes, so a converter to {@code Long} also fills {@code long} fields.
+ * <p>
+ * Which converter to use for a certain class of values and destination type is resolved only once:
+ * <ol>
+ *     <li>a converter registered for exactly the source class and the destination type</li>
+ *     <li>the first registered converter for a super type of the source class, and exactly the destination type</li>
+ *     <li>if the destination type accepts a {@code String}: {@link Object#toString()}</li>
+ *     <li>the first registered converter for a super type of the source class, and a subtype of the destination type</li>
+ * </ol>
+ * Instances are immutable. Use {@link #with(Class, Class, Function)} to add converters, and configure the result with {@link Mapper#withScalarConverters(ScalarConverters)} (or via {@link Mapper#builder()}).
+ *
+ * @author Michiel Meeuwissen
+ * @since 0.8
+ */
+public final class ScalarConverters {
+
+    /**
+     * Converters from {@link CharSequence} and {@link Number} to all primitive wrappers, {@link BigDecimal} and {@link BigInteger}, and from {@link CharSequence} to {@link Duration}, {@link java.util.UUID}, {@link Instant}, {@link LocalDate} and {@link URI}.
+     * <p>
+     * Numbers are converted to integral types only if that is exact: an {@link ArithmeticException} is thrown for numbers with a fraction, or out of range. Such values are not mapped then.
+     */
+    public static final ScalarConverters DEFAULT = new ScalarConverters(List.of())
+        .with(CharSequence.class, Long.class, s -> Long.parseLong(s.toString()))
+        .with(CharSequence.class, Integer.class, s -> Integer.parseInt(s.toString()))
+        .with(CharSequence.class, Boolean.class, s -> Boolean.parseBoolean(s.toString()))
+        .with(CharSequence.class, Instant.class, Instant::parse)
+        .with(CharSequence.class, LocalDate.class, LocalDate::parse)
+        .with(CharSequence.class, URI.class, s -> URI.create(s.toString()))
+        .with(CharSequence.class, Short.class, s -> Short.parseShort(s.toString()))
+        .with(CharSequence.class, Byte.class, s -> Byte.parseByte(s.toString()))
+        .with(CharSequence.class, Double.class, s -> Double.parseDouble(s.toString()))
+        .with(CharSequence.class, Float.class, s -> Float.parseFloat(s.toString()))
+        .with(CharSequence.class, Character.class, ScalarConverters::toCharacter)
+        .with(CharSequence.class, BigDecimal.class, s -> new BigDecimal(s.toString()))
+        .with(CharSequence.class, BigInteger.class, s -> new BigInteger(s.toString()))
+        .with(CharSequence.class, Duration.class, Duration::parse)
+        .with(CharSequence.class, UUID.class, s -> UUID.fromString(s.toString()))
+        .with(Number.class, Long.class, ScalarConverters::toLongExact)
+        .with(Number.class, Integer.class, n -> Math.toIntExact(toLongExact(n)))
+        .with(Number.class, Short.class, n -> (short) toExact(n, Short.MIN_VALUE, Short.MAX_VALUE))
+        .with(Number.class, Byte.class, n -> (byte) toExact(n, Byte.MIN_VALUE, Byte.MAX_VALUE))
+        .with(Number.class, Double.class, Number::doubleValue)
+        .with(Number.class, Float.class, Number::floatValue)
+        .with(Number.class, BigDecimal.class, ScalarConverters::toBigDecimal)
+        .with(Number.class, BigInteger.class, n -> n instanceof BigInteger bi ? bi : isIntegral(n) ? BigInteger.valueOf(n.longValue()) : toBigDecimal(n).toBigIntegerExact());
+
+    private static final Function<Object, Object> TO_STRING = Object::toString;
+
+    /**
+     * Marks in {@link #resolved} that there is no converter.
+     */
+    private static final Function<Object, Object> NONE = o -> {
+        throw new IllegalStateException();
+    };
+
+    private final List<Converter> converters;
+
+    /**
+     * Keyed on the destination type, and then on the source class. Source classes are mostly JDK classes, and destination types may be application classes (e.g. enums), which must not be kept loaded by a cache on a JDK class.
+     */
+    private final Cache<Class<?>, Map<Class<?>, Function<Object, Object>>> resolved = Cache.perClass("scalarConverters", c -> new ConcurrentHashMap<>());
+
+    private ScalarConverters(List<Converter> converters) {
+        this.converters = converters;
+    }
+
+    /**
+     * @param source The class of values the converter accepts, which includes its subclasses
+     * @param destination The type the converter produces
+     * @param converter The conversion. It may throw an exception if the value cannot be converted, after which the value is left as is.
+     * @return A copy of this, with the given converter. It replaces an existing converter for the same source and destination class.
+     */
+    @SuppressWarnings("unchecked")
+    public <S, D> ScalarConverters with(Class<S> source, Class<D> destination, Function<? super S, ? extends D> converter) {
+        Converter added = new Converter(source, wrap(destination), (Function<Object, Object>) converter);
+        List<Converter> list = new ArrayList<>(converters);
+        boolean replaced = false;
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(i).source() == added.source() && list.get(i).destination() == added.destination()) {
+                list.set(i, added);
+                replaced = true;
+            }
+        }
+        if (!replaced) {
+            list.add(added);
+        }
+        return new ScalarConverters(List.copyOf(list));
+    }
+
+    /**
+     * The converter to use for a value of class {@code sourceClass}, for a field of type {@code destinationType}
+     * @return The converter, or {@code null} if there is none
+     */
+    public Function<Object, Object> converter(Class<?> sourceClass, Class<?> destinationType) {
+        Map<Class<?>, Function<Object, Object>> bySource = resolved.get(destinationType);
+        Function<Object, Object> converter = bySource.get(sourceClass);
+        if (converter == null) {
+            converter = resolve(sourceClass, wrap(destinationType));
+            bySource.putIfAbsent(sourceClass, converter);
+        }
+        return converter == NONE ? null : converter;
+    }
+
+    /**
+     * @return The registered source and destination classes, in order of registration
+     */
+    public Map<Class<?>, List<Class<?>>> registered() {
+        Map<Class<?>, List<Class<?>>> result = new LinkedHashMap<>();
+        for (Converter converter : converters) {
+            result.computeIfAbsent(converter.source(), c -> new ArrayList<>()).add(converter.destination());
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    Cache<?, ?> cache() {
+        return resolved;
+    }
+
+    private Function<Object, Object> resolve(Class<?> sourceClass, Class<?> destination) {
+        for (Converter converter : converters) {
+            if (converter.source() == sourceClass && converter.destination() == destination) {
+                return converter.function();
+            }
+        }
+        for (Converter converter : converters) {
+            if (converter.source().isAssignableFrom(sourceClass) && converter.destination() == destination) {
+                return converter.function();
+            }
+        }
+        if (destination.isAssignableFrom(String.class)) {
+            return TO_STRING;
+        }
+        for (Converter converter : converters) {
+            if (converter.source().isAssignableFrom(sourceClass) && destination.isAssignableFrom(converter.destination())) {
+                return converter.function();
+            }
+        }
+        return NONE;
+    }
+
+    private static boolean isIntegral(Number n) {
+        return n instanceof Long || n instanceof Integer || n instanceof Short || n instanceof Byte;
+    }
+
+    private static BigDecimal toBigDecimal(Number n) {
+        if (n instanceof BigDecimal bd) {
+            return bd;
+        }
+        return n instanceof BigInteger bi ? new BigDecimal(bi) : new BigDecimal(n.toString());
+    }
+
+    /**
+     * @throws ArithmeticException If the number has a fraction, or doesn't fit in a {@code long}
+     */
+    static long toLongExact(Number n) {
+        return isIntegral(n) ? n.longValue() : toBigDecimal(n).longValueExact();
+    }
+
+    /**
+     * @throws ArithmeticException If the number has a fraction, or is not between {@code min} and {@code max}
+     */
+    static long toExact(Number n, long min, long max) {
+        long value = toLongExact(n);
+        if (value < min || value > max) {
+            throw new ArithmeticException(n + " out of range [" + min + ", " + max + "]");
+        }
+        return value;
+    }
+
+    private static Character toCharacter(CharSequence s) {
+        if (s.length() != 1) {
+            throw new IllegalArgumentException("Not a single character: '" + s + "'");
+        }
+        return s.charAt(0);
+    }
+
+    private record Converter(Class<?> source, Class<?> destination, Function<Object, Object> function) {
+    }
+
+    @Override
+    public String toString() {
+        return "ScalarConverters " + registered();
+    }
+}
@@ -2,12 +2,14 @@ package nl.beeldengeluid.mapping;
 
 import java.util.Optional;
 
+import static nl.beeldengeluid.mapping.impl.Util.wrap;
+
 
 /**
  * An abstract version of {@link LeafMapper} that just reduces the needed {@link #map(Mapper, EffectiveSource, MappedField, Object)} to a simpler
  * {@link #map(EffectiveSource, Object)}
  * <p>
- * This is possible if during construction it is specified between what source and destination types this mapper can map.
+ * This is possible if during construction it is specified between what source and destination types this mapper can map. A wrapper class as destination type also applies to fields of the corresponding primitive type.
  * @param <S> the source type this mapper recognizes
  * @param <D> the destination type this mapper recognizes
  */
@@ -26,15 +28,37 @@ public abstract class SimpleLeafMapper<S, D> implements LeafMapper {
     public int weight() {
         return 0;
     }
+
+    @Override
+    public Class<S> sourceType() {
+        return source;
+    }
+
+    @Override
+    public Class<D> destinationType() {
+        return destination;
+    }
+
     @Override
     public final Leaf map(Mapper mapper, EffectiveSource effectiveSource, MappedField destinationField, Object o) {
-        if (destination.isAssignableFrom(destinationField.type()) && source.isInstance(o)) {
-            Optional<D> optionalD = map(effectiveSource, (S) o);
-            if (optionalD.isPresent()) {
-                return LeafMapper.mapped(optionalD.get());
-            }
+        return LeafResult.leaf(this, mapper, effectiveSource, destinationField, o);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public final boolean mapInto(Mapper mapper, EffectiveSource effectiveSource, MappedField destinationField, Object o, LeafResult result) {
+        if (destination.isAssignableFrom(wrap(destinationField.type())) && source.isInstance(o)) {
+            return mapValue(effectiveSource, (S) o, result);
         }
-        return LeafMapper.NOT_MAPPED;
+        return false;
+    }
+
+    /**
+     * Calls {@link #map(EffectiveSource, Object)}, and records its result. {@link SimplerLeafMapper} can do that without wrapping in an {@link Optional}.
+     */
+    boolean mapValue(EffectiveSource effectiveSource, S source, LeafResult result) {
+        Optional<D> optionalD = map(effectiveSource, source);
+        return optionalD.isPresent() && result.mapped(optionalD.get());
     }
 
     protected abstract Optional<D> map(EffectiveSource effectiveSource, S source);
@@ -22,6 +22,12 @@ public abstract class SimplerLeafMapper<S, D> extends SimpleLeafMapper<S, D> {
         return Optional.ofNullable(map(source));
     }
 
+    @Override
+    final boolean mapValue(EffectiveSource effectiveSource, S source, LeafResult result) {
+        D d = map(source);
+        return d != null && result.mapped(d);
+    }
+
     protected abstract D map(S source);
 
 }
@@ -30,6 +30,18 @@ public @interface Source {
      */
     String UNSET = "#UNSET";
 
+    /**
+     * Value for {@link #dateTimeFormat()}: the values are milliseconds since the epoch.
+     * @since 0.8
+     */
+    String EPOCH_MILLIS = "#EPOCH_MILLIS";
+
+    /**
+     * Value for {@link #dateTimeFormat()}: the values are seconds since the epoch.
+     * @since 0.8
+     */
+    String EPOCH_SECONDS = "#EPOCH_SECONDS";
+
     /**
      * The source class in with the other field can be found
      * <p>
@@ -81,6 +93,13 @@ public @interface Source {
      */
     Class<? extends LeafMapper>[] leafMappers() default {};
 
+    /**
+     * The format of date/time values in the source, for destination fields of the {@code java.time} types. A {@link java.time.format.DateTimeFormatter} pattern (e.g. {@code yyyy-MM-dd HH:mm:ss}), {@link #EPOCH_MILLIS} or {@link #EPOCH_SECONDS}. If not specified, strings are parsed as ISO-8601, and numbers as milliseconds since the epoch.
+     * @since 0.8
+     * @see nl.beeldengeluid.mapping.impl.DateTimeLeafMapper
+     */
+    String dateTimeFormat() default UNSET;
+
 
 
 
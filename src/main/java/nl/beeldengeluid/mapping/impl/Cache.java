@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2024 Licensed under the Apache License, Version 2.0
+ */
+package nl.beeldengeluid.mapping.impl;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import nl.beeldengeluid.mapping.CacheStats;
+
+/**
+ * The caches used by this library. There are two kinds:
+ * <ul>
+ *     <li>{@link #perClass(String, Function) Per class}. The values are associated with the class itself (via {@link ClassValue}), so they don't prevent a class (and its class loader) from being unloaded.</li>
+ *     <li>{@link #bounded(String, int, Function) Bounded}. For other keys. When full, arbitrary entries are evicted.</li>
+ * </ul>
+ * Caches that belong to an instance, and whose values refer back to it, are {@link #unbounded(String, Function) unbounded} maps, which are released with the instance.
+ * Caches that are held statically are {@link #global() registered}, so they can be cleared all at once, and statistics can be collected.
+ *
+ * @param <K> Type of the keys
+ * @param <V> Type of the values. Values cannot be {@code null}.
+ * @author Michiel Meeuwissen
+ * @since 0.8
+ */
+public abstract sealed class Cache<K, V> permits Cache.PerClass, Cache.Bounded {
+
+    private static final List<Cache<?, ?>> GLOBAL = new CopyOnWriteArrayList<>();
+
+    private final String name;
+    final LongAdder requests = new LongAdder();
+    final LongAdder misses = new LongAdder();
+
+    private Cache(String name) {
+        this.name = name;
+    }
+
+    /**
+     * A cache with classes as keys.
+     * <p>
+     * The values must not refer to the cache itself (e.g. via the object holding it), since a {@link ClassValue} is never released then (see JDK-8136353). Such caches should be {@link #unbounded(String, Function) unbounded}.
+     * @param name Name, used in {@link #stats()}
+     * @param compute How to compute a value for a class
+     * @param <V> Type of the values
+     */
+    public static <V> Cache<Class<?>, V> perClass(String name, Function<Class<?>, V> compute) {
+        return new PerClass<>(name, compute);
+    }
+
+    /**
+     * A cache with at most {@code maxSize} entries.
+     * @param name Name, used in {@link #stats()}
+     * @param maxSize The maximal number of entries
+     * @param compute How to compute a value for a key
+     * @param <K> Type of the keys
+     * @param <V> Type of the values
+     */
+    public static <K, V> Cache<K, V> bounded(String name, int maxSize, Function<K, V> compute) {
+        return new Bounded<>(name, maxSize, compute);
+    }
+
+    /**
+     * A cache that is not bounded, and just a map. Meant for caches held by instances, which are released with them.
+     * @param name Name, used in {@link #stats()}
+     * @param compute How to compute a value for a key
+     * @param <K> Type of the keys
+     * @param <V> Type of the values
+     */
+    public static <K, V> Cache<K, V> unbounded(String name, Function<K, V> compute) {
+        return new Bounded<>(name, Integer.MAX_VALUE, compute);
+    }
+
+    /**
+     * Registers this cache, so that it is cleared by {@link #clearAll()}, and reported by {@link #statsAll()}. Meant for caches in static fields.
+     * @return this
+     */
+    public Cache<K, V> global() {
+        GLOBAL.add(this);
+        return this;
+    }
+
+    /**
+     * Clears all {@link #global()} caches
+     */
+    public static void clearAll() {
+        GLOBAL.forEach(Cache::clear);
+    }
+
+    /**
+     * @return The statistics of all {@link #global()} caches
+     */
+    public static List<CacheStats> statsAll() {
+        return GLOBAL.stream().map(Cache::stats).toList();
+    }
+
+    /**
+     * Returns the value for the key, calculating it if needed.
+     * @param key The key
+     * @return The (possibly cached) value
+     */
+    public abstract V get(K key);
+
+    public abstract void clear();
+
+    /**
+     * @return The number of entries, or {@code -1} if that is unknown
+     */
+    public abstract long size();
+
+    public CacheStats stats() {
+        long misses = this.misses.sum();
+        return new CacheStats(name, this.requests.sum() - misses, misses, size());
+    }
+
+    @Override
+    public String toString() {
+        return stats().toString();
+    }
+
+    /**
+     * {@link ClassValue} based. Clearing is implemented using a generation count, because a {@link ClassValue} cannot be cleared for all classes at once: outdated values are removed when they are encountered.
+     */
+    static final class PerClass<V> extends Cache<Class<?>, V> {
+
+        private record Entry<V>(int generation, V value) {
+        }
+
+        private volatile int generation = 0;
+
+        private final ClassValue<Entry<V>> values;
+
+        private PerClass(String name, Function<Class<?>, V> compute) {
+            super(name);
+            this.values = new ClassValue<>() {
+                @Override
+                protected Entry<V> computeValue(Class<?> type) {
+                    misses.increment();
+                    return new Entry<>(generation, compute.apply(type));
+                }
+            };
+        }
+
+        @Override
+        public V get(Class<?> key) {
+            requests.increment();
+            Entry<V> entry = values.get(key);
+            while (entry.generation() != generation) {
+                values.remove(key);
+                entry = values.get(key);
+            }
+            return entry.value();
+        }
+
+        @Override
+        public synchronized void clear() {
+            generation++;
+        }
+
+        @Override
+        public long size() {
+            return -1;
+        }
+    }
+
+    static final class Bounded<K, V> extends Cache<K, V> {
+
+        private final Map<K, V> values = new ConcurrentHashMap<>();
+        private final int maxSize;
+        private final Function<K, V> compute;
+
+        private Bounded(String name, int maxSize, Function<K, V> compute) {
+            super(name);
+            if (maxSize < 1) {
+                throw new IllegalArgumentException("maxSize must be positive");
+            }
+            this.maxSize = maxSize;
+            this.compute = compute;
+        }
+
+        @Override
+        public V get(K key) {
+            requests.increment();
+            V value = values.get(key);
+            if (value == null) {
+                misses.increment();
+                value = compute.apply(key);
+                while (values.size() >= maxSize) {
+                    Iterator<K> iterator = values.keySet().iterator();
+                    if (!iterator.hasNext()) {
+                        break;
+                    }
+                    iterator.next();
+                    iterator.remove();
+                }
+                V previous = values.putIfAbsent(key, value);
+                if (previous != null) {
+                    value = previous;
+                }
+            }
+            return value;
+        }
+
+        @Override
+        public void clear() {
+            values.clear();
+        }
+
+        @Override
+        public long size() {
+            return values.size();
+        }
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2024 Licensed under the Apache License, Version 2.0
+ */
+package nl.beeldengeluid.mapping.impl;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import nl.beeldengeluid.mapping.CacheStats;
+
+/**
+ * A cache of parsed json, shared by all threads, and keyed on the <em>content</em> of the {@code byte[]}, {@code String} or {@link ByteBuffer} that was parsed. So if many source objects carry the same json (e.g. a payload copied onto many rows), it is parsed only once.
+ * <p>
+ * This is consulted by a {@link JsonCache} (which is keyed on identity, and is cheaper) if it misses. The content is hashed with a fast 128-bit hash, which is not cryptographic: this should not be used if the json may be crafted to produce collisions.
+ * <p>
+ * The size is bounded by the total length of the cached json (in bytes or chars), which is a measure of the size of the parsed trees too. Least recently used entries are evicted first.
+ * <p>
+ * The trees are shared, so they must not be modified. The {@link nl.beeldengeluid.mapping.Mapper} copies json objects and arrays that end up in destination fields (see {@link JsonUtil#unshare(Object, JsonCache)}), and {@link nl.beeldengeluid.mapping.LeafMapper}s should not modify the json they get. Json of which the content can't be read without consuming it (like an {@link java.io.InputStream}) is just parsed.
+ * <p>
+ * It can be backed by a {@link DiskJsonCache}, so that trees survive the process.
+ *
+ * @author Michiel Meeuwissen
+ * @since 0.8
+ */
+public final class ContentJsonCache {
+
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private static final long M1 = 0x9E3779B97F4A7C15L;
+    private static final long M2 = 0xC2B2AE3D27D4EB4FL;
+
+    private final String name;
+    private final long maxLength;
+    private final LinkedHashMap<Key, JsonNode> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long length = 0;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final DiskJsonCache disk;
+
+    /**
+     * @param maxLength The maximal total length of the cached json
+     */
+    public ContentJsonCache(long maxLength) {
+        this("contentJson", maxLength);
+    }
+
+    /**
+     * @param name The name, used in {@link #stats()}
+     * @param maxLength The maximal total length of the cached json
+     */
+    public ContentJsonCache(String name, long maxLength) {
+        this(name, maxLength, null);
+    }
+
+    /**
+     * @param name The name, used in {@link #stats()}
+     * @param maxLength The maximal total length of the cached json
+     * @param disk The persistent cache to consult for json that is not cached in memory, or {@code null}. If it is set, complete trees are cached, also if a filter is requested.
+     * @since 0.8
+     */
+    public ContentJsonCache(String name, long maxLength, DiskJsonCache disk) {
+        if (maxLength < 1) {
+            throw new IllegalArgumentException("maxLength must be positive: " + maxLength);
+        }
+        this.name = name;
+        this.maxLength = maxLength;
+        this.disk = disk;
+    }
+
+    /**
+     * Gets the parsed json, parsing it if it isn't cached yet.
+     * @param json A {@code byte[]}, {@code String} or {@link ByteBuffer}, or something else {@link JsonUtil#getJson(Object) parsable}, which is not cached then
+     * @param filter The filter to parse with (see {@link JsonUtil#getJson(Object, JsonPointerFilter)}), or {@code null}. It is compared by identity.
+     * @return The (shared) tree
+     */
+    public JsonNode get(Object json, JsonPointerFilter filter) {
+        Key key = key(json, filter);
+        if (key == null) {
+            return JsonUtil.parse(json, filter);
+        }
+        JsonNode result;
+        synchronized (entries) {
+            result = entries.get(key);
+        }
+        if (result != null) {
+            hits.increment();
+            return result;
+        }
+        misses.increment();
+        result = disk == null ? JsonUtil.parse(json, filter) : disk.get(key.withoutFilter(), json);
+        if (key.length() <= maxLength) {
+            synchronized (entries) {
+                JsonNode previous = entries.putIfAbsent(key, result);
+                if (previous != null) {
+                    // parsed concurrently
+                    return previous;
+                }
+                length += key.length();
+                Iterator<Key> eldest = entries.keySet().iterator();
+                while (length > maxLength) {
+                    length -= eldest.next().length();
+                    eldest.remove();
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return The persistent cache backing this one, or {@code null}
+     */
+    public DiskJsonCache disk() {
+        return disk;
+    }
+
+    public long maxLength() {
+        return maxLength;
+    }
+
+    /**
+     * @return The current total length of the cached json
+     */
+    public long length() {
+        synchronized (entries) {
+            return length;
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+            length = 0;
+        }
+    }
+
+    public CacheStats stats() {
+        int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        return new CacheStats(name, hits.sum(), misses.sum(), size);
+    }
+
+    @Override
+    public String toString() {
+        return stats().toString();
+    }
+
+    /**
+     * @return The key, or {@code null} if the json can't be hashed
+     */
+    static Key key(Object json, JsonPointerFilter filter) {
+        if (json instanceof byte[] bytes) {
+            return hash(bytes, filter);
+        } else if (json instanceof String string) {
+            return hash(string, filter);
+        } else if (json instanceof ByteBuffer buffer) {
+            return hash(buffer, filter);
+        } else {
+            return null;
+        }
+    }
+
+    private static Key hash(byte[] bytes, JsonPointerFilter filter) {
+        long h1 = M1;
+        long h2 = M2;
+        int i = 0;
+        for (; i + Long.BYTES <= bytes.length; i += Long.BYTES) {
+            long v = (long) LONGS.get(bytes, i);
+            h1 = Long.rotateLeft(h1 ^ v, 31) * M1;
+            h2 = Long.rotateLeft(h2 + v, 27) * M2;
+        }
+        long tail = 0;
+        for (; i < bytes.length; i++) {
+            tail = (tail << 8) | (bytes[i] & 0xff);
+        }
+        return new Key(mix(h1 ^ tail), mix(h2 + tail), bytes.length, false, filter);
+    }
+
+    /**
+     * The same as {@link #hash(byte[], JsonPointerFilter)} for the same bytes
+     */
+    private static Key hash(ByteBuffer buffer, JsonPointerFilter filter) {
+        ByteBuffer bytes = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        int length = bytes.remaining();
+        long h1 = M1;
+        long h2 = M2;
+        int i = 0;
+        for (; i + Long.BYTES <= length; i += Long.BYTES) {
+            long v = bytes.getLong(i);
+            h1 = Long.rotateLeft(h1 ^ v, 31) * M1;
+            h2 = Long.rotateLeft(h2 + v, 27) * M2;
+        }
+        long tail = 0;
+        for (; i < length; i++) {
+            tail = (tail << 8) | (bytes.get(i) & 0xff);
+        }
+        return new Key(mix(h1 ^ tail), mix(h2 + tail), length, false, filter);
+    }
+
+    private static Key hash(String string, JsonPointerFilter filter) {
+        long h1 = M1;
+        long h2 = M2;
+        int length = string.length();
+        int i = 0;
+        for (; i + 4 <= length; i += 4) {
+            long v = ((long) string.charAt(i) << 48) | ((long) string.charAt(i + 1) << 32) | ((long) string.charAt(i + 2) << 16) | string.charAt(i + 3);
+            h1 = Long.rotateLeft(h1 ^ v, 31) * M1;
+            h2 = Long.rotateLeft(h2 + v, 27) * M2;
+        }
+        long tail = 0;
+        for (; i < length; i++) {
+            tail = (tail << 16) | string.charAt(i);
+        }
+        return new Key(mix(h1 ^ tail), mix(h2 + tail), length, true, filter);
+    }
+
+    /**
+     * Final avalanche, as in MurmurHash3
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * @param filter Compared by identity
+     */
+    record Key(long hash1, long hash2, int length, boolean string, JsonPointerFilter filter) {
+
+        Key withoutFilter() {
+            return filter == null ? this : new Key(hash1, hash2, length, string, null);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key other && hash1 == other.hash1 && hash2 == other.hash2 && length == other.length && string == other.string && filter == other.filter;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) hash1;
+        }
+    }
+}
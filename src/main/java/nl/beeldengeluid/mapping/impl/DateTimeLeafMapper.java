@@ -0,0 +1,302 @@
+/*
+ * Copyright (C) 2024 Licensed under the Apache License, Version 2.0
+ */
+package nl.beeldengeluid.mapping.impl;
+
+import java.math.BigDecimal;
+import java.time.*;
+import java.time.chrono.IsoChronology;
+import java.time.format.*;
+import java.time.temporal.*;
+import java.util.Set;
+
+import nl.beeldengeluid.mapping.*;
+import nl.beeldengeluid.mapping.annotations.Source;
+
+import static java.time.temporal.ChronoField.MONTH_OF_YEAR;
+import static java.time.temporal.ChronoField.YEAR;
+
+/**
+ * Maps strings and numbers to fields of type {@link Instant}, {@link LocalDate}, {@link LocalDateTime}, {@link OffsetDateTime} or {@link ZonedDateTime}.
+ * <p>
+ * Strings are parsed with the {@link Source#dateTimeFormat() date/time format} of the source annotation, or as ISO-8601 if there is none. Partial dates (like {@code 2024} or {@code 2024-05}) are completed with the first month and day, a missing time is midnight, and a missing offset is the one of {@link #zone()}. Numbers are milliseconds since the epoch, or seconds if the format is {@link Source#EPOCH_SECONDS}.
+ * <p>
+ * Every format is compiled to a {@link DateTimeFormatter} only once. ISO-8601 (without zone ids), and the patterns {@code yyyy-MM-dd}, {@code yyyy-MM-dd HH:mm:ss} and {@code yyyy-MM-dd'T'HH:mm:ss} are parsed by hand, which is a lot cheaper. Anything unusual is left to the formatter.
+ *
+ * @author Michiel Meeuwissen
+ * @param zone The zone of values without an offset
+ * @since 0.8
+ * @see Mapper#withDateTimeZone(ZoneId)
+ */
+public record DateTimeLeafMapper(ZoneId zone) implements LeafMapper {
+
+    public static final DateTimeLeafMapper INSTANCE = new DateTimeLeafMapper(ZoneOffset.UTC);
+
+    private static final Set<Class<?>> TYPES = Set.of(Instant.class, LocalDate.class, LocalDateTime.class, OffsetDateTime.class, ZonedDateTime.class);
+
+    private static final Cache<String, Format> FORMATS = Cache.<String, Format>bounded("dateTimeFormats", 1_000, Format::of).global();
+
+    @Override
+    public boolean mayMap(MappedField destinationField, Class<?> valueClass) {
+        return TYPES.contains(destinationField.type()) &&
+            (CharSequence.class.isAssignableFrom(valueClass) || Number.class.isAssignableFrom(valueClass));
+    }
+
+    @Override
+    public Leaf map(Mapper mapper, EffectiveSource effectiveSource, MappedField destinationField, Object o) {
+        return LeafResult.leaf(this, mapper, effectiveSource, destinationField, o);
+    }
+
+    @Override
+    public boolean mapInto(Mapper mapper, EffectiveSource effectiveSource, MappedField destinationField, Object o, LeafResult result) {
+        Class<?> type = destinationField.type();
+        if (!TYPES.contains(type)) {
+            return false;
+        }
+        Format format = format(effectiveSource);
+        Object value;
+        if (o instanceof Number number) {
+            value = fromEpoch(format.epoch(), number, type);
+        } else if (o instanceof CharSequence chars) {
+            value = parse(format, chars, type);
+        } else {
+            return false;
+        }
+        return value != null && result.mapped(value);
+    }
+
+    /**
+     * Parses a string to a value of the given type
+     * @throws DateTimeException If it can't be parsed
+     */
+    private Object parse(Format format, CharSequence chars, Class<?> type) {
+        if (format.formatter() == null) {
+            return fromEpoch(format.epoch(), new BigDecimal(chars.toString().trim()), type);
+        }
+        if (format.length() == Format.ANY_LENGTH || format.length() == chars.length()) {
+            Object value = parseFast(chars, format.length() == Format.ANY_LENGTH, format.separator(), type);
+            if (value != null) {
+                return value;
+            }
+        }
+        TemporalAccessor parsed = format.formatter().parse(chars);
+        LocalDate date = parsed.query(TemporalQueries.localDate());
+        if (date == null) {
+            date = LocalDate.of(parsed.get(YEAR), parsed.isSupported(MONTH_OF_YEAR) ? parsed.get(MONTH_OF_YEAR) : 1, 1);
+        }
+        LocalTime time = parsed.query(TemporalQueries.localTime());
+        return of(date, time == null ? LocalTime.MIDNIGHT : time, parsed.query(TemporalQueries.offset()), parsed.query(TemporalQueries.zoneId()), type);
+    }
+
+    /**
+     * Parses {@code yyyy[-MM[-dd[<separator>HH:mm[:ss[.SSSSSSSSS]][offset]]]]} without any intermediate objects
+     * @param iso Whether fractions and offsets are accepted. If not, the length of the string must have been checked to match the pattern.
+     * @return The value, or {@code null} if the string has some other form, or is invalid.
+     */
+    private Object parseFast(CharSequence s, boolean iso, char separator, Class<?> type) {
+        int length = s.length();
+        int year = digits(s, 0, 4);
+        int month = 1;
+        int day = 1;
+        int hour = 0;
+        int minute = 0;
+        int second = 0;
+        int nano = 0;
+        ZoneOffset offset = null;
+        if (year < 0) {
+            return null;
+        }
+        int i = 4;
+        if (i < length) {
+            if (s.charAt(i) != '-' || (month = digits(s, i + 1, 2)) < 0) {
+                return null;
+            }
+            i += 3;
+        }
+        if (i == 7 && i < length) {
+            if (s.charAt(i) != '-' || (day = digits(s, i + 1, 2)) < 0) {
+                return null;
+            }
+            i += 3;
+        }
+        if (i == 10 && i < length) {
+            if (s.charAt(i) != separator || (hour = digits(s, i + 1, 2)) < 0 || !at(s, i + 3, ':') || (minute = digits(s, i + 4, 2)) < 0) {
+                return null;
+            }
+            i += 6;
+            if (at(s, i, ':')) {
+                if ((second = digits(s, i + 1, 2)) < 0) {
+                    return null;
+                }
+                i += 3;
+                if (iso && at(s, i, '.')) {
+                    int start = ++i;
+                    while (i < length && i - start < 9 && isDigit(s.charAt(i))) {
+                        nano = nano * 10 + (s.charAt(i++) - '0');
+                    }
+                    if (i == start) {
+                        return null;
+                    }
+                    for (int j = i - start; j < 9; j++) {
+                        nano *= 10;
+                    }
+                }
+            }
+            if (iso && i < length) {
+                char c = s.charAt(i);
+                if (c == 'Z') {
+                    offset = ZoneOffset.UTC;
+                    i++;
+                } else if (c == '+' || c == '-') {
+                    int offsetHours = digits(s, i + 1, 2);
+                    int offsetMinutes = at(s, i + 3, ':') ? digits(s, i + 4, 2) : -1;
+                    if (offsetHours < 0 || offsetMinutes < 0) {
+                        return null;
+                    }
+                    int sign = c == '-' ? -1 : 1;
+                    try {
+                        offset = ZoneOffset.ofHoursMinutes(sign * offsetHours, sign * offsetMinutes);
+                    } catch (DateTimeException e) {
+                        return null;
+                    }
+                    i += 6;
+                }
+            }
+        }
+        if (i != length) {
+            return null;
+        }
+        try {
+            return of(LocalDate.of(year, month, day), LocalTime.of(hour, minute, second, nano), offset, null, type);
+        } catch (DateTimeException e) {
+            // let the formatter decide, e.g. it may resolve 'smart'ly
+            return null;
+        }
+    }
+
+    private Object fromEpoch(ChronoUnit unit, Number number, Class<?> type) {
+        Instant instant;
+        if (unit == ChronoUnit.SECONDS) {
+            if (number instanceof Double || number instanceof Float || number instanceof BigDecimal) {
+                BigDecimal seconds = number instanceof BigDecimal bd ? bd : new BigDecimal(number.toString());
+                instant = Instant.ofEpochSecond(seconds.longValue(), seconds.remainder(BigDecimal.ONE).movePointRight(9).longValue());
+            } else {
+                instant = Instant.ofEpochSecond(number.longValue());
+            }
+        } else {
+            instant = Instant.ofEpochMilli(number.longValue());
+        }
+        if (type == Instant.class) {
+            return instant;
+        } else if (type == LocalDate.class) {
+            return LocalDate.ofInstant(instant, zone);
+        } else if (type == LocalDateTime.class) {
+            return LocalDateTime.ofInstant(instant, zone);
+        } else if (type == OffsetDateTime.class) {
+            return OffsetDateTime.ofInstant(instant, zone);
+        } else if (type == ZonedDateTime.class) {
+            return ZonedDateTime.ofInstant(instant, zone);
+        }
+        return null;
+    }
+
+    /**
+     * @param offset The parsed offset, or {@code null}
+     * @param zoneId The parsed zone, or {@code null}. If both are {@code null}, {@link #zone()} is used.
+     */
+    private Object of(LocalDate date, LocalTime time, ZoneOffset offset, ZoneId zoneId, Class<?> type) {
+        if (type == LocalDate.class) {
+            return date;
+        }
+        LocalDateTime dateTime = LocalDateTime.of(date, time);
+        if (type == LocalDateTime.class) {
+            return dateTime;
+        }
+        ZoneId z = zoneId != null ? zoneId : offset != null ? offset : zone;
+        if (type == Instant.class) {
+            return offset != null ? dateTime.toInstant(offset) : dateTime.atZone(z).toInstant();
+        } else if (type == OffsetDateTime.class) {
+            return offset != null ? OffsetDateTime.of(dateTime, offset) : dateTime.atZone(z).toOffsetDateTime();
+        } else if (type == ZonedDateTime.class) {
+            return ZonedDateTime.ofLocal(dateTime, z, offset);
+        }
+        return null;
+    }
+
+    private static Format format(EffectiveSource effectiveSource) {
+        String format = effectiveSource.dateTimeFormat();
+        if (format == null || Source.UNSET.equals(format)) {
+            return Format.ISO;
+        }
+        return FORMATS.get(format);
+    }
+
+    /**
+     * @return The value of the {@code count} digits at {@code from}, or {@code -1} if they are not all digits
+     */
+    private static int digits(CharSequence s, int from, int count) {
+        if (from + count > s.length()) {
+            return -1;
+        }
+        int result = 0;
+        for (int i = from; i < from + count; i++) {
+            char c = s.charAt(i);
+            if (!isDigit(c)) {
+                return -1;
+            }
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean at(CharSequence s, int index, char c) {
+        return index < s.length() && s.charAt(index) == c;
+    }
+
+    /**
+     * A compiled {@link Source#dateTimeFormat()}
+     * @param formatter The formatter, or {@code null} if strings contain epoch numbers
+     * @param epoch The unit of epoch numbers
+     * @param length If not {@code 0}, strings of this length are tried with {@link #parseFast(CharSequence, boolean, char, Class)} first. {@link #ANY_LENGTH} for ISO-8601.
+     * @param separator The character between date and time
+     */
+    private record Format(DateTimeFormatter formatter, ChronoUnit epoch, int length, char separator) {
+
+        static final int ANY_LENGTH = -1;
+
+        static final DateTimeFormatter ISO_FORMATTER = new DateTimeFormatterBuilder()
+            .parseCaseInsensitive()
+            .append(DateTimeFormatter.ISO_LOCAL_DATE)
+            .optionalStart()
+            .appendLiteral('T')
+            .append(DateTimeFormatter.ISO_LOCAL_TIME)
+            .optionalStart()
+            .appendOffsetId()
+            .optionalEnd()
+            .optionalStart()
+            .appendLiteral('[')
+            .parseCaseSensitive()
+            .appendZoneRegionId()
+            .appendLiteral(']')
+            .toFormatter()
+            .withResolverStyle(ResolverStyle.STRICT)
+            .withChronology(IsoChronology.INSTANCE);
+
+        static final Format ISO = new Format(ISO_FORMATTER, ChronoUnit.MILLIS, ANY_LENGTH, 'T');
+
+        static Format of(String pattern) {
+            return switch (pattern) {
+                case Source.EPOCH_MILLIS -> new Format(null, ChronoUnit.MILLIS, 0, ' ');
+                case Source.EPOCH_SECONDS -> new Format(null, ChronoUnit.SECONDS, 0, ' ');
+                case "yyyy-MM-dd", "uuuu-MM-dd" -> new Format(DateTimeFormatter.ofPattern(pattern), ChronoUnit.MILLIS, 10, ' ');
+                case "yyyy-MM-dd HH:mm:ss", "uuuu-MM-dd HH:mm:ss" -> new Format(DateTimeFormatter.ofPattern(pattern), ChronoUnit.MILLIS, 19, ' ');
+                case "yyyy-MM-dd'T'HH:mm:ss", "uuuu-MM-dd'T'HH:mm:ss" -> new Format(DateTimeFormatter.ofPattern(pattern), ChronoUnit.MILLIS, 19, 'T');
+                default -> new Format(DateTimeFormatter.ofPattern(pattern), ChronoUnit.MILLIS, 0, ' ');
+            };
+        }
+    }
+}
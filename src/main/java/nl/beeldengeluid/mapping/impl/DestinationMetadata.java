@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2024 Licensed under the Apache License, Version 2.0
+ */
+package nl.beeldengeluid.mapping.impl;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import nl.beeldengeluid.mapping.EffectiveSource;
+import nl.beeldengeluid.mapping.annotations.Source;
+import nl.beeldengeluid.mapping.annotations.Sources;
+
+import static nl.beeldengeluid.mapping.annotations.Source.UNSET;
+
+/**
+ * All {@link Source} related metadata of one destination class, which is resolved only once. It is associated with the class itself (via a {@link Cache#perClass(String, java.util.function.Function) per class cache}), so it does not prevent the class from being unloaded.
+ * <p>
+ * The {@link EffectiveSource}s are interned per destination class, and their {@link nl.beeldengeluid.mapping.LeafMapper leaf mappers} are {@link EffectiveSource#instantiateMapper(Class) shared} anyway.
+ *
+ * @author Michiel Meeuwissen
+ * @since 0.8
+ */
+@Slf4j
+final class DestinationMetadata {
+
+    private static final Cache<Class<?>, DestinationMetadata> METADATA = Cache.perClass("destinationMetadata", DestinationMetadata::new).global();
+
+    private final Class<?> destinationClass;
+
+    /**
+     * The {@link Source} annotation on class level (of the class, or the nearest super class)
+     */
+    private final Source defaults;
+
+    private final Map<Field, List<EffectiveSource>> effectiveSources = new ConcurrentHashMap<>();
+
+    private final Map<EffectiveSource, EffectiveSource> interned = new ConcurrentHashMap<>();
+
+    private DestinationMetadata(Class<?> destinationClass) {
+        this.destinationClass = destinationClass;
+        Source defaultValues = null;
+        Class<?> clazz = destinationClass;
+        while (clazz != null && clazz != Object.class && defaultValues == null) {
+            defaultValues = clazz.getAnnotation(Source.class);
+            clazz = clazz.getSuperclass();
+        }
+        this.defaults = defaultValues;
+    }
+
+    static DestinationMetadata of(Class<?> destinationClass) {
+        return METADATA.get(destinationClass);
+    }
+
+    /**
+     * All effective sources for a field of the destination class (or of one of its super classes), regardless of the source class.
+     * @param destinationField A field of the destination class, or of its builder
+     * @return An unmodifiable list
+     */
+    List<EffectiveSource> effectiveSources(Field destinationField) {
+        return effectiveSources.computeIfAbsent(destinationField, this::resolve);
+    }
+
+    private List<EffectiveSource> resolve(Field destinationField) {
+        Field field = associatedBuilderField(destinationField).orElse(destinationField);
+        List<EffectiveSource> result = new ArrayList<>();
+        for (Source annotation : getAllSourceAnnotations(field)) {
+            EffectiveSource effectiveSource = interned.computeIfAbsent(EffectiveSource.of(annotation, defaults), e -> e);
+            if (effectiveSource.field().equals(UNSET)) {
+                log.debug("No source field set for {} {}. May default to {}", field, effectiveSource, field.getName());
+            }
+            result.add(effectiveSource);
+        }
+        return List.copyOf(result);
+    }
+
+    private static List<Source> getAllSourceAnnotations(AnnotatedElement element) {
+        List<Source> result = new ArrayList<>();
+        getAllSourceAnnotations(element, new HashSet<>(), result);
+        return result;
+    }
+
+    private static void getAllSourceAnnotations(AnnotatedElement element, Set<AnnotatedElement> delt, List<Source> result) {
+        if (delt.add(element)) {
+            for (Annotation annotation : element.getAnnotations()) {
+                if (annotation instanceof  Source s) {
+                    result.add(s);
+                } else if (annotation instanceof  Sources sources) {
+                    result.addAll(Arrays.asList(sources.value()));
+                } else {
+                    getAllSourceAnnotations(annotation.annotationType(), delt, result);
+                }
+            }
+        }
+    }
+
+    private static Optional<Field> associatedBuilderField(Field f) {
+        if (f != null && f.getAnnotations().length == 0) {
+            Class<?> clazz = f.getDeclaringClass();
+            if (clazz.getName().endsWith("Builder")) {
+                try {
+                    Method build = clazz.getDeclaredMethod("build");
+                    if (Modifier.isPublic(build.getModifiers()) && ! Modifier.isStatic(build.getModifiers())) {
+                        Class<?> targetClass = build.getReturnType();
+                        Field buildField = targetClass.getDeclaredField(f.getName());
+                        return Optional.of(buildField);
+                    }
+                } catch (NoSuchMethodException | NoSuchFieldException e) {
+                    log.warn(e.getMessage(), e);
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    @Override
+    public String toString() {
+        return "DestinationMetadata " + destinationClass.getName() + " " + effectiveSources.keySet().stream().map(Field::getName).toList();
+    }
+}
@@ -0,0 +1,390 @@
+/*
+ * Copyright (C) 2024 Licensed under the Apache License, Version 2.0
+ */
+package nl.beeldengeluid.mapping.impl;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32C;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.*;
+
+import nl.beeldengeluid.mapping.CacheStats;
+
+/**
+ * A persistent cache of parsed json, keyed on the content of the json (like {@link ContentJsonCache}), and stored in a local directory. So a later run (e.g. a re-index of the same data) needs not parse the same json again: the trees are read from a compact binary representation in memory-mapped files.
+ * <p>
+ * The directory contains segment files of at most {@link #maxSegmentSize()} bytes each, which are appended to. When opened, the records in them are indexed. Only one process should use a directory at the same time.
+ * <p>
+ * This is used via a {@link ContentJsonCache}, which keeps recently used trees in memory:
+ * <pre>{@code
+ * try (DiskJsonCache disk = DiskJsonCache.open(Path.of("/var/cache/mapping"))) {
+ *     Mapper mapper = MAPPER.withContentJsonCache(new ContentJsonCache("contentJson", 64 * 1024 * 1024, disk));
+ *     ...
+ * }
+ * }</pre>
+ * Complete trees are stored only, also if the json is parsed {@link JsonPointerFilter filtered} otherwise.
+ *
+ * @author Michiel Meeuwissen
+ * @since 0.8
+ */
+@Slf4j
+public final class DiskJsonCache implements AutoCloseable {
+
+    /**
+     * The default maximal size of a segment file: 256 MiB
+     */
+    public static final int DEFAULT_MAX_SEGMENT_SIZE = 256 * 1024 * 1024;
+
+    private static final int MAGIC = 0x4A534E32; // JSN2
+
+    /**
+     * magic, hash1, hash2, length, string, checksum of the payload, payload length
+     */
+    static final int HEADER = 4 + 8 + 8 + 4 + 1 + 4 + 4;
+
+    private static final byte NULL = 0, TRUE = 1, FALSE = 2, INT = 3, LONG = 4, DOUBLE = 5, FLOAT = 6, BIG_INTEGER = 7, BIG_DECIMAL = 8, STRING = 9, BINARY = 10, ARRAY = 11, OBJECT = 12;
+
+    private final Path directory;
+    private final int maxSegmentSize;
+    /**
+     * Only appended to (in {@link #write}), but read without locking
+     */
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+    /**
+     * The location of every record: the index of its segment in the upper 16 bits, its offset in the lower 48.
+     */
+    private final Map<ContentJsonCache.Key, Long> index = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private volatile boolean closed = false;
+
+    private DiskJsonCache(Path directory, int maxSegmentSize) {
+        this.directory = directory;
+        this.maxSegmentSize = maxSegmentSize;
+    }
+
+    /**
+     * Opens (or creates) the cache in the given directory, with segments of {@link #DEFAULT_MAX_SEGMENT_SIZE}.
+     * @param directory The directory. It is created if it does not exist.
+     */
+    public static DiskJsonCache open(Path directory) throws IOException {
+        return open(directory, DEFAULT_MAX_SEGMENT_SIZE);
+    }
+
+    /**
+     * Opens (or creates) the cache in the given directory.
+     * @param directory The directory. It is created if it does not exist.
+     * @param maxSegmentSize The size of the segment files. Json that would be larger than that (in its binary representation) is not cached.
+     */
+    public static DiskJsonCache open(Path directory, int maxSegmentSize) throws IOException {
+        if (maxSegmentSize <= HEADER) {
+            throw new IllegalArgumentException("maxSegmentSize too small: " + maxSegmentSize);
+        }
+        Files.createDirectories(directory);
+        DiskJsonCache cache = new DiskJsonCache(directory, maxSegmentSize);
+        for (int i = 0; Files.exists(cache.segmentFile(i)); i++) {
+            cache.segments.add(cache.openSegment(i));
+        }
+        log.debug("Opened {}", cache);
+        return cache;
+    }
+
+    /**
+     * Gets the parsed json, parsing (and storing) it if it isn't cached yet. After {@link #close()} it is just parsed.
+     * @param json A {@code byte[]}, {@code String} or {@link ByteBuffer}, or something else {@link JsonUtil#getJson(Object) parsable}, which is not cached then
+     * @return The tree
+     */
+    public JsonNode get(Object json) {
+        ContentJsonCache.Key key = ContentJsonCache.key(json, null);
+        return key == null ? JsonUtil.parse(json, null) : get(key, json);
+    }
+
+    /**
+     * @param key The key of the json, without filter
+     */
+    JsonNode get(ContentJsonCache.Key key, Object json) {
+        if (closed) {
+            return JsonUtil.parse(json, null);
+        }
+        Long location = index.get(key);
+        if (location != null) {
+            try {
+                JsonNode result = read(location);
+                hits.increment();
+                return result;
+            } catch (RuntimeException e) {
+                log.warn("Could not read {} bytes of json from {}: {}", key.length(), directory, e.getMessage());
+                index.remove(key, location);
+            }
+        }
+        misses.increment();
+        JsonNode result = JsonUtil.parse(json, null);
+        try {
+            write(key, result);
+        } catch (IOException | IllegalArgumentException e) {
+            log.warn("Could not store {} bytes of json in {}: {}", key.length(), directory, e.getMessage());
+        }
+        return result;
+    }
+
+    public Path directory() {
+        return directory;
+    }
+
+    public int maxSegmentSize() {
+        return maxSegmentSize;
+    }
+
+    public CacheStats stats() {
+        return new CacheStats("diskJson " + directory, hits.sum(), misses.sum(), index.size());
+    }
+
+    /**
+     * Flushes everything to disk, and truncates the segment files to what is used. The cache is not used after this: json is just parsed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (Segment segment : segments) {
+            segment.close();
+        }
+        segments.clear();
+        index.clear();
+    }
+
+    @Override
+    public String toString() {
+        return stats().toString();
+    }
+
+    private Path segmentFile(int i) {
+        return directory.resolve("segment-%05d.bin".formatted(i));
+    }
+
+    /**
+     * Maps the segment, and indexes its records. Writing continues after the last complete one, so a record that was not completely written (its checksum doesn't match) is overwritten.
+     */
+    private Segment openSegment(int i) throws IOException {
+        FileChannel channel = FileChannel.open(segmentFile(i), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, maxSegmentSize);
+        int offset = 0;
+        while (offset + HEADER <= maxSegmentSize && buffer.getInt(offset) == MAGIC) {
+            int payloadLength = buffer.getInt(offset + HEADER - 4);
+            if (payloadLength < 0 || offset + HEADER + payloadLength > maxSegmentSize
+                || buffer.getInt(offset + 25) != checksum(buffer.slice(offset + HEADER, payloadLength))) {
+                break;
+            }
+            ContentJsonCache.Key key = new ContentJsonCache.Key(buffer.getLong(offset + 4), buffer.getLong(offset + 12), buffer.getInt(offset + 20), buffer.get(offset + 24) != 0, null);
+            index.put(key, location(i, offset));
+            offset += HEADER + payloadLength;
+        }
+        return new Segment(channel, buffer, offset);
+    }
+
+    private static int checksum(ByteBuffer payload) {
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    private static long location(int segment, int offset) {
+        return ((long) segment << 48) | offset;
+    }
+
+    private JsonNode read(long location) {
+        Segment segment = segments.get((int) (location >>> 48));
+        int offset = (int) (location & 0xFFFF_FFFF_FFFFL);
+        int payloadLength = segment.buffer.getInt(offset + HEADER - 4);
+        return decode(segment.buffer.slice(offset + HEADER, payloadLength));
+    }
+
+    private synchronized void write(ContentJsonCache.Key key, JsonNode node) throws IOException {
+        if (closed || index.containsKey(key)) {
+            return;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        encode(node, new DataOutputStream(bytes));
+        byte[] payload = bytes.toByteArray();
+        if (HEADER + payload.length > maxSegmentSize) {
+            throw new IllegalArgumentException("larger than a segment");
+        }
+        if (segments.isEmpty() || segments.get(segments.size() - 1).end + HEADER + payload.length > maxSegmentSize) {
+            segments.add(openSegment(segments.size()));
+        }
+        int i = segments.size() - 1;
+        Segment segment = segments.get(i);
+        int offset = segment.end;
+        MappedByteBuffer buffer = segment.buffer;
+        buffer.put(offset + HEADER, payload);
+        buffer.putLong(offset + 4, key.hash1());
+        buffer.putLong(offset + 12, key.hash2());
+        buffer.putInt(offset + 20, key.length());
+        buffer.put(offset + 24, (byte) (key.string() ? 1 : 0));
+        buffer.putInt(offset + 25, checksum(ByteBuffer.wrap(payload)));
+        buffer.putInt(offset + HEADER - 4, payload.length);
+        // last, so that an incomplete record is not recognized
+        buffer.putInt(offset, MAGIC);
+        segment.end = offset + HEADER + payload.length;
+        index.put(key, location(i, offset));
+    }
+
+    private static final class Segment {
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private int end;
+
+        Segment(FileChannel channel, MappedByteBuffer buffer, int end) {
+            this.channel = channel;
+            this.buffer = buffer;
+            this.end = end;
+        }
+
+        void close() throws IOException {
+            buffer.force();
+            channel.truncate(end);
+            channel.close();
+        }
+    }
+
+    static void encode(JsonNode node, DataOutput out) throws IOException {
+        switch (node.getNodeType()) {
+            case NULL -> out.writeByte(NULL);
+            case BOOLEAN -> out.writeByte(node.booleanValue() ? TRUE : FALSE);
+            case NUMBER -> {
+                if (node.isInt() || node.isShort()) {
+                    out.writeByte(INT);
+                    out.writeInt(node.intValue());
+                } else if (node.isLong()) {
+                    out.writeByte(LONG);
+                    out.writeLong(node.longValue());
+                } else if (node.isDouble()) {
+                    out.writeByte(DOUBLE);
+                    out.writeDouble(node.doubleValue());
+                } else if (node.isFloat()) {
+                    out.writeByte(FLOAT);
+                    out.writeFloat(node.floatValue());
+                } else if (node.isBigInteger()) {
+                    out.writeByte(BIG_INTEGER);
+                    writeBytes(node.bigIntegerValue().toByteArray(), out);
+                } else {
+                    out.writeByte(BIG_DECIMAL);
+                    BigDecimal decimal = node.decimalValue();
+                    writeVarInt(decimal.scale(), out);
+                    writeBytes(decimal.unscaledValue().toByteArray(), out);
+                }
+            }
+            case STRING -> {
+                out.writeByte(STRING);
+                writeBytes(node.textValue().getBytes(StandardCharsets.UTF_8), out);
+            }
+            case BINARY -> {
+                out.writeByte(BINARY);
+                writeBytes(node.binaryValue(), out);
+            }
+            case ARRAY -> {
+                out.writeByte(ARRAY);
+                writeVarInt(node.size(), out);
+                for (JsonNode element : node) {
+                    encode(element, out);
+                }
+            }
+            case OBJECT -> {
+                out.writeByte(OBJECT);
+                writeVarInt(node.size(), out);
+                Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+                while (fields.hasNext()) {
+                    Map.Entry<String, JsonNode> field = fields.next();
+                    writeBytes(field.getKey().getBytes(StandardCharsets.UTF_8), out);
+                    encode(field.getValue(), out);
+                }
+            }
+            default -> throw new IllegalArgumentException("Cannot store " + node.getNodeType());
+        }
+    }
+
+    static JsonNode decode(ByteBuffer in) {
+        JsonNodeFactory factory = JsonNodeFactory.instance;
+        byte tag = in.get();
+        return switch (tag) {
+            case NULL -> factory.nullNode();
+            case TRUE -> factory.booleanNode(true);
+            case FALSE -> factory.booleanNode(false);
+            case INT -> factory.numberNode(in.getInt());
+            case LONG -> factory.numberNode(in.getLong());
+            case DOUBLE -> factory.numberNode(in.getDouble());
+            case FLOAT -> factory.numberNode(in.getFloat());
+            case BIG_INTEGER -> factory.numberNode(new BigInteger(readBytes(in)));
+            case BIG_DECIMAL -> {
+                int scale = readVarInt(in);
+                yield factory.numberNode(new BigDecimal(new BigInteger(readBytes(in)), scale));
+            }
+            case STRING -> factory.textNode(new String(readBytes(in), StandardCharsets.UTF_8));
+            case BINARY -> factory.binaryNode(readBytes(in));
+            case ARRAY -> {
+                int size = readVarInt(in);
+                ArrayNode array = factory.arrayNode(size);
+                for (int i = 0; i < size; i++) {
+                    array.add(decode(in));
+                }
+                yield array;
+            }
+            case OBJECT -> {
+                int size = readVarInt(in);
+                ObjectNode object = factory.objectNode();
+                for (int i = 0; i < size; i++) {
+                    String name = new String(readBytes(in), StandardCharsets.UTF_8);
+                    object.set(name, decode(in));
+                }
+                yield object;
+            }
+            default -> throw new IllegalStateException("Corrupt json cache, unknown tag " + tag);
+        };
+    }
+
+    private static void writeBytes(byte[] bytes, DataOutput out) throws IOException {
+        writeVarInt(bytes.length, out);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(ByteBuffer in) {
+        byte[] bytes = new byte[readVarInt(in)];
+        in.get(bytes);
+        return bytes;
+    }
+
+    private static void writeVarInt(int value, DataOutput out) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(ByteBuffer in) {
+        int result = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            result |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return result;
+            }
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package nl.beeldengeluid.mapping.impl;
 
 import java.lang.reflect.Field;
+import java.util.*;
 
 import jakarta.xml.bind.annotation.XmlEnumValue;
 
@@ -11,35 +12,128 @@ import nl.beeldengeluid.mapping.*;
  * If the leaf is a String, but must be mapped to an enum, this {@link LeafMapper} can (try to) arrange it.
  * Basically it will just match on {@link Enum#name()}  (as {@link Enum#valueOf(Class, String)}), but if {@link #considerXmlEnum}
  * then it will consider the {@link XmlEnumValue} first.
+ * <p>
+ * The values to match on are collected in hash tables once per enum class, so every value costs just one or two lookups, regardless of the number of constants.
+ * <p>
+ * If nothing matches, the {@link #fallbacks() fallback} constant for the enum class is used, if there is one.
+ * @param fallbacks For (some) enum classes, the constant to use if no constant matches
  */
-public record EnumLeafMapper(boolean considerXmlEnum, boolean caseSensitive) implements LeafMapper {
+public record EnumLeafMapper(boolean considerXmlEnum, boolean caseSensitive, Map<Class<?>, Enum<?>> fallbacks) implements LeafMapper {
 
+    private static final Cache<Class<?>, Lookup> LOOKUPS = Cache.<Lookup>perClass("enumLookups", Lookup::of).global();
+
+    public EnumLeafMapper {
+        fallbacks = Map.copyOf(fallbacks);
+    }
+
+    public EnumLeafMapper(boolean considerXmlEnum, boolean caseSensitive) {
+        this(considerXmlEnum, caseSensitive, Map.of());
+    }
+
+    /**
+     * @param fallback The constant to map to, if a value matches no constant of its enum class
+     * @return A copy of this leaf mapper, with the given fallback
+     * @since 0.8
+     */
+    public EnumLeafMapper withFallback(Enum<?> fallback) {
+        Map<Class<?>, Enum<?>> result = new HashMap<>(fallbacks);
+        result.put(fallback.getDeclaringClass(), fallback);
+        return new EnumLeafMapper(considerXmlEnum, caseSensitive, result);
+    }
+
+    @Override
+    public Class<?> sourceType() {
+        return String.class;
+    }
+
+    @Override
+    public boolean mayMap(MappedField destinationField, Class<?> valueClass) {
+        return valueClass == String.class && destinationField.genericType() instanceof Class<?> c && c.isEnum();
+    }
 
     @Override
     public Leaf map(Mapper mapper, EffectiveSource effectiveSource, MappedField destinationField, Object o) {
+        return LeafResult.leaf(this, mapper, effectiveSource, destinationField, o);
+    }
+
+    @Override
+    public boolean mapInto(Mapper mapper, EffectiveSource effectiveSource, MappedField destinationField, Object o, LeafResult result) {
 
         if (destinationField.genericType() instanceof Class<?> c && c.isEnum() && o instanceof String string) {
-            Class<Enum<?>> enumClass = (Class<Enum<?>>) c;
+            Lookup lookup = LOOKUPS.get(c);
+            Enum<?> found = null;
             if (considerXmlEnum) {
-                for (Enum<?> enumConstant : enumClass.getEnumConstants()) {
-                    try {
-                        Field f = enumConstant.getDeclaringClass().getField(enumConstant.name());
-                        XmlEnumValue xmlValue = f.getAnnotation(XmlEnumValue.class);
-                        if (xmlValue != null && (caseSensitive ? xmlValue.value().equals(string) : xmlValue.value().equalsIgnoreCase(string))) {
-                            return LeafMapper.mapped(enumConstant);
-                        }
-                    } catch (NoSuchFieldException e) {
-                        throw new RuntimeException(e);
+                found = lookup.xmlValues().get(string, caseSensitive);
+            }
+            if (found == null) {
+                found = lookup.names().get(string, caseSensitive);
+            }
+            if (found == null) {
+                found = fallbacks.get(c);
+            }
+            if (found != null) {
+                return result.mapped(found);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The tables for one enum class.
+     * @param xmlValues Of the {@link XmlEnumValue} annotations
+     * @param names Of the {@link Enum#name() names}
+     */
+    private record Lookup(Table xmlValues, Table names) {
+
+        static Lookup of(Class<?> enumClass) {
+            Map<String, Enum<?>> xmlValues = new LinkedHashMap<>();
+            Map<String, Enum<?>> names = new LinkedHashMap<>();
+            for (Object constant : enumClass.getEnumConstants()) {
+                Enum<?> enumConstant = (Enum<?>) constant;
+                try {
+                    Field f = enumConstant.getDeclaringClass().getField(enumConstant.name());
+                    XmlEnumValue xmlValue = f.getAnnotation(XmlEnumValue.class);
+                    if (xmlValue != null) {
+                        xmlValues.putIfAbsent(xmlValue.value(), enumConstant);
                     }
+                } catch (NoSuchFieldException e) {
+                    throw new RuntimeException(e);
                 }
+                names.putIfAbsent(enumConstant.name(), enumConstant);
             }
-            for (Enum<?> enumConstant : enumClass.getEnumConstants()) {
-                if (caseSensitive ? enumConstant.name().equals(string) : enumConstant.name().equalsIgnoreCase(string)) {
-                    return LeafMapper.mapped(enumConstant);
-                }
+            return new Lookup(Table.of(xmlValues), Table.of(names));
+        }
+    }
+
+    /**
+     * Matching strings on constants.
+     * @param exact Exact matches
+     * @param exactIgnoringCase The same keys as {@code exact}, but with the first constant that matches ignoring case. Which normally is the same, so no folding is needed then.
+     * @param folded Keyed by the case folded values, with the first constant for each
+     */
+    private record Table(Map<String, Enum<?>> exact, Map<String, Enum<?>> exactIgnoringCase, Map<String, Enum<?>> folded) {
+
+        static Table of(Map<String, Enum<?>> values) {
+            Map<String, Enum<?>> folded = new HashMap<>();
+            values.forEach((k, v) -> folded.putIfAbsent(fold(k), v));
+            Map<String, Enum<?>> exactIgnoringCase = new HashMap<>();
+            values.keySet().forEach(k -> exactIgnoringCase.put(k, folded.get(fold(k))));
+            return new Table(Map.copyOf(values), Map.copyOf(exactIgnoringCase), Map.copyOf(folded));
+        }
+
+        Enum<?> get(String value, boolean caseSensitive) {
+            if (caseSensitive) {
+                return exact.get(value);
             }
+            Enum<?> result = exactIgnoringCase.get(value);
+            return result != null ? result : folded.get(fold(value));
+        }
 
+        /**
+         * Like {@link String#equalsIgnoreCase(String)}, which considers both upper and lower case.
+         */
+        static String fold(String value) {
+            return value.toUpperCase(Locale.ROOT).toLowerCase(Locale.ROOT);
         }
-        return LeafMapper.NOT_MAPPED;
     }
 }
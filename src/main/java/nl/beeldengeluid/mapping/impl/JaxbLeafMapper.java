@@ -3,7 +3,6 @@ package nl.beeldengeluid.mapping.impl;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 
 import jakarta.xml.bind.annotation.adapters.XmlAdapter;
 import jakarta.xml.bind.annotation.adapters.XmlJavaTypeAdapter;
@@ -19,9 +18,16 @@ import nl.beeldengeluid.mapping.*;
 public class JaxbLeafMapper implements LeafMapper {
 
     /**
-     * Cache for instantiated {@link XmlAdapter}s.
+     * Cache for instantiated {@link XmlAdapter}s, per adapter class.
      */
-    private static final Map<MappedField, Optional<XmlAdapter<?, ?>>> ADAPTERS = new ConcurrentHashMap<>();
+    private static final Cache<Class<?>, Optional<XmlAdapter<?, ?>>> ADAPTERS = Cache.<Optional<XmlAdapter<?, ?>>>perClass("xmlAdapters", adapterClass -> {
+        try {
+            return Optional.of((XmlAdapter<?, ?>) adapterClass.getDeclaredConstructor().newInstance());
+        } catch (Exception e) {
+            log.debug(e.getMessage(), e);
+            return Optional.empty();
+        }
+    }).global();
 
     public static final JaxbLeafMapper INSTANCE = new JaxbLeafMapper();
 
@@ -34,18 +40,11 @@ public class JaxbLeafMapper implements LeafMapper {
             // already mapped!
             return NOT_MAPPED;
         }
-        Optional<XmlAdapter<?, ?>> adapter = ADAPTERS.computeIfAbsent(destinationField, (field) -> {
-            XmlJavaTypeAdapter annotation = field.annotation(XmlJavaTypeAdapter.class);
-            if (annotation != null) {
-                try {
-                    XmlAdapter<?, ?> xmlAdapter = annotation.value().getDeclaredConstructor().newInstance();
-                    return Optional.of(xmlAdapter);
-                } catch (Exception e) {
-                    log.debug(e.getMessage(), e);
-                }
-            }
-            return Optional.empty();
-        });
+        XmlJavaTypeAdapter annotation = destinationField.annotation(XmlJavaTypeAdapter.class);
+        if (annotation == null) {
+            return NOT_MAPPED;
+        }
+        Optional<XmlAdapter<?, ?>> adapter = ADAPTERS.get(annotation.value());
         if (adapter.isPresent()) {
             try {
                 //noinspection unchecked,rawtypes
@@ -58,6 +57,11 @@ public class JaxbLeafMapper implements LeafMapper {
         return NOT_MAPPED;
     }
 
+    @Override
+    public boolean mayMap(MappedField destinationField, Class<?> valueClass) {
+        return destinationField.annotation(XmlJavaTypeAdapter.class) != null && !destinationField.type().isAssignableFrom(valueClass);
+    }
+
     @Override
     public Leaf map(Mapper mapper, EffectiveSource effectiveSource, MappedField destinationField, Object o) {
         return considerXmlAdapter(o, destinationField);
@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2024 Licensed under the Apache License, Version 2.0
+ */
+package nl.beeldengeluid.mapping.impl;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+
+/**
+ * A read-only {@link java.util.List} view of an {@link ArrayNode}, as produced by {@link JsonUtil#unwrapJson(JsonNode)}. Elements are unwrapped only when they are accessed, so nothing is copied for arrays that are only passed on, or are mapped element by element (see {@link UnwrapCollectionsLeafMapper}).
+ *
+ * @author Michiel Meeuwissen
+ * @since 0.8
+ */
+public final class JsonArrayView extends AbstractList<Object> implements RandomAccess {
+
+    private final JsonNode node;
+
+    JsonArrayView(JsonNode node) {
+        this.node = node;
+    }
+
+    /**
+     * @return The array this is a view of
+     */
+    public JsonNode node() {
+        return node;
+    }
+
+    @Override
+    public Object get(int index) {
+        JsonNode element = node.get(index);
+        if (element == null) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + node.size());
+        }
+        return JsonUtil.unwrapJson(element);
+    }
+
+    @Override
+    public int size() {
+        return node.size();
+    }
+}
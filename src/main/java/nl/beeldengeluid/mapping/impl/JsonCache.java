@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2024 Licensed under the Apache License, Version 2.0
+ */
+package nl.beeldengeluid.mapping.impl;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * Caches what is derived from json values (the parsed tree, see {@link JsonUtil#getJson(Object)}, but also e.g. {@link JsonUtil#getJsonNodes(Object, JsonPointerFilter, JsonPointerTrie) the values of json pointers}), so that a {@code byte[]} or {@code String} is parsed only once, even if many values are taken from it.
+ * <p>
+ * Values are keyed on the identity of the json, so entries are useful only as long as the source object is being mapped. The number of entries is bounded: if more are added, the least recently used ones are evicted.
+ * <p>
+ * Json of which the identity says nothing about the content ({@link ByteBuffer}s, which may be pooled and reused, {@link InputStream}s, {@link Reader}s and {@link Path}s) is cached only while one source object is mapped (see {@link #enter()}), and not at all outside a mapping. So a reused buffer is parsed again, and buffers and streams are not kept alive.
+ * <p>
+ * It can be backed by a {@link ContentJsonCache}, which is consulted for json that is not found here, so that equal json in different source objects is parsed only once too.
+ * <p>
+ * Instances are not thread safe. Every {@link nl.beeldengeluid.mapping.MappingContext} has its own.
+ *
+ * @author Michiel Meeuwissen
+ * @since 0.8
+ */
+public final class JsonCache {
+
+    /**
+     * The default maximum number of entries
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 1_000;
+
+    private final int maxEntries;
+
+    private final ContentJsonCache shared;
+
+    private LinkedHashMap<Key, Object> entries;
+
+    private Map<Key, Object> transients;
+
+    private int depth;
+
+    /**
+     * @param maxEntries The maximum number of entries
+     * @param shared The cache to parse json with, or {@code null}
+     */
+    public JsonCache(int maxEntries, ContentJsonCache shared) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be positive: " + maxEntries);
+        }
+        this.maxEntries = maxEntries;
+        this.shared = shared;
+    }
+
+    /**
+     * @param maxEntries The maximum number of entries
+     */
+    public JsonCache(int maxEntries) {
+        this(maxEntries, null);
+    }
+
+    public JsonCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Gets the value derived from some json, computing it if it is not cached.
+     * @param json The json, compared by identity
+     * @param variant What was derived from it, also compared by identity. E.g. the {@link JsonPointerFilter} it was parsed with, or {@code null} for the complete tree.
+     * @param compute To compute the value. This may use the cache itself.
+     * @return The (cached) value
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object json, Object variant, Supplier<T> compute) {
+        Key key = new Key(json, variant);
+        if (json instanceof ByteBuffer || json instanceof InputStream || json instanceof Reader || json instanceof Path) {
+            if (depth == 0) {
+                return compute.get();
+            }
+            if (transients == null) {
+                transients = new HashMap<>();
+            }
+            Object value = transients.get(key);
+            if (value == null) {
+                value = compute.get();
+                transients.put(key, value);
+            }
+            return (T) value;
+        }
+        if (entries != null) {
+            Object value = entries.get(key);
+            if (value != null) {
+                return (T) value;
+            }
+        }
+        T value = compute.get();
+        if (entries == null) {
+            entries = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Key, Object> eldest) {
+                    return size() > maxEntries;
+                }
+            };
+        }
+        entries.put(key, value);
+        return value;
+    }
+
+    /**
+     * Marks the start of the mapping of a source object. Must be followed by {@link #exit()}, which releases the json that is cached for that object only, when the outermost mapping ends.
+     */
+    public void enter() {
+        depth++;
+    }
+
+    /**
+     * Marks the end of the mapping of a source object
+     * @see #enter()
+     */
+    public void exit() {
+        if (--depth == 0 && transients != null) {
+            transients.clear();
+        }
+    }
+
+    public int maxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * @return The content based cache backing this one, or {@code null}
+     */
+    public ContentJsonCache shared() {
+        return shared;
+    }
+
+    public int size() {
+        return entries == null ? 0 : entries.size();
+    }
+
+    public boolean isEmpty() {
+        return entries == null || entries.isEmpty();
+    }
+
+    /**
+     * @return The cached values, least recently used first
+     */
+    public Collection<Object> values() {
+        return entries == null ? List.of() : Collections.unmodifiableCollection(entries.values());
+    }
+
+    public void clear() {
+        if (entries != null && !entries.isEmpty()) {
+            entries.clear();
+        }
+        if (transients != null) {
+            transients.clear();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "JsonCache " + size() + "/" + maxEntries;
+    }
+
+    /**
+     * @param object The json, compared by identity
+     * @param variant What was derived from it, or {@code null}
+     */
+    record Key(Object object, Object variant) {
+
+        @Override
+        public boolean equals(Object object) {
+            return object instanceof Key other && this.object == other.object && this.variant == other.variant;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(object) + System.identityHashCode(variant);
+        }
+    }
+}
@@ -22,10 +22,15 @@ public class JsonLeafMapper implements LeafMapper {
 
     @Override
     public Leaf map(Mapper mapper, EffectiveSource effectiveSource,  MappedField destinationField, Object o) {
+        return LeafResult.leaf(this, mapper, effectiveSource, destinationField, o);
+    }
+
+    @Override
+    public boolean mapInto(Mapper mapper, EffectiveSource effectiveSource, MappedField destinationField, Object o, LeafResult result) {
         try {
-            return LeafMapper.mapped(JsonUtil.getJson(o));
+            return result.mapped(JsonUtil.getJson(o, null, result.jsonCache()));
         } catch (Exception e) {
-            return NOT_MAPPED;
+            return false;
         }
     }
 }
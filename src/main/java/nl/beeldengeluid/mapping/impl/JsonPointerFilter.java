@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2024 Licensed under the Apache License, Version 2.0
+ */
+package nl.beeldengeluid.mapping.impl;
+
+import java.util.*;
+
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.core.filter.FilteringParserDelegate;
+import com.fasterxml.jackson.core.filter.TokenFilter;
+
+/**
+ * A {@link TokenFilter} that includes only the values at a number of {@link JsonPointer}s. With {@link FilteringParserDelegate}, this makes it possible to build a tree of just the values needed, in which the same json pointers still find them. See {@link JsonUtil#getJson(Object, JsonPointerFilter)}.
+ * <p>
+ * Instances are immutable, and can be shared between threads.
+ *
+ * @author Michiel Meeuwissen
+ * @since 0.8
+ */
+public final class JsonPointerFilter extends TokenFilter {
+
+    /**
+     * Keeps the position of array elements before a matched one: objects and arrays are included empty, scalars as they are.
+     */
+    private static final TokenFilter PLACEHOLDER = new TokenFilter() {
+        @Override
+        public TokenFilter includeProperty(String name) {
+            return null;
+        }
+
+        @Override
+        public TokenFilter includeElement(int index) {
+            return null;
+        }
+
+        @Override
+        public boolean includeEmptyObject(boolean contentsFiltered) {
+            return true;
+        }
+
+        @Override
+        public boolean includeEmptyArray(boolean contentsFiltered) {
+            return true;
+        }
+    };
+
+    private final JsonPointer[] pointers;
+
+    /**
+     * The highest array index any of the pointers matches next
+     */
+    private final int maxIndex;
+
+    private JsonPointerFilter(JsonPointer[] pointers) {
+        this.pointers = pointers;
+        int max = -1;
+        for (JsonPointer pointer : pointers) {
+            max = Math.max(max, pointer.getMatchingIndex());
+        }
+        this.maxIndex = max;
+    }
+
+    /**
+     * @param pointers The json pointers to include
+     * @return A filter including all values at the given pointers, or {@code null} if that would be the entire document (e.g. if one of them is the empty pointer)
+     */
+    public static JsonPointerFilter of(Collection<String> pointers) {
+        Set<String> distinct = new LinkedHashSet<>(pointers);
+        JsonPointer[] compiled = new JsonPointer[distinct.size()];
+        int i = 0;
+        for (String pointer : distinct) {
+            compiled[i] = JsonPointer.compile(pointer);
+            if (compiled[i].matches()) {
+                return null;
+            }
+            i++;
+        }
+        return compiled.length == 0 ? null : new JsonPointerFilter(compiled);
+    }
+
+    @Override
+    public TokenFilter includeProperty(String name) {
+        JsonPointer[] tails = null;
+        int count = 0;
+        for (JsonPointer pointer : pointers) {
+            JsonPointer tail = pointer.matchProperty(name);
+            if (tail != null) {
+                if (tail.matches()) {
+                    return TokenFilter.INCLUDE_ALL;
+                }
+                if (tails == null) {
+                    tails = new JsonPointer[pointers.length];
+                }
+                tails[count++] = tail;
+            }
+        }
+        return tails == null ? null : new JsonPointerFilter(Arrays.copyOf(tails, count));
+    }
+
+    @Override
+    public TokenFilter includeElement(int index) {
+        JsonPointer[] tails = null;
+        int count = 0;
+        for (JsonPointer pointer : pointers) {
+            JsonPointer tail = pointer.matchElement(index);
+            if (tail != null) {
+                if (tail.matches()) {
+                    return TokenFilter.INCLUDE_ALL;
+                }
+                if (tails == null) {
+                    tails = new JsonPointer[pointers.length];
+                }
+                tails[count++] = tail;
+            }
+        }
+        if (tails == null) {
+            // elements before a matched one must be there, or the index would not match any more in the result
+            return index < maxIndex ? PLACEHOLDER : null;
+        }
+        return new JsonPointerFilter(Arrays.copyOf(tails, count));
+    }
+
+    /**
+     * A scalar where an object or array was expected.
+     */
+    @Override
+    protected boolean _includeScalar() {
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "JsonPointerFilter " + Arrays.toString(pointers);
+    }
+}
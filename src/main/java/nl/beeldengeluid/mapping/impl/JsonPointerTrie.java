@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2024 Licensed under the Apache License, Version 2.0
+ */
+package nl.beeldengeluid.mapping.impl;
+
+import java.util.*;
+
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.MissingNode;
+
+/**
+ * A number of {@link JsonPointer}s, organized by their common prefixes, so that all of them can be evaluated in one traversal of a json tree. E.g. {@code /metadata/broadcast/title} and {@code /metadata/broadcast/date} share the lookups of {@code metadata} and {@code broadcast}.
+ * <p>
+ * Every distinct pointer gets a {@link #slot(String) slot}, its index in the array produced by {@link #evaluate(JsonNode)}.
+ * <p>
+ * Instances are immutable, and can be shared between threads.
+ *
+ * @author Michiel Meeuwissen
+ * @since 0.8
+ */
+public final class JsonPointerTrie {
+
+    private final Node root = new Node(null, -1);
+
+    private final List<String> pointers;
+
+    private JsonPointerTrie(List<String> pointers) {
+        this.pointers = pointers;
+        for (int slot = 0; slot < pointers.size(); slot++) {
+            Node node = root;
+            for (JsonPointer pointer = JsonPointer.compile(pointers.get(slot)); !pointer.matches(); pointer = pointer.tail()) {
+                node = node.child(pointer.getMatchingProperty(), pointer.getMatchingIndex());
+            }
+            node.slot = slot;
+        }
+    }
+
+    /**
+     * @param pointers The json pointers. Duplicates are ignored.
+     * @return A new trie
+     */
+    public static JsonPointerTrie of(Collection<String> pointers) {
+        return new JsonPointerTrie(List.copyOf(new LinkedHashSet<>(pointers)));
+    }
+
+    /**
+     * @param pointer One of the json pointers this trie was created with
+     * @return The index of its value in the result of {@link #evaluate(JsonNode)}, or {@code -1} if it is not in this trie
+     */
+    public int slot(String pointer) {
+        return pointers.indexOf(pointer);
+    }
+
+    /**
+     * @return The number of distinct pointers
+     */
+    public int size() {
+        return pointers.size();
+    }
+
+    /**
+     * Evaluates all pointers
+     * @param json The json to evaluate them on
+     * @return For every slot, the node at the pointer, or a {@link MissingNode}, like {@link JsonNode#at(JsonPointer)} would give
+     */
+    public JsonNode[] evaluate(JsonNode json) {
+        JsonNode[] result = new JsonNode[pointers.size()];
+        Arrays.fill(result, MissingNode.getInstance());
+        root.evaluate(json, result);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "JsonPointerTrie " + pointers;
+    }
+
+    private static final class Node {
+        private static final Node[] NONE = new Node[0];
+
+        private final String property;
+        private final int index;
+        private int slot = -1;
+        private Node[] children = NONE;
+
+        Node(String property, int index) {
+            this.property = property;
+            this.index = index;
+        }
+
+        Node child(String property, int index) {
+            for (Node child : children) {
+                if (child.property.equals(property)) {
+                    return child;
+                }
+            }
+            Node child = new Node(property, index);
+            children = Arrays.copyOf(children, children.length + 1);
+            children[children.length - 1] = child;
+            return child;
+        }
+
+        /**
+         * Like {@code ObjectNode#_at} and {@code ArrayNode#_at}
+         */
+        void evaluate(JsonNode json, JsonNode[] result) {
+            if (slot >= 0) {
+                result[slot] = json;
+            }
+            boolean array = json.isArray();
+            for (Node child : children) {
+                JsonNode next = array ? (child.index >= 0 ? json.get(child.index) : null) : json.get(child.property);
+                if (next != null) {
+                    child.evaluate(next, result);
+                }
+            }
+        }
+    }
+}
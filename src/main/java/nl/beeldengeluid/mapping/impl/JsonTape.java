@@ -0,0 +1,411 @@
+/*
+ * Copyright (C) 2024 Licensed under the Apache License, Version 2.0
+ */
+package nl.beeldengeluid.mapping.impl;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.*;
+
+/**
+ * A compact index of json, as an alternative to a parsed {@link JsonNode} tree, which for large json takes many times its size on the heap.
+ * <p>
+ * The json is scanned once, and every value (and every property name) gets one entry in a {@code long[]}, the 'tape', pointing into the original bytes. For objects and arrays the entry also records how many entries they contain, so they can be skipped over. {@link #at(JsonPointer) Json pointers} are evaluated by navigating the tape, and only the value found is converted to a {@link JsonNode}.
+ * <p>
+ * The scan checks the structure of the json only: scalars are validated when they are converted. Only strict json is indexed. Json that uses the leniencies of {@link JsonUtil} (like comments or single quotes) is parsed to a tree, to which everything is delegated then.
+ * <p>
+ * Instances are immutable, but the nodes are created anew for every call.
+ *
+ * @author Michiel Meeuwissen
+ * @since 0.8
+ */
+@Slf4j
+public final class JsonTape {
+
+    private static final int OBJECT = 1, ARRAY = 2, STRING = 3, NUMBER = 4, TRUE = 5, FALSE = 6, NULL = 7;
+
+    /**
+     * Objects and arrays may contain this many entries at most, scalars may be this long at most
+     */
+    private static final int MAX_SIZE = (1 << 28) - 1;
+
+    private static final int MAX_DEPTH = 1000;
+
+    private static final JsonNodeFactory FACTORY = JsonNodeFactory.instance;
+
+    private final byte[] bytes;
+    private final long[] tape;
+    private final JsonNode tree;
+
+    private JsonTape(byte[] bytes, long[] tape, JsonNode tree) {
+        this.bytes = bytes;
+        this.tape = tape;
+        this.tree = tree;
+    }
+
+    /**
+     * @param json A {@code byte[]} (in UTF-8) or a {@code String}, which is converted to UTF-8 first. A {@link ByteBuffer} wrapping an entire array is indexed too. Other {@link JsonUtil#getJson(Object) json} is parsed to a tree.
+     */
+    public static JsonTape of(Object json) {
+        byte[] bytes;
+        if (json instanceof byte[] b) {
+            bytes = b;
+        } else if (json instanceof String string) {
+            bytes = string.getBytes(StandardCharsets.UTF_8);
+        } else if (json instanceof ByteBuffer buffer && buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0 && buffer.remaining() == buffer.array().length) {
+            bytes = buffer.array();
+        } else {
+            return new JsonTape(null, null, JsonUtil.parse(json, null));
+        }
+        try {
+            Scanner scanner = new Scanner(bytes);
+            return new JsonTape(bytes, scanner.scan(), null);
+        } catch (NotStrict e) {
+            log.debug("Not indexable, parsing instead: {}", e.getMessage());
+            return new JsonTape(null, null, JsonUtil.parse(bytes, null));
+        }
+    }
+
+    /**
+     * @return The value at the json pointer, or a {@link MissingNode} if there is none
+     */
+    public JsonNode at(JsonPointer pointer) {
+        if (tree != null) {
+            return tree.at(pointer);
+        }
+        int i = 0;
+        for (JsonPointer p = pointer; !p.matches(); p = p.tail()) {
+            i = child(i, p);
+            if (i < 0) {
+                return FACTORY.missingNode();
+            }
+        }
+        return node(i);
+    }
+
+    /**
+     * @see #at(JsonPointer)
+     */
+    public JsonNode at(String pointer) {
+        return at(JsonPointer.compile(pointer));
+    }
+
+    /**
+     * @return The complete json as a tree
+     */
+    public JsonNode tree() {
+        return tree != null ? tree : node(0);
+    }
+
+    /**
+     * @return The number of entries of the tape, or {@code -1} if the json was parsed to a tree instead
+     */
+    public int size() {
+        return tape == null ? -1 : tape.length;
+    }
+
+    @Override
+    public String toString() {
+        return tape == null ? "JsonTape (tree)" : "JsonTape " + bytes.length + " bytes, " + tape.length + " entries";
+    }
+
+    /**
+     * @return The entry of the value in entry {@code i} matching the first step of the pointer, or {@code -1}. Of duplicate properties the last one is taken, like jackson does.
+     */
+    private int child(int i, JsonPointer pointer) {
+        int type = type(tape[i]);
+        int end = i + 1 + size(tape[i]);
+        if (type == OBJECT) {
+            byte[] property = pointer.getMatchingProperty().getBytes(StandardCharsets.UTF_8);
+            int found = -1;
+            for (int j = i + 1; j < end; j = next(j + 1)) {
+                if (keyEquals(tape[j], property)) {
+                    found = j + 1;
+                }
+            }
+            return found;
+        } else if (type == ARRAY) {
+            int index = pointer.getMatchingIndex();
+            if (index >= 0) {
+                for (int j = i + 1; j < end; j = next(j), index--) {
+                    if (index == 0) {
+                        return j;
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return The entry following the value in entry {@code i}
+     */
+    private int next(int i) {
+        int type = type(tape[i]);
+        return type == OBJECT || type == ARRAY ? i + 1 + size(tape[i]) : i + 1;
+    }
+
+    private boolean keyEquals(long entry, byte[] property) {
+        int offset = offset(entry);
+        int length = size(entry);
+        if (Arrays.equals(bytes, offset, offset + length, property, 0, property.length)) {
+            return true;
+        }
+        return hasEscape(offset, length) && string(offset, length).equals(new String(property, StandardCharsets.UTF_8));
+    }
+
+    private JsonNode node(int i) {
+        long entry = tape[i];
+        return switch (type(entry)) {
+            case OBJECT -> {
+                ObjectNode object = FACTORY.objectNode();
+                int end = i + 1 + size(entry);
+                for (int j = i + 1; j < end; j = next(j + 1)) {
+                    object.set(string(offset(tape[j]), size(tape[j])), node(j + 1));
+                }
+                yield object;
+            }
+            case ARRAY -> {
+                ArrayNode array = FACTORY.arrayNode();
+                int end = i + 1 + size(entry);
+                for (int j = i + 1; j < end; j = next(j)) {
+                    array.add(node(j));
+                }
+                yield array;
+            }
+            case STRING -> FACTORY.textNode(string(offset(entry), size(entry)));
+            case NUMBER -> number(offset(entry), size(entry));
+            case TRUE -> FACTORY.booleanNode(true);
+            case FALSE -> FACTORY.booleanNode(false);
+            default -> FACTORY.nullNode();
+        };
+    }
+
+    /**
+     * @param offset The offset of the string, after the opening quote
+     */
+    private String string(int offset, int length) {
+        if (!hasEscape(offset, length)) {
+            return new String(bytes, offset, length, StandardCharsets.UTF_8);
+        }
+        return JsonUtil.parse(new String(bytes, offset - 1, length + 2, StandardCharsets.UTF_8), null).textValue();
+    }
+
+    private boolean hasEscape(int offset, int length) {
+        for (int k = offset; k < offset + length; k++) {
+            if (bytes[k] == '\\') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Integers that fit in a {@code long} are parsed here, others by jackson, so the result is as if the json was parsed to a tree.
+     */
+    private JsonNode number(int offset, int length) {
+        if (length <= 18) {
+            int k = offset;
+            boolean negative = bytes[k] == '-';
+            if (negative) {
+                k++;
+            }
+            int first = k;
+            long value = 0;
+            for (; k < offset + length; k++) {
+                int digit = bytes[k] - '0';
+                if (digit < 0 || digit > 9) {
+                    break;
+                }
+                value = value * 10 + digit;
+            }
+            // leading zeros are left to jackson, which rejects them
+            if (k == offset + length && k > first && (bytes[first] != '0' || k == first + 1)) {
+                value = negative ? -value : value;
+                return value == (int) value ? FACTORY.numberNode((int) value) : FACTORY.numberNode(value);
+            }
+        }
+        return JsonUtil.parse(new String(bytes, offset, length, StandardCharsets.US_ASCII), null);
+    }
+
+    private static int type(long entry) {
+        return (int) (entry >>> 60);
+    }
+
+    private static int size(long entry) {
+        return (int) (entry >>> 32) & MAX_SIZE;
+    }
+
+    private static int offset(long entry) {
+        return (int) entry;
+    }
+
+    private static long entry(int type, int size, int offset) {
+        return ((long) type << 60) | ((long) size << 32) | (offset & 0xFFFF_FFFFL);
+    }
+
+    /**
+     * Produces the tape, failing with {@link NotStrict} on anything unexpected, which is then left to jackson.
+     */
+    private static final class Scanner {
+        private final byte[] bytes;
+        private long[] tape;
+        private int size = 0;
+        private int pos = 0;
+
+        Scanner(byte[] bytes) {
+            this.bytes = bytes;
+            this.tape = new long[Math.max(16, bytes.length / 8)];
+        }
+
+        long[] scan() {
+            value(0);
+            skipWhitespace();
+            if (pos != bytes.length) {
+                throw new NotStrict("trailing content at " + pos);
+            }
+            return Arrays.copyOf(tape, size);
+        }
+
+        private void value(int depth) {
+            skipWhitespace();
+            if (pos >= bytes.length) {
+                throw new NotStrict("unexpected end");
+            }
+            switch (bytes[pos]) {
+                case '{' -> container(OBJECT, '}', depth);
+                case '[' -> container(ARRAY, ']', depth);
+                case '"' -> string();
+                case 't' -> literal(TRUE, "true");
+                case 'f' -> literal(FALSE, "false");
+                case 'n' -> literal(NULL, "null");
+                default -> number();
+            }
+        }
+
+        private void container(int type, char close, int depth) {
+            if (depth >= MAX_DEPTH) {
+                throw new NotStrict("too deep");
+            }
+            int start = add(entry(type, 0, pos));
+            pos++;
+            skipWhitespace();
+            if (pos < bytes.length && bytes[pos] == close) {
+                pos++;
+                return;
+            }
+            while (true) {
+                if (type == OBJECT) {
+                    skipWhitespace();
+                    if (pos >= bytes.length || bytes[pos] != '"') {
+                        throw new NotStrict("expected property name at " + pos);
+                    }
+                    string();
+                    skipWhitespace();
+                    expect(':');
+                }
+                value(depth + 1);
+                skipWhitespace();
+                if (pos < bytes.length && bytes[pos] == ',') {
+                    pos++;
+                } else {
+                    expect(close);
+                    break;
+                }
+            }
+            int count = size - start - 1;
+            if (count > MAX_SIZE) {
+                throw new NotStrict("too large");
+            }
+            tape[start] = entry(type, count, offset(tape[start]));
+        }
+
+        private void string() {
+            int start = ++pos;
+            while (pos < bytes.length && bytes[pos] != '"') {
+                if ((bytes[pos] & 0xFF) < 0x20) {
+                    // not allowed unescaped, jackson will complain
+                    throw new NotStrict("control character at " + pos);
+                }
+                if (bytes[pos] == '\\') {
+                    pos++;
+                    if (pos < bytes.length && "\"\\/bfnrtu".indexOf(bytes[pos]) < 0) {
+                        throw new NotStrict("unexpected escape at " + pos);
+                    }
+                }
+                pos++;
+            }
+            if (pos >= bytes.length) {
+                throw new NotStrict("unterminated string");
+            }
+            add(STRING, start, pos - start);
+            pos++;
+        }
+
+        private void number() {
+            int start = pos;
+            while (pos < bytes.length && isNumberChar(bytes[pos])) {
+                pos++;
+            }
+            if (pos == start) {
+                throw new NotStrict("unexpected character at " + pos);
+            }
+            add(NUMBER, start, pos - start);
+        }
+
+        private static boolean isNumberChar(byte b) {
+            return (b >= '0' && b <= '9') || b == '-' || b == '+' || b == '.' || b == 'e' || b == 'E';
+        }
+
+        private void literal(int type, String literal) {
+            int length = literal.length();
+            if (pos + length > bytes.length || !Arrays.equals(bytes, pos, pos + length, literal.getBytes(StandardCharsets.US_ASCII), 0, length)) {
+                throw new NotStrict("unexpected character at " + pos);
+            }
+            add(type, pos, length);
+            pos += length;
+        }
+
+        private void expect(char c) {
+            if (pos >= bytes.length || bytes[pos] != c) {
+                throw new NotStrict("expected '" + c + "' at " + pos);
+            }
+            pos++;
+        }
+
+        private void skipWhitespace() {
+            while (pos < bytes.length && (bytes[pos] == ' ' || bytes[pos] == '\n' || bytes[pos] == '\r' || bytes[pos] == '\t')) {
+                pos++;
+            }
+        }
+
+        private void add(int type, int offset, int length) {
+            if (length > MAX_SIZE) {
+                throw new NotStrict("too large");
+            }
+            add(entry(type, length, offset));
+        }
+
+        private int add(long entry) {
+            if (size == tape.length) {
+                tape = Arrays.copyOf(tape, tape.length * 2);
+            }
+            tape[size] = entry;
+            return size++;
+        }
+    }
+
+    private static final class NotStrict extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        NotStrict(String message) {
+            super(message, null, false, false);
+        }
+    }
+}
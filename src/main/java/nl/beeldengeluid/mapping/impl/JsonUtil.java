@@ -6,15 +6,25 @@ package nl.beeldengeluid.mapping.impl;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
 import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 import java.util.function.UnaryOperator;
 
 import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.core.filter.FilteringParserDelegate;
+import com.fasterxml.jackson.core.filter.TokenFilter;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ContainerNode;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
 import com.jayway.jsonpath.*;
 import com.jayway.jsonpath.spi.json.JacksonJsonNodeJsonProvider;
 import com.jayway.jsonpath.spi.mapper.JacksonMappingProvider;
@@ -53,9 +63,14 @@ public class JsonUtil {
     private static final Configuration JSONPATH_CONFIGURATION = Configuration.builder()
         .mappingProvider(new JacksonMappingProvider(MAPPER))
         .jsonProvider(new JacksonJsonNodeJsonProvider(MAPPER))
-
+        .options(Option.SUPPRESS_EXCEPTIONS)
         .build();
 
+    /**
+     * Reused for every evaluation of a json path. It is immutable, only {@link ParseContext#parse(Object)} creates something new.
+     */
+    private static final ParseContext JSONPATH_CONTEXT = JsonPath.using(JSONPATH_CONFIGURATION);
+
     static Optional<Object> getSourceValueFromJson(Object source, Class<?> destinationClass, Field destination, List<String> path) {
         for (EffectiveSource annotation : getAnnotation(source.getClass(), destinationClass, destination)) {
             String field = annotation.field();
@@ -85,67 +100,307 @@ public class JsonUtil {
         }
     }
 
-    private static Optional<Object> getSourceJsonValueByPointer(Object source, Field sourceField, List<String> path, String pointer) {
+    /**
+     * Like {@link #getSourceJsonValue(EffectiveSource, Object, Field, Field)}, but for a value that was already obtained from the source object.
+     * @param annotation The effective source, containing a json pointer or a json path
+     * @param sourceValue The value of the source field, which can be converted to json using {@link #getJson(Object)}
+     * @since 0.8
+     */
+    public static Optional<Object> getJsonValue(EffectiveSource annotation, Object sourceValue) {
+        return getJsonValue(annotation, sourceValue, null);
+    }
 
+    /**
+     * Like {@link #getJsonValue(EffectiveSource, Object)}, but parses only the parts of the json that pass the filter.
+     * @since 0.8
+     * @see #getJson(Object, JsonPointerFilter)
+     */
+    public static Optional<Object> getJsonValue(EffectiveSource annotation, Object sourceValue, JsonPointerFilter filter) {
+        return Optional.ofNullable(unwrapJson(getJsonNode(annotation, sourceValue, filter)));
+    }
+
+    /**
+     * Like {@link #getJsonValue(EffectiveSource, Object)}, but returns the {@link JsonNode} itself, so e.g. numbers can be read without boxing.
+     * @since 0.8
+     */
+    public static JsonNode getJsonNode(EffectiveSource annotation, Object sourceValue) {
+        return getJsonNode(annotation, sourceValue, null);
+    }
+
+    /**
+     * Like {@link #getJsonNode(EffectiveSource, Object)}, but parses only the parts of the json that pass the filter.
+     * @param filter If not {@code null}, the filter to parse with. It must include the json pointer of {@code annotation}.
+     * @since 0.8
+     * @see #getJson(Object, JsonPointerFilter)
+     */
+    public static JsonNode getJsonNode(EffectiveSource annotation, Object sourceValue, JsonPointerFilter filter) {
+        return NAVIGATOR_CACHE.get(annotation).apply(getJson(sourceValue, filter));
+    }
+
+    private static Optional<Object> getSourceJsonValueByPointer(Object source, Field sourceField, List<String> path, String pointer) {
+         final UnaryOperator<JsonNode> navigator = pointerNavigator(JSON_POINTER_CACHE.get(pointer));
          return getSourceJsonValue(source, sourceField, path)
-             .map(jn -> jn.at(pointer))
+             .map(navigator)
              .map(JsonUtil::unwrapJson);
     }
 
     // jsonpath would have its own cache, but it may be used by other
     // stuff. Since we know that there is a limited number of JsonPath object caused by us, we just use our own cache, without any limitations.
-    private static final Map<String, JsonPath> JSONPATH_CACHE = new ConcurrentHashMap<>();
+    private static final Cache<String, JsonPath> JSONPATH_CACHE = Cache.<String, JsonPath>bounded("jsonPaths", 10_000, JsonPath::compile).global();
 
-    private static Optional<Object> getSourceJsonValueByPath(Object source, Field sourceField, List<String> path, String jsonPath) {
+    private static final Cache<String, JsonPointer> JSON_POINTER_CACHE = Cache.<String, JsonPointer>bounded("jsonPointers", 10_000, JsonPointer::compile).global();
 
+    private static final Cache<EffectiveSource, UnaryOperator<JsonNode>> NAVIGATOR_CACHE = Cache.<EffectiveSource, UnaryOperator<JsonNode>>bounded("jsonNavigators", 10_000, JsonUtil::navigator).global();
+
+    private static Optional<Object> getSourceJsonValueByPath(Object source, Field sourceField, List<String> path, String jsonPath) {
+         final UnaryOperator<JsonNode> navigator = pathNavigator(jsonPath);
          return getSourceJsonValue(source, sourceField, path)
-             .map(jn -> getByJsonPath(jn, jsonPath))
+             .map(navigator)
              .map(JsonUtil::unwrapJson);
     }
 
-    private static JsonNode getByJsonPath(JsonNode jn, String jsonPath) {
-        try {
-            return JsonPath.using(JSONPATH_CONFIGURATION).parse(jn).read(JSONPATH_CACHE.computeIfAbsent(jsonPath,
-                JsonPath::compile), JsonNode.class);
-        } catch (PathNotFoundException pathNotFoundException) {
-            log.debug(pathNotFoundException.getMessage());
-            return MAPPER.nullNode();
+    /**
+     * Compiles the {@link EffectiveSource#jsonPointer() json pointer} or {@link EffectiveSource#jsonPath() json path} of an effective source to a function finding its value in a json tree.
+     * <p>
+     * Json pointers, and json paths that are definite (see {@link #definitePointer(String)}) become a chain of {@link JsonNode#get(String)}/{@link JsonNode#get(int)} calls. Only other json paths are evaluated with {@link JsonPath}. Nothing is thrown if a value is missing, the function then returns a {@link com.fasterxml.jackson.databind.node.MissingNode} or a {@link com.fasterxml.jackson.databind.node.NullNode}.
+     * @param annotation The effective source, containing a json pointer or a json path
+     * @return The function, which can be reused
+     * @throws IllegalStateException If both a json pointer and json path are set
+     * @since 0.8
+     */
+    public static UnaryOperator<JsonNode> navigator(EffectiveSource annotation) {
+        if (!UNSET.equals(annotation.jsonPath())) {
+            if (! UNSET.equals(annotation.jsonPointer())) {
+                throw new IllegalStateException();
+            }
+            return pathNavigator(annotation.jsonPath());
+        } else {
+            return pointerNavigator(JSON_POINTER_CACHE.get(annotation.jsonPointer()));
+        }
+    }
+
+    private static UnaryOperator<JsonNode> pathNavigator(String jsonPath) {
+        String pointer = definitePointer(jsonPath);
+        if (pointer != null) {
+            return pointerNavigator(JSON_POINTER_CACHE.get(pointer));
+        }
+        final JsonPath compiled = JSONPATH_CACHE.get(jsonPath);
+        return jn -> {
+            JsonNode result = JSONPATH_CONTEXT.parse(jn).read(compiled, JsonNode.class);
+            return result == null ? MAPPER.nullNode() : result;
+        };
+    }
+
+    private static UnaryOperator<JsonNode> pointerNavigator(JsonPointer pointer) {
+        if (pointer.matches()) {
+            return UnaryOperator.identity();
         }
+        List<String> properties = new ArrayList<>();
+        List<Integer> indices = new ArrayList<>();
+        for (JsonPointer p = pointer; !p.matches(); p = p.tail()) {
+            properties.add(p.getMatchingProperty());
+            indices.add(p.getMatchingIndex());
+        }
+        return new PointerNavigator(properties.toArray(String[]::new), indices.stream().mapToInt(Integer::intValue).toArray());
     }
 
+    /**
+     * The steps of a json pointer, taken like {@link JsonNode#at(JsonPointer)} would.
+     * @param properties Per step, the property to get from an object
+     * @param indices Per step, the index to get from an array, or {@code -1} if the property is not an index
+     */
+    private record PointerNavigator(String[] properties, int[] indices) implements UnaryOperator<JsonNode> {
+
+        @Override
+        public JsonNode apply(JsonNode json) {
+            for (int i = 0; i < properties.length && json != null; i++) {
+                if (json.isArray()) {
+                    json = indices[i] >= 0 ? json.get(indices[i]) : null;
+                } else {
+                    json = json.get(properties[i]);
+                }
+            }
+            return json == null ? MAPPER.missingNode() : json;
+        }
 
-    record Key(Object object) {
         @Override
-        public boolean equals(Object object) {
-            return object instanceof Key other && this.object == other.object;
+        public String toString() {
+            return "/" + String.join("/", properties);
+        }
+    }
+
+
+    /**
+     * Converts a definite json path to the equivalent json pointer, if there is one. E.g. {@code $.metadata.items[0]} becomes {@code /metadata/items/0}.
+     * @param jsonPath A json path
+     * @return The json pointer, or {@code null} if the path is not definite, or otherwise has no equivalent json pointer (e.g. because it uses a negative index, or is just the root)
+     * @since 0.8
+     */
+    public static String definitePointer(String jsonPath) {
+        JsonPath compiled;
+        try {
+            compiled = JSONPATH_CACHE.get(jsonPath);
+        } catch (InvalidPathException invalidPathException) {
+            return null;
+        }
+        if (!compiled.isDefinite()) {
+            return null;
+        }
+        // normalized, like $['metadata']['items'][0]
+        String path = compiled.getPath();
+        StringBuilder pointer = new StringBuilder();
+        int i = 1;
+        while (i < path.length()) {
+            if (path.charAt(i) != '[') {
+                return null;
+            }
+            int end = path.indexOf(']', i);
+            if (end < 0) {
+                return null;
+            }
+            String segment = path.substring(i + 1, end);
+            if (segment.length() >= 2 && segment.charAt(0) == '\'' && segment.charAt(segment.length() - 1) == '\'') {
+                String name = segment.substring(1, segment.length() - 1);
+                if (name.indexOf('\'') >= 0 || name.indexOf('\\') >= 0) {
+                    // multiple properties, or escaping
+                    return null;
+                }
+                pointer.append('/').append(name.replace("~", "~0").replace("/", "~1"));
+            } else if (!segment.isEmpty() && segment.chars().allMatch(c -> c >= '0' && c <= '9')) {
+                pointer.append('/').append(segment);
+            } else {
+                return null;
+            }
+            i = end + 1;
         }
+        return pointer.isEmpty() ? null : pointer.toString();
     }
 
-    private static final ThreadLocal<Map<Key, JsonNode>> JSON_CACHE = ThreadLocal.withInitial(HashMap::new);
+    /**
+     * Used if no {@link JsonCache} is given explicitly, e.g. by {@link nl.beeldengeluid.mapping.Mapper#map(Object, Object)}. It is bounded, so it doesn't grow indefinitely on pooled threads.
+     */
+    private static final ThreadLocal<JsonCache> JSON_CACHE = ThreadLocal.withInitial(JsonCache::new);
 
 
     public static void clearCache() {
         JSON_CACHE.get().clear();
     }
 
+    /**
+     * The json cache of the current thread, used if no other {@link JsonCache} is given. Can be used to clear it repeatedly without looking it up every time.
+     * @since 0.8
+     */
+    public static JsonCache cache() {
+        return JSON_CACHE.get();
+    }
+
+    /**
+     * Parses json, or gets it from the json cache of the current thread if it was parsed already.
+     * <p>
+     * The json can be given as a {@code byte[]} (in UTF-8) or {@code String}, but also as a {@link ByteBuffer} (e.g. a {@link java.nio.MappedByteBuffer}), {@link InputStream}, {@link Reader} or {@link Path}. It is parsed directly from those, without copying it to a {@code byte[]} or {@code String} first. Files are memory-mapped. A stream or reader can be read only once, and is closed after that.
+     * @param json The json. If it already is a {@link JsonNode}, it is returned as is.
+     * @throws IllegalStateException If the json could not be parsed, or is of an unsupported type
+     */
     public static JsonNode getJson(Object json) {
-        Key k = new Key(json);
-        return  JSON_CACHE.get().computeIfAbsent(k, (key) -> {
-                try {
-                    if (json instanceof byte[] bytes) {
-                        return MAPPER.readTree(bytes);
-                    } else if (json instanceof String string) {
-                        return MAPPER.readTree(string);
-                    } else if (json instanceof JsonNode n) {
-                        return n;
-                    } else {
-                        throw new IllegalStateException("Could not be mapped to json %s -> %s".formatted(json, json));
-                    }
-                } catch (IOException e) {
-                    throw new IllegalStateException(e.getMessage(), e);
+        return getJson(json, null, cache());
+    }
+
+    /**
+     * Like {@link #getJson(Object)}, but a {@code byte[]} or {@code String} is parsed in one streaming pass, building only the values that pass {@code filter}, and the objects and arrays containing them. This saves a lot if only a few values are needed from a large document.
+     * <p>
+     * The result is cached (for the current thread) like the result of {@link #getJson(Object)}, but separately for every filter.
+     * @param json The json
+     * @param filter The filter, or {@code null} to parse everything
+     * @return The (sparse) tree
+     * @since 0.8
+     */
+    public static JsonNode getJson(Object json, JsonPointerFilter filter) {
+        return getJson(json, filter, cache());
+    }
+
+    /**
+     * Like {@link #getJson(Object, JsonPointerFilter)}, but caching in the given cache, rather than in the one of the current thread. If that is backed by a {@link ContentJsonCache}, that is used to parse.
+     * @since 0.8
+     */
+    public static JsonNode getJson(Object json, JsonPointerFilter filter, JsonCache cache) {
+        if (json instanceof JsonNode n) {
+            return n;
+        }
+        return cache.get(json, filter, () -> cache.shared() == null ? parse(json, filter) : cache.shared().get(json, filter));
+    }
+
+    static JsonNode parse(Object json, JsonPointerFilter filter) {
+        try (JsonParser parser = createParser(json)) {
+            JsonNode result = MAPPER.readTree(filter == null ? parser : new FilteringParserDelegate(parser, filter, TokenFilter.Inclusion.INCLUDE_ALL_AND_PATH, true));
+            return result == null ? MAPPER.missingNode() : result;
+        } catch (IOException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Creates a parser reading straight from the json. A {@link ByteBuffer} is read via its array if it has one, and otherwise as a stream, which leaves its position alone. A {@link Path} is memory-mapped, unless it is larger than 2 GiB.
+     */
+    private static JsonParser createParser(Object json) throws IOException {
+        if (json instanceof byte[] bytes) {
+            return MAPPER.createParser(bytes);
+        } else if (json instanceof String string) {
+            return MAPPER.createParser(string);
+        } else if (json instanceof ByteBuffer buffer) {
+            if (buffer.hasArray()) {
+                return MAPPER.createParser(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            }
+            return MAPPER.createParser(new ByteBufferBackedInputStream(buffer.duplicate()));
+        } else if (json instanceof InputStream inputStream) {
+            return MAPPER.createParser(inputStream);
+        } else if (json instanceof Reader reader) {
+            return MAPPER.createParser(reader);
+        } else if (json instanceof Path path) {
+            try (FileChannel channel = FileChannel.open(path)) {
+                long size = channel.size();
+                if (size <= Integer.MAX_VALUE) {
+                    return createParser(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
                 }
             }
-        );
+            return MAPPER.createParser(Files.newInputStream(path));
+        } else {
+            throw new IllegalStateException("Could not be mapped to json %s -> %s".formatted(json, json));
+        }
+    }
+
+    /**
+     * Evaluates all json pointers of a {@link JsonPointerTrie} on some json in one go.
+     * <p>
+     * The result is cached (for the current thread) like the result of {@link #getJson(Object)}, so all destination fields taking a value from the same json find it by their {@link JsonPointerTrie#slot(String) slot}.
+     * @param json The json
+     * @param filter The filter to parse it with, or {@code null}. It must include all pointers of the trie.
+     * @param trie The pointers to evaluate
+     * @return The values of all pointers of the trie. Must not be modified.
+     * @since 0.8
+     */
+    public static JsonNode[] getJsonNodes(Object json, JsonPointerFilter filter, JsonPointerTrie trie) {
+        return getJsonNodes(json, filter, trie, cache());
+    }
+
+    /**
+     * Like {@link #getJsonNodes(Object, JsonPointerFilter, JsonPointerTrie)}, but caching in the given cache, rather than in the one of the current thread.
+     * @since 0.8
+     */
+    public static JsonNode[] getJsonNodes(Object json, JsonPointerFilter filter, JsonPointerTrie trie, JsonCache cache) {
+        return cache.get(json, trie, () -> trie.evaluate(getJson(json, filter, cache)));
+    }
+
+    /**
+     * Gets the value at a json pointer, using a {@link JsonTape} of the json (cached in the given cache), so that only that value is converted to a {@link JsonNode}. If the cache is backed by a {@link ContentJsonCache}, its (shared) tree is used instead.
+     * @param json The json. If it already is a {@link JsonNode}, the pointer is just evaluated on it.
+     * @return The value, or a {@link com.fasterxml.jackson.databind.node.MissingNode}
+     * @since 0.8
+     */
+    public static JsonNode getJsonNode(Object json, JsonPointer pointer, JsonCache cache) {
+        if (json instanceof JsonNode || cache.shared() != null) {
+            return getJson(json, null, cache).at(pointer);
+        }
+        return cache.get(json, JsonTape.class, () -> JsonTape.of(json)).at(pointer);
     }
 
     static Optional<JsonNode> getSourceJsonValue(Object source, Field sourceField, List<String> path) {
@@ -156,6 +411,15 @@ public class JsonUtil {
 
 
    public static Function<Object, Optional<Object>> valueFromJsonGetter(EffectiveSource s) {
+       final Function<Object, JsonNode> nodeGetter = nodeFromJsonGetter(s);
+       return o -> Optional.ofNullable(unwrapJson(nodeGetter.apply(o)));
+   }
+
+    /**
+     * Like {@link #valueFromJsonGetter(EffectiveSource)}, but the function produces the {@link JsonNode} itself.
+     * @since 0.8
+     */
+   public static Function<Object, JsonNode> nodeFromJsonGetter(EffectiveSource s) {
        UnaryOperator<JsonNode> withField = UnaryOperator.identity();
        if (! UNSET.equals(s.field())) {
            withField = o -> o.get(s.field());
@@ -166,25 +430,38 @@ public class JsonUtil {
        }
        final UnaryOperator<JsonNode> finalWithFieldAndPath = withField;
        if (UNSET.equals(s.jsonPointer()) && UNSET.equals(s.jsonPath())) {
-           return o -> {
-               JsonNode value = finalWithFieldAndPath.apply((JsonNode) o);
-               return Optional.ofNullable(unwrapJson(value));
-           };
-       } else if (! UNSET.equals(s.jsonPointer())) {
-           return o -> {
-               JsonNode value = finalWithFieldAndPath.apply((JsonNode) o);
-               return Optional.ofNullable(unwrapJson(value.at(s.jsonPointer())));
-           };
+           return o -> finalWithFieldAndPath.apply((JsonNode) o);
        } else {
-            return o -> {
-               JsonNode value = finalWithFieldAndPath.apply((JsonNode) o);
-               return Optional.ofNullable(unwrapJson(
-                   getByJsonPath(value, s.jsonPath())));
-            };
+           final UnaryOperator<JsonNode> navigator = navigator(s);
+           return o -> navigator.apply(finalWithFieldAndPath.apply((JsonNode) o));
        }
    }
 
-    static Object unwrapJson(JsonNode jsonNode) {
+    /**
+     * The value to set in a destination field. Json objects and arrays may be part of a tree that is shared with other threads and source objects by a {@link ContentJsonCache}, so of those a copy is returned, which the destination can modify.
+     * @param value A value, e.g. as mapped from json
+     * @param cache The json cache of the mapping
+     * @since 0.8
+     */
+    public static Object unshare(Object value, JsonCache cache) {
+        if (cache.shared() == null) {
+            return value;
+        }
+        if (value instanceof ContainerNode<?> node) {
+            return node.deepCopy();
+        }
+        if (value instanceof JsonArrayView view) {
+            // read-only, but its elements may be objects
+            return new JsonArrayView(view.node().deepCopy());
+        }
+        return value;
+    }
+
+    /**
+     * Converts a {@link JsonNode} to the java value it represents: {@code null} for missing and null nodes, a read-only {@link List} for arrays (a {@link JsonArrayView}, unwrapping its elements lazily), the node itself for objects, and otherwise the scalar value.
+     * @since 0.8
+     */
+    public static Object unwrapJson(JsonNode jsonNode) {
         if (jsonNode.isMissingNode()) {
             log.debug("Missing node!");
             return null;
@@ -214,11 +491,7 @@ public class JsonUtil {
             return jsonNode.asDouble();
         }
         if (jsonNode.isArray()) {
-            List<Object> result = new ArrayList<>();
-            jsonNode.forEach(e -> {
-                result.add(unwrapJson(e));
-            });
-            return result;
+            return new JsonArrayView(jsonNode);
         }
         if (jsonNode.isObject()) {
             return jsonNode;
@@ -13,16 +13,27 @@ public class RecursiveLeafMapper implements LeafMapper {
 
     }
 
+    @Override
+    public boolean mayMap(MappedField destinationField, Class<?> valueClass) {
+        return !destinationField.type().isAssignableFrom(valueClass);
+    }
+
     @Override
     public Leaf map(Mapper mapper, EffectiveSource effectiveSource,  MappedField destinationField, Object o) {
+        return LeafResult.leaf(this, mapper, effectiveSource, destinationField, o);
+    }
+
+    /**
+     * The sub mapping uses the json cache of {@code result}
+     */
+    @Override
+    public boolean mapInto(Mapper mapper, EffectiveSource effectiveSource, MappedField destinationField, Object o, LeafResult result) {
         if (!mapper.canMap(o, destinationField.type())) {
-            return LeafMapper.NOT_MAPPED;
+            return false;
         }
         Object mapped = mapper.newInstance(destinationField.type());
-        mapper.subMap(o, mapped,destinationField.type());
-
-        return LeafMapper.mapped(mapped);
-
+        mapper.subMap(o, mapped, destinationField.type(), result.jsonCache());
+        return result.mapped(mapped);
     }
 
     @Override
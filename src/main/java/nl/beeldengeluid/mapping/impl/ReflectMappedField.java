@@ -1,5 +1,6 @@
 package nl.beeldengeluid.mapping.impl;
 
+import lombok.EqualsAndHashCode;
 import lombok.ToString;
 
 import java.lang.annotation.Annotation;
@@ -13,9 +14,11 @@ import nl.beeldengeluid.mapping.MappedField;
 
 
 /**
+ * Two instances are equal if they wrap the same field, for the same {@link EffectiveSource}. So they can be used as keys in caches.
  * @see MappedField
  */
 @ToString
+@EqualsAndHashCode(cacheStrategy = EqualsAndHashCode.CacheStrategy.LAZY)
 public class ReflectMappedField implements MappedField {
 
     private final Field field;
@@ -3,18 +3,17 @@ package nl.beeldengeluid.mapping.impl;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
 
-import java.net.URI;
-import java.time.Instant;
-import java.time.LocalDate;
+import java.util.function.Function;
 
 import nl.beeldengeluid.mapping.*;
 
-import static nl.beeldengeluid.mapping.LeafMapper.mapped;
-
+import static nl.beeldengeluid.mapping.impl.Util.wrap;
 
 /**
  * Sometimes the object found at a leaf is a {@code String} but needs to be {@code long}, or the other way around.
- * These kind of straight-forward mappings are collected here.
+ * These kind of straight-forward mappings are done by the {@link Mapper#scalarConverters() scalar converters} of the mapper.
+ * <p>
+ * Fields of primitive types are filled with the result of the converter to their wrapper type.
  */
 @Getter
 @EqualsAndHashCode
@@ -27,39 +26,23 @@ public class ScalarLeafMapper implements LeafMapper {
     private ScalarLeafMapper() {
     }
 
+    @Override
+    public boolean mayMap(MappedField destinationField, Class<?> valueClass) {
+        return !wrap(destinationField.type()).isAssignableFrom(valueClass);
+    }
+
     @Override
     public Leaf map(Mapper mapper, EffectiveSource effectiveSource,  MappedField destinationField, Object o) {
+        return LeafResult.leaf(this, mapper, effectiveSource, destinationField, o);
+    }
+
+    @Override
+    public boolean mapInto(Mapper mapper, EffectiveSource effectiveSource, MappedField destinationField, Object o, LeafResult result) {
         Class<?> type = destinationField.type();
-        if (type.isInstance(o)) {
-            return LeafMapper.NOT_MAPPED;
-        }
-        if (type.isAssignableFrom(String.class)) {
-            return mapped(o.toString());
-        } else if (type.isAssignableFrom(Long.class)) {
-            if (o instanceof CharSequence string) {
-                return mapped(Long.parseLong(o.toString()));
-            }
-        } else if (type.isAssignableFrom(Integer.class)) {
-            if (o instanceof CharSequence string) {
-                return mapped(Integer.parseInt(o.toString()));
-            }
-        } else if (type.isAssignableFrom(Boolean.class)) {
-            if (o instanceof CharSequence string) {
-                return mapped(Boolean.parseBoolean(o.toString()));
-            }
-        } else if (type.isAssignableFrom(Instant.class)) {
-            if (o instanceof CharSequence string) {
-                return mapped(Instant.parse(o.toString()));
-            }
-        } else if (type.isAssignableFrom(LocalDate.class)) {
-            if (o instanceof CharSequence string) {
-                return mapped(LocalDate.parse(o.toString()));
-            }
-        } else if (type.isAssignableFrom(URI.class)) {
-            if (o instanceof CharSequence string) {
-                return mapped(URI.create(string.toString()));
-            }
+        if (wrap(type).isInstance(o)) {
+            return false;
         }
-        return LeafMapper.NOT_MAPPED;
+        Function<Object, Object> converter = mapper.scalarConverters().converter(o.getClass(), type);
+        return converter != null && result.mapped(converter.apply(o));
     }
 }
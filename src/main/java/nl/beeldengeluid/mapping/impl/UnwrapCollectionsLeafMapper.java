@@ -3,59 +3,329 @@ package nl.beeldengeluid.mapping.impl;
 import lombok.EqualsAndHashCode;
 import lombok.extern.slf4j.Slf4j;
 
-import java.lang.reflect.ParameterizedType;
-import java.util.Collection;
-import java.util.List;
-import java.util.stream.Collector;
-import java.util.stream.Collectors;
+import java.lang.reflect.*;
+import java.util.*;
+import java.util.stream.IntStream;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 
 import nl.beeldengeluid.mapping.*;
 
 
 /**
- * If a leaf contains a {@link Collection} this {@link LeafMapper} will call the mapper for all of <em>its</em> elements.
+ * If a leaf contains a {@link Collection}, an array or a json array, and the destination field is a {@link Collection} (e.g. a {@link List}, {@link Set} or {@link SortedSet}) or an array, this {@link LeafMapper} will call the mapper for all of <em>its</em> elements, and collect the results.
+ * <p>
+ * Likewise, a {@link Map} or a json object is mapped to a {@link Map} (or {@link SortedMap}), by mapping its keys and values.
+ * <p>
+ * The element types are determined only once per destination field. Elements which are collections themselves are unwrapped again, so e.g. {@code List<List<X>>} is supported too. Collections with at least {@link #parallelThreshold()} elements are mapped in parallel, in the {@link java.util.concurrent.ForkJoinPool#commonPool() common pool}.
  */
 @Slf4j
 @EqualsAndHashCode
 public class UnwrapCollectionsLeafMapper implements LeafMapper {
 
-    public static final UnwrapCollectionsLeafMapper INSTANCE = new UnwrapCollectionsLeafMapper();
+    public static final UnwrapCollectionsLeafMapper INSTANCE = new UnwrapCollectionsLeafMapper(Integer.MAX_VALUE);
+
+    /**
+     * The number of elements mapped in one parallel task
+     */
+    static final int CHUNK_SIZE = 256;
+
+    private static final Cache<MappedField, Plan> PLANS = Cache.<MappedField, Plan>bounded("collectionPlans", 10_000, Plan::of).global();
+
+    private final int parallelThreshold;
+
+    private UnwrapCollectionsLeafMapper(int parallelThreshold) {
+        this.parallelThreshold = parallelThreshold;
+    }
 
-    private UnwrapCollectionsLeafMapper() {
-        // singleton
+    /**
+     * @param parallelThreshold The minimal number of elements of a collection to map them in parallel
+     * @return A copy of this leaf mapper, that maps large collections in parallel
+     * @since 0.8
+     */
+    public UnwrapCollectionsLeafMapper withParallelThreshold(int parallelThreshold) {
+        if (parallelThreshold < 1) {
+            throw new IllegalArgumentException("parallelThreshold must be positive");
+        }
+        return new UnwrapCollectionsLeafMapper(parallelThreshold);
     }
 
-    protected Collector<Object, ?, ?> getCollector(MappedField field) {
-         if (field.type() == List.class) {
-             return Collectors.toList();
-         } else {
-             throw new UnsupportedOperationException("UnwrapCollectionsLeafMapper does (yet) not support collections of type " + field.type());
-         }
+    /**
+     * @return The minimal number of elements of a collection to map them in parallel. {@link Integer#MAX_VALUE} (never) for {@link #INSTANCE}.
+     * @since 0.8
+     */
+    public int parallelThreshold() {
+        return parallelThreshold;
+    }
+
+    @Override
+    public boolean mayMap(MappedField destinationField, Class<?> valueClass) {
+        return PLANS.get(destinationField).accepts(valueClass);
     }
 
     @Override
     public Leaf map(Mapper mapper, EffectiveSource effectiveSource, MappedField destinationField, Object possiblyACollection) {
-        if (possiblyACollection instanceof Collection<?> collection) {
-            ParameterizedType genericType = (ParameterizedType) destinationField.genericType();
-            Class<?> genericClass = (Class<?>) genericType.getActualTypeArguments()[0];
-            if (genericClass != Object.class) {
-                return LeafMapper.mapped(collection.stream()
-                    .map(o -> {
-                            try {
-                                var m = new MappedFieldImpl(destinationField.name(),
-                                    genericClass,
-                                    effectiveSource
-                                );
-                                return mapper.mapLeaf(m, effectiveSource, o).orElse(o);
-                            } catch (MapException me) {
-                                log.warn(me.getMessage(), me);
-                                return LeafMapper.NOT_MAPPED;
-                            }
-                        }
-                    ).collect(getCollector(destinationField)));
-            }
-
-        }
-        return LeafMapper.NOT_MAPPED;
+        return LeafResult.leaf(this, mapper, effectiveSource, destinationField, possiblyACollection);
+    }
+
+    @Override
+    public boolean mapInto(Mapper mapper, EffectiveSource effectiveSource, MappedField destinationField, Object possiblyACollection, LeafResult result) {
+        Plan plan = PLANS.get(destinationField);
+        if (possiblyACollection == null || !plan.accepts(possiblyACollection.getClass())) {
+            return false;
+        }
+        if (possiblyACollection instanceof JsonArrayView view) {
+            // map straight from the json. This also makes sure the destination does not get the read-only view itself
+            possiblyACollection = view.node();
+        } else if (plan.elementField() == null && plan.keyField() == null && plan.type().isInstance(possiblyACollection)) {
+            // nothing to do for the elements, and already of the right type
+            return false;
+        }
+        Object mapped;
+        if (plan.kind() == Kind.MAP || plan.kind() == Kind.SORTED_MAP) {
+            mapped = mapMap(mapper, effectiveSource, plan, possiblyACollection, result.nested());
+        } else {
+            mapped = mapCollection(mapper, effectiveSource, plan, possiblyACollection, result.nested());
+        }
+        return result.mapped(mapped);
+    }
+
+    /**
+     * @param result For leaf mapping the elements
+     */
+    private Object mapCollection(Mapper mapper, EffectiveSource effectiveSource, Plan plan, Object source, LeafResult result) {
+        int size = size(source);
+        Object target = plan.newInstance(size);
+        if (size >= parallelThreshold && indexed(source)) {
+            Object[] mapped = new Object[size];
+            JsonCache cache = result.jsonCache();
+            IntStream.range(0, (size + CHUNK_SIZE - 1) / CHUNK_SIZE).parallel().forEach(chunk -> {
+                // json caches are not thread safe, and the one of a pool thread would never be cleared. The content json cache is shared though.
+                LeafResult chunkResult = new LeafResult(new JsonCache(cache.maxEntries(), cache.shared()));
+                int end = Math.min(size, (chunk + 1) * CHUNK_SIZE);
+                for (int i = chunk * CHUNK_SIZE; i < end; i++) {
+                    mapped[i] = element(mapper, effectiveSource, plan.elementField(), get(source, i), chunkResult);
+                }
+            });
+            for (int i = 0; i < size; i++) {
+                add(plan, target, i, mapped[i]);
+            }
+            return target;
+        }
+        if (indexed(source)) {
+            for (int i = 0; i < size; i++) {
+                add(plan, target, i, element(mapper, effectiveSource, plan.elementField(), get(source, i), result));
+            }
+        } else {
+            int i = 0;
+            for (Object o : (Collection<?>) source) {
+                add(plan, target, i++, element(mapper, effectiveSource, plan.elementField(), o, result));
+            }
+        }
+        return target;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object mapMap(Mapper mapper, EffectiveSource effectiveSource, Plan plan, Object source, LeafResult result) {
+        Map<Object, Object> target = (Map<Object, Object>) plan.newInstance(size(source));
+        if (source instanceof Map<?, ?> map) {
+            for (Map.Entry<?, ?> e : map.entrySet()) {
+                put(plan, target,
+                    element(mapper, effectiveSource, plan.keyField(), e.getKey(), result),
+                    element(mapper, effectiveSource, plan.elementField(), e.getValue(), result));
+            }
+        } else {
+            Iterator<Map.Entry<String, JsonNode>> fields = ((JsonNode) source).fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> e = fields.next();
+                put(plan, target,
+                    element(mapper, effectiveSource, plan.keyField(), e.getKey(), result),
+                    element(mapper, effectiveSource, plan.elementField(), JsonUtil.unwrapJson(e.getValue()), result));
+            }
+        }
+        return target;
+    }
+
+    /**
+     * Leaf maps one element (or key). Json objects and arrays that are not mapped are {@link JsonUtil#unshare(Object, JsonCache) unshared}, like those that are.
+     * @param field The field for the element, or {@code null} if elements don't need mapping
+     */
+    private static Object element(Mapper mapper, EffectiveSource effectiveSource, MappedField field, Object value, LeafResult result) {
+        if (field == null || value == null) {
+            return JsonUtil.unshare(value, result.jsonCache());
+        }
+        return mapper.mapLeafOrValue(field, effectiveSource, value, result);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void add(Plan plan, Object target, int index, Object value) {
+        if (plan.kind() == Kind.ARRAY) {
+            try {
+                Array.set(target, index, value);
+            } catch (IllegalArgumentException e) {
+                log.warn("Could not store '{}' in {}[]: {}", value, plan.type().getComponentType().getName(), e.getMessage());
+            }
+        } else if (value != null || plan.kind() != Kind.SORTED_SET) {
+            ((Collection<Object>) target).add(value);
+        }
+    }
+
+    private static void put(Plan plan, Map<Object, Object> target, Object key, Object value) {
+        if (key != null || plan.kind() != Kind.SORTED_MAP) {
+            target.put(key, value);
+        }
+    }
+
+    private static boolean indexed(Object source) {
+        return source instanceof RandomAccess || source.getClass().isArray() || source instanceof JsonNode;
+    }
+
+    private static int size(Object source) {
+        if (source instanceof Collection<?> collection) {
+            return collection.size();
+        } else if (source instanceof Map<?, ?> map) {
+            return map.size();
+        } else if (source instanceof JsonNode node) {
+            return node.size();
+        } else {
+            return Array.getLength(source);
+        }
+    }
+
+    private static Object get(Object source, int index) {
+        if (source instanceof List<?> list) {
+            return list.get(index);
+        } else if (source instanceof Object[] array) {
+            return array[index];
+        } else if (source instanceof JsonNode node) {
+            return JsonUtil.unwrapJson(node.get(index));
+        } else {
+            return Array.get(source, index);
+        }
+    }
+
+    enum Kind {
+        LIST,
+        SET,
+        SORTED_SET,
+        ARRAY,
+        MAP,
+        SORTED_MAP,
+        /**
+         * Not a supported collection type
+         */
+        NONE
+    }
+
+    /**
+     * How to map to a certain destination field
+     * @param kind The kind of collection to create
+     * @param type The type of the destination field
+     * @param elementField The 'virtual' field for the elements (or values of a map), or {@code null} if they need no mapping
+     * @param keyField The 'virtual' field for the keys of a map, or {@code null} if they need no mapping
+     */
+    record Plan(Kind kind, Class<?> type, MappedField elementField, MappedField keyField) {
+
+        static final Plan NONE = new Plan(Kind.NONE, Object.class, null, null);
+
+        static Plan of(MappedField destinationField) {
+            Class<?> type;
+            try {
+                type = destinationField.type();
+            } catch (RuntimeException e) {
+                return NONE;
+            }
+            Kind kind = kind(type);
+            if (kind == Kind.NONE) {
+                return NONE;
+            }
+            Type genericType = destinationField.genericType();
+            Type elementType;
+            Type keyType = Object.class;
+            if (kind == Kind.ARRAY) {
+                elementType = genericType instanceof GenericArrayType array ? array.getGenericComponentType() : type.getComponentType();
+            } else if (kind == Kind.MAP || kind == Kind.SORTED_MAP) {
+                keyType = typeArgument(genericType, 0);
+                elementType = typeArgument(genericType, 1);
+            } else {
+                elementType = typeArgument(genericType, 0);
+            }
+            return new Plan(kind, type,
+                field(destinationField, elementType),
+                keyType == String.class ? null : field(destinationField, keyType));
+        }
+
+        boolean accepts(Class<?> valueClass) {
+            return switch (kind) {
+                case LIST, SET, SORTED_SET, ARRAY -> Collection.class.isAssignableFrom(valueClass) || valueClass.isArray() || ArrayNode.class.isAssignableFrom(valueClass);
+                case MAP, SORTED_MAP -> Map.class.isAssignableFrom(valueClass) || ObjectNode.class.isAssignableFrom(valueClass);
+                case NONE -> false;
+            };
+        }
+
+        /**
+         * @param size The number of elements that will be added
+         */
+        Object newInstance(int size) {
+            return switch (kind) {
+                case LIST -> new ArrayList<>(size);
+                case SET -> new LinkedHashSet<>(capacity(size));
+                case SORTED_SET -> new TreeSet<>();
+                case ARRAY -> Array.newInstance(type.getComponentType(), size);
+                case MAP -> new LinkedHashMap<>(capacity(size));
+                case SORTED_MAP -> new TreeMap<>();
+                case NONE -> throw new IllegalStateException();
+            };
+        }
+
+        private static Kind kind(Class<?> type) {
+            if (type.isArray()) {
+                return Kind.ARRAY;
+            } else if (Collection.class.isAssignableFrom(type) || type == Iterable.class) {
+                if (type.isAssignableFrom(ArrayList.class)) {
+                    return Kind.LIST;
+                } else if (type.isAssignableFrom(LinkedHashSet.class)) {
+                    return Kind.SET;
+                } else if (type.isAssignableFrom(TreeSet.class)) {
+                    return Kind.SORTED_SET;
+                }
+            } else if (Map.class.isAssignableFrom(type)) {
+                if (type.isAssignableFrom(LinkedHashMap.class)) {
+                    return Kind.MAP;
+                } else if (type.isAssignableFrom(TreeMap.class)) {
+                    return Kind.SORTED_MAP;
+                }
+            }
+            return Kind.NONE;
+        }
+
+        /**
+         * @return The field for elements of the given type, or {@code null} if it is not known, in which case the elements are not mapped
+         */
+        private static MappedField field(MappedField destinationField, Type elementType) {
+            if (elementType instanceof WildcardType wildcard) {
+                elementType = wildcard.getUpperBounds()[0];
+            }
+            if (elementType instanceof GenericArrayType array && array.getGenericComponentType() instanceof ParameterizedType component) {
+                elementType = Array.newInstance((Class<?>) component.getRawType(), 0).getClass();
+            }
+            if (elementType == Object.class || !(elementType instanceof Class<?> || elementType instanceof ParameterizedType)) {
+                return null;
+            }
+            return new MappedFieldImpl(destinationField.name(), elementType, destinationField.source());
+        }
+
+        private static Type typeArgument(Type genericType, int index) {
+            if (genericType instanceof ParameterizedType parameterized && parameterized.getActualTypeArguments().length > index) {
+                return parameterized.getActualTypeArguments()[index];
+            }
+            return Object.class;
+        }
+
+        private static int capacity(int size) {
+            return (int) (size / 0.75f) + 1;
+        }
     }
 }
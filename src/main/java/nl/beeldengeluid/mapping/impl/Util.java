@@ -5,7 +5,7 @@ package nl.beeldengeluid.mapping.impl;
 
 import lombok.extern.slf4j.Slf4j;
 
-import java.lang.annotation.Annotation;
+import java.lang.invoke.*;
 import java.lang.reflect.*;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
@@ -13,9 +13,9 @@ import java.util.concurrent.ConcurrentHashMap;
 import com.fasterxml.jackson.databind.JsonNode;
 
 import nl.beeldengeluid.mapping.EffectiveSource;
+import nl.beeldengeluid.mapping.MapException;
 import nl.beeldengeluid.mapping.Mapper;
 import nl.beeldengeluid.mapping.annotations.Source;
-import nl.beeldengeluid.mapping.annotations.Sources;
 
 import static nl.beeldengeluid.mapping.annotations.Source.UNSET;
 
@@ -32,73 +32,52 @@ public class Util {
         // no instances allowed
     }
 
+    /**
+     * @param type A class, possibly primitive
+     * @return The wrapper class if {@code type} is primitive, otherwise {@code type} itself
+     * @since 0.8
+     */
+    public static Class<?> wrap(Class<?> type) {
+        if (!type.isPrimitive()) {
+            return type;
+        }
+        if (type == int.class) {
+            return Integer.class;
+        } else if (type == long.class) {
+            return Long.class;
+        } else if (type == boolean.class) {
+            return Boolean.class;
+        } else if (type == double.class) {
+            return Double.class;
+        } else if (type == float.class) {
+            return Float.class;
+        } else if (type == short.class) {
+            return Short.class;
+        } else if (type == byte.class) {
+            return Byte.class;
+        } else if (type == char.class) {
+            return Character.class;
+        } else {
+            return Void.class;
+        }
+    }
 
-    public static List<EffectiveSource> getAnnotation(Class<?> sourceClass, Class<?> destinationClass, Field destinationField) {
 
-        destinationField =  associatedBuilderField(destinationField).orElse(destinationField);
-        Source defaultValues = null;
-        {
-            Class<?> clazz = destinationClass;
-            while(clazz != Object.class && defaultValues == null) {
-                defaultValues = clazz.getAnnotation(Source.class);
-                clazz = clazz.getSuperclass();
-            }
-        }
+    /**
+     * The {@link EffectiveSource}s for a destination field, that match the source class. The effective sources themselves are resolved only once per destination class. See {@link DestinationMetadata}.
+     */
+    public static List<EffectiveSource> getAnnotation(Class<?> sourceClass, Class<?> destinationClass, Field destinationField) {
         List<EffectiveSource> list = new ArrayList<>();
-        for (Source annotation : getAllSourceAnnotations(destinationField)) {
-            EffectiveSource proposal =  EffectiveSource.of(annotation, defaultValues);
-            if (proposal.field().equals(UNSET)) {
-                log.debug("No source field set for {} {}. May default to {}", destinationField, proposal, destinationField.getName());
-            }
+        for (EffectiveSource proposal : DestinationMetadata.of(destinationClass).effectiveSources(destinationField)) {
             if (matches(proposal, sourceClass, destinationField.getName())) {
                 list.add(proposal);
             } else {
                 log.debug("Not matching {}", proposal);
             }
         }
-
         return Collections.unmodifiableList(list);
     }
 
-    private static List<Source> getAllSourceAnnotations(AnnotatedElement element) {
-        List<Source> result = new ArrayList<>();
-        getAllSourceAnnotations(element, new HashSet<>(), result);
-        return result;
-    }
-    private static void getAllSourceAnnotations(AnnotatedElement element, Set<AnnotatedElement> delt, List<Source> result) {
-        if (delt.add(element)) {
-            for (Annotation annotation : element.getAnnotations()) {
-                if (annotation instanceof  Source s) {
-                    result.add(s);
-                } else if (annotation instanceof  Sources sources) {
-                    result.addAll(Arrays.asList(sources.value()));
-                } else {
-                    getAllSourceAnnotations(annotation.annotationType(), delt, result);
-                }
-            }
-        }
-    }
-
-
-    private static Optional<Field> associatedBuilderField(Field f) {
-        if (f != null && f.getAnnotations().length == 0) {
-            Class<?> clazz = f.getDeclaringClass();
-            if (clazz.getName().endsWith("Builder")) {
-                try {
-                    Method build = clazz.getDeclaredMethod("build");
-                    if (Modifier.isPublic(build.getModifiers()) && ! Modifier.isStatic(build.getModifiers())) {
-                        Class<?> targetClass = build.getReturnType();
-                        Field buildField = targetClass.getDeclaredField(f.getName());
-                        return Optional.of(buildField);
-                    }
-                } catch (NoSuchMethodException | NoSuchFieldException e) {
-                    log.warn(e.getMessage(), e);
-                }
-            }
-        }
-        return Optional.empty();
-    }
-
     public static boolean isJson(Class<?> clazz) {
         return JsonNode.class.isAssignableFrom(clazz);
 
@@ -124,12 +103,12 @@ public class Util {
     }
 
     // caches make test in MapperTest about 10 times as fast.
-    private static final Map<Class<?>, Map<String, Optional<Field>>> cache = new ConcurrentHashMap<>();
+    private static final Cache<Class<?>, Map<String, Optional<Field>>> SOURCE_FIELDS = Cache.<Map<String, Optional<Field>>>perClass("sourceFields", c -> new ConcurrentHashMap<>()).global();
 
     public static Optional<Field> getSourceField(final Class<?> sourceClass, String sourceField) {
         // to disable cache and measure its effect
         //return _getSourceField(sourceClass, sourceField);
-        Map<String, Optional<Field>> c =  cache.computeIfAbsent(sourceClass, cl -> new ConcurrentHashMap<>());
+        Map<String, Optional<Field>> c =  SOURCE_FIELDS.get(sourceClass);
 
         return c.computeIfAbsent(sourceField, f -> _getSourceField(sourceClass, f));
     }
@@ -140,7 +119,6 @@ public class Util {
             while (clazz != null) {
                 try {
                     Field declaredField = clazz.getDeclaredField(sourceField);
-                    declaredField.setAccessible(true);
                     return Optional.of(declaredField);
                 } catch (NoSuchFieldException ignored) {
 
@@ -157,26 +135,138 @@ public class Util {
     }
 
     public static Optional<Object> getSourceValue(Object source, Field sourceField, List<String> path) {
-          try {
-              sourceField.setAccessible(true);
-              Object value = sourceField.get(source);
-              for (String p : path) {
-                  if (value != null) {
-                      Field su = value.getClass().getDeclaredField(p);
-                      su.setAccessible(true);
-                      value = su.get(value);
-                  }
-              }
-              return Optional.ofNullable(value);
-          } catch (IllegalAccessException | NoSuchFieldException  | IllegalArgumentException e) {
-              log.warn(e.getMessage());
-              return Optional.empty();
-          }
+        return getSourceValue(LOOKUP, source, getter(LOOKUP, sourceField), path);
+    }
+
+    /**
+     * Gets a value from a source object, using a {@link #getter(MethodHandles.Lookup, Field) getter}, and following the given path of further field names.
+     * @param lookup The lookup used to obtain getters for the fields in the path
+     * @param source The source object
+     * @param getter A {@link MethodHandle} of type {@code (Object)Object}
+     * @param path Names of fields in sub objects
+     * @since 0.8
+     */
+    public static Optional<Object> getSourceValue(MethodHandles.Lookup lookup, Object source, MethodHandle getter, List<String> path) {
+        try {
+            Object value = (Object) getter.invokeExact(source);
+            for (int i = 0; i < path.size(); i++) {
+                String p = path.get(i);
+                if (value != null) {
+                    Optional<Field> su = getSourceField(value.getClass(), p);
+                    if (su.isEmpty()) {
+                        log.warn("No field {} in {}", p, value.getClass());
+                        return Optional.empty();
+                    }
+                    value = (Object) getter(lookup, su.get()).invokeExact(value);
+                }
+            }
+            return Optional.ofNullable(value);
+        } catch (ClassCastException | MapException e) {
+            log.warn(e.getMessage());
+            return Optional.empty();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
 
+    private static final Cache<Class<?>, Map<HandleKey, MethodHandle>> GETTERS = Cache.<Map<HandleKey, MethodHandle>>perClass("getters", c -> new ConcurrentHashMap<>()).global();
+
+    private static final Cache<Class<?>, Map<HandleKey, MethodHandle>> SETTERS = Cache.<Map<HandleKey, MethodHandle>>perClass("setters", c -> new ConcurrentHashMap<>()).global();
+
+    /**
+     * Handles are cached per lookup (its class and access modes), since the access they were created with differs per lookup.
+     */
+    private record HandleKey(Field field, Class<?> lookupClass, int lookupModes) {
+        static HandleKey of(MethodHandles.Lookup lookup, Field field) {
+            return new HandleKey(field, lookup.lookupClass(), lookup.lookupModes());
+        }
     }
 
+    /**
+     * Returns a {@link MethodHandle} of type {@code (Object)Object} reading the given field.
+     * <p>
+     * It is obtained via {@link MethodHandles#privateLookupIn(Class, MethodHandles.Lookup) a private lookup} in the class declaring the field. If {@code lookup} has no such access (e.g. because the package is not opened to it), this falls back to {@link Field#setAccessible(boolean)}. Handles are cached per field and lookup, so one obtained with another lookup is never returned.
+     * @throws MapException if the field cannot be accessed at all
+     * @since 0.8
+     */
+    public static MethodHandle getter(MethodHandles.Lookup lookup, Field field) {
+        return GETTERS.get(field.getDeclaringClass()).computeIfAbsent(HandleKey.of(lookup, field), k ->
+            typedGetter(lookup, field).asType(MethodType.methodType(Object.class, Object.class))
+        );
+    }
 
+    /**
+     * Returns a {@link MethodHandle} of type {@code (Object, Object)void} setting the given field.
+     * @see #getter(MethodHandles.Lookup, Field)
+     * @throws MapException if the field cannot be accessed at all
+     * @since 0.8
+     */
+    public static MethodHandle setter(MethodHandles.Lookup lookup, Field field) {
+        return SETTERS.get(field.getDeclaringClass()).computeIfAbsent(HandleKey.of(lookup, field), k ->
+            typedSetter(lookup, field).asType(MethodType.methodType(void.class, Object.class, Object.class))
+        );
+    }
 
+    /**
+     * Like {@link #getter(MethodHandles.Lookup, Field)}, but of type {@code (Object)T}, where {@code T} is the type of the field. So primitive values are not boxed. Not cached.
+     * @since 0.8
+     */
+    public static MethodHandle typedGetter(MethodHandles.Lookup lookup, Field field) {
+        MethodHandle handle;
+        try {
+            handle = MethodHandles.privateLookupIn(field.getDeclaringClass(), lookup).unreflectGetter(field);
+        } catch (IllegalAccessException e) {
+            log.debug("{}, falling back to setAccessible", e.getMessage());
+            handle = accessible(field, () -> lookup.unreflectGetter(field));
+        }
+        if (Modifier.isStatic(field.getModifiers())) {
+            return MethodHandles.dropArguments(handle, 0, Object.class);
+        }
+        return handle.asType(MethodType.methodType(field.getType(), Object.class));
+    }
+
+    /**
+     * Like {@link #setter(MethodHandles.Lookup, Field)}, but of type {@code (Object, T)void}, where {@code T} is the type of the field. Not cached.
+     * @since 0.8
+     */
+    public static MethodHandle typedSetter(MethodHandles.Lookup lookup, Field field) {
+        MethodHandle handle;
+        try {
+            handle = MethodHandles.privateLookupIn(field.getDeclaringClass(), lookup).unreflectSetter(field);
+        } catch (IllegalAccessException e) {
+            log.debug("{}, falling back to setAccessible", e.getMessage());
+            handle = accessible(field, () -> lookup.unreflectSetter(field));
+        }
+        if (Modifier.isStatic(field.getModifiers())) {
+            return MethodHandles.dropArguments(handle, 0, Object.class);
+        }
+        return handle.asType(MethodType.methodType(void.class, Object.class, field.getType()));
+    }
+
+    private static MethodHandle accessible(Field field, Unreflector unreflector) {
+        try {
+            return unreflector.unreflect();
+        } catch (IllegalAccessException ignored) {
+            // not public, try to make it accessible
+        }
+        try {
+            field.setAccessible(true);
+            return unreflector.unreflect();
+        } catch (IllegalAccessException e) {
+            throw new MapException(e);
+        } catch (InaccessibleObjectException e) {
+            throw new MapException(new IllegalAccessException(e.getMessage()));
+        }
+    }
+
+    @FunctionalInterface
+    private interface Unreflector {
+        MethodHandle unreflect() throws IllegalAccessException;
+    }
 
 
 }
@@ -0,0 +1,112 @@
+package nl.beeldengeluid.mapping;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import nl.beeldengeluid.mapping.destinations.Destination;
+import nl.beeldengeluid.mapping.sources.SourceObject;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BatchStrategyTest {
+
+    static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(4);
+
+    @AfterAll
+    static void shutdown() {
+        EXECUTOR.shutdown();
+    }
+
+    static Stream<BatchStrategy> strategies() {
+        return Stream.of(
+            BatchStrategy.sequential(),
+            BatchStrategy.forkJoin(),
+            BatchStrategy.forkJoin(ForkJoinPool.commonPool(), false),
+            BatchStrategy.executor(EXECUTOR, 16, true),
+            BatchStrategy.executor(EXECUTOR, 16, false)
+        );
+    }
+
+    static List<SourceObject> sources(int count) {
+        return IntStream.range(0, count)
+            .mapToObj(i -> new SourceObject().json(("{'title': '" + i + "'}").getBytes(StandardCharsets.UTF_8)))
+            .toList();
+    }
+
+    @ParameterizedTest
+    @MethodSource("strategies")
+    void mapAll(BatchStrategy strategy) {
+        Mapper mapper = Mapper.MAPPER.withBatchStrategy(strategy);
+        List<Destination> destinations = mapper.mapAll(sources(10_000), Destination.class);
+        List<String> titles = destinations.stream().map(Destination::title).toList();
+        List<String> expected = IntStream.range(0, 10_000).mapToObj(String::valueOf).toList();
+        if (strategy.ordered()) {
+            assertThat(titles).isEqualTo(expected);
+        } else {
+            assertThat(titles).containsExactlyInAnyOrderElementsOf(expected);
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("strategies")
+    void mapAllStream(BatchStrategy strategy) {
+        Mapper mapper = Mapper.MAPPER.withBatchStrategy(strategy);
+        List<Destination> destinations = mapper.mapAll(sources(1000).stream().filter(s -> true), Destination.class);
+        assertThat(destinations).hasSize(1000);
+    }
+
+    @ParameterizedTest
+    @MethodSource("strategies")
+    void failure(BatchStrategy strategy) {
+        Mapper mapper = Mapper.MAPPER.withBatchStrategy(strategy);
+        assertThatThrownBy(() -> mapper.mapAll(sources(100), Unconstructable.class))
+            .isInstanceOf(MapException.class);
+    }
+
+    @Test
+    @Timeout(10)
+    void shutDownExecutor() {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.shutdown();
+        Mapper mapper = Mapper.MAPPER.withBatchStrategy(BatchStrategy.executor(executor, 2, true));
+        assertThatThrownBy(() -> mapper.mapAll(sources(10), Destination.class))
+            .isInstanceOf(RejectedExecutionException.class);
+    }
+
+    @Test
+    void stopsAfterFailure() {
+        AtomicInteger submitted = new AtomicInteger();
+        Executor counting = r -> {
+            submitted.incrementAndGet();
+            EXECUTOR.execute(r);
+        };
+        Mapper mapper = Mapper.MAPPER.withBatchStrategy(BatchStrategy.executor(counting, 1, true));
+        assertThatThrownBy(() -> mapper.mapAll(sources(100), Unconstructable.class))
+            .isInstanceOf(MapException.class);
+        // the one waiting for a permit when the first failed may still be submitted
+        assertThat(submitted.get()).isLessThanOrEqualTo(2);
+    }
+
+    @Test
+    void maxInFlight() {
+        assertThatThrownBy(() -> BatchStrategy.executor(EXECUTOR, 0, true))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    public static class Unconstructable {
+        public Unconstructable() {
+            throw new IllegalStateException();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package nl.beeldengeluid.mapping;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import nl.beeldengeluid.mapping.destinations.BlobDestination;
+import nl.beeldengeluid.mapping.impl.JsonUtil;
+import nl.beeldengeluid.mapping.sources.SourceObject;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs all tests of {@link MapperTest}, but with a mapper that parses json only partially.
+ */
+class FilteringJsonMapperTest extends MapperTest {
+
+    static final Mapper FILTERING = Mapper.MAPPER
+        .withFiltersJson(true);
+
+    @Override
+    protected Mapper mapper() {
+        return FILTERING;
+    }
+
+    @Test
+    void filtered() {
+        SourceObject sourceObject = new SourceObject();
+        sourceObject.json("""
+            {
+              "title": "foobar",
+              "description": "not needed",
+              "items": [{"id": 1}, {"id": 2, "a": "x", "b": "y"}, {"id": 3}],
+              "missing": 1
+            }
+            """.getBytes(StandardCharsets.UTF_8));
+        JsonUtil.clearCache();
+        BlobDestination destination = mapper().withClearsJsonCacheEveryTime(false).map(sourceObject, BlobDestination.class);
+        assertThat(destination.title).isEqualTo("foobar");
+        assertThat(destination.secondId).isEqualTo(2L);
+        assertThat(destination.second).isNotNull();
+        assertThat(destination.secondA).isEqualTo("x");
+        assertThat(destination.missing).isNull();
+
+        // the json was parsed only once, and only partially. All pointers were evaluated at once too.
+        assertThat(JsonUtil.cache().size()).isEqualTo(2);
+        JsonNode parsed = (JsonNode) JsonUtil.cache().values().stream().filter(JsonNode.class::isInstance).findFirst().orElseThrow();
+        assertThat(parsed.toString()).isEqualTo("""
+            {"title":"foobar","items":[{},{"id":2,"a":"x","b":"y"}]}""");
+        JsonUtil.clearCache();
+    }
+}
@@ -0,0 +1,42 @@
+package nl.beeldengeluid.mapping;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+
+import nl.beeldengeluid.mapping.destinations.Destination;
+import nl.beeldengeluid.mapping.sources.SourceObject;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs all tests of {@link MapperTest}, but with a mapper that immediately compiles its plans to hidden classes.
+ */
+class GeneratedMapperTest extends MapperTest {
+
+    static final Mapper GENERATING = Mapper.MAPPER
+        .withGeneratesMappers(true)
+        .withGenerateMapperThreshold(0);
+
+    @Override
+    protected Mapper mapper() {
+        return GENERATING;
+    }
+
+    @Test
+    void generated() {
+        Mapper mapper = mapper().withLeafMapper(Long.class, Duration.class, l -> Optional.of(Duration.ofMillis(l)));
+        SourceObject sourceObject = new SourceObject().moreJson("{'a': {'b': {'value': 'bar'}}}").durationInMillis(10L);
+        MappingPlan plan = mapper.plan(SourceObject.class, Destination.class);
+        assertThat(plan.generated()).isFalse();
+
+        Destination destination = mapper.map(sourceObject, Destination.class);
+        assertThat(plan.generated()).isTrue(); // threshold is 0, so the first mapping already was by generated code
+        assertThat(destination.duration()).isEqualTo(Duration.ofMillis(10));
+        assertThat(destination.description()).isEqualTo("bar");
+
+        destination = mapper.map(sourceObject.durationInMillis(null), Destination.class);
+        assertThat(destination.duration()).isNull();
+    }
+}
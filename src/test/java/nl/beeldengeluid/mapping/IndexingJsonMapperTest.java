@@ -0,0 +1,51 @@
+package nl.beeldengeluid.mapping;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import nl.beeldengeluid.mapping.destinations.BlobDestination;
+import nl.beeldengeluid.mapping.impl.JsonTape;
+import nl.beeldengeluid.mapping.impl.JsonUtil;
+import nl.beeldengeluid.mapping.sources.SourceObject;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs all tests of {@link MapperTest}, but with a mapper that indexes json rather than parsing it.
+ */
+class IndexingJsonMapperTest extends MapperTest {
+
+    static final Mapper INDEXING = Mapper.MAPPER
+        .withIndexesJson(true);
+
+    @Override
+    protected Mapper mapper() {
+        return INDEXING;
+    }
+
+    @Test
+    void indexed() {
+        SourceObject sourceObject = new SourceObject();
+        sourceObject.json("""
+            {
+              "title": "foobar",
+              "description": "not needed",
+              "items": [{"id": 1}, {"id": 2, "a": "x", "b": "y"}, {"id": 3}],
+              "missing": 1
+            }
+            """.getBytes(StandardCharsets.UTF_8));
+        JsonUtil.clearCache();
+        BlobDestination destination = mapper().withClearsJsonCacheEveryTime(false).map(sourceObject, BlobDestination.class);
+        assertThat(destination.title).isEqualTo("foobar");
+        assertThat(destination.secondId).isEqualTo(2L);
+        assertThat(destination.second).isNotNull();
+        assertThat(destination.secondA).isEqualTo("x");
+        assertThat(destination.missing).isNull();
+
+        // the json was indexed only once, and not parsed
+        assertThat(JsonUtil.cache().size()).isEqualTo(1);
+        assertThat(JsonUtil.cache().values()).allMatch(JsonTape.class::isInstance);
+        JsonUtil.clearCache();
+    }
+}
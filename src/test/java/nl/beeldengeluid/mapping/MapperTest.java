@@ -2,31 +2,53 @@ package nl.beeldengeluid.mapping;
 
 import lombok.extern.log4j.Log4j2;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.invoke.MethodHandles;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-import java.time.Duration;
-import java.time.Instant;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.*;
+import java.util.*;
+import java.util.stream.IntStream;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 
 import nl.beeldengeluid.mapping.destinations.*;
+import nl.beeldengeluid.mapping.impl.ContentJsonCache;
+import nl.beeldengeluid.mapping.impl.JsonCache;
+import nl.beeldengeluid.mapping.impl.JsonUtil;
 import nl.beeldengeluid.mapping.sources.*;
 
-import static nl.beeldengeluid.mapping.Mapper.MAPPER;
+import static nl.beeldengeluid.mapping.annotations.Source.UNSET;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 @Log4j2
 class MapperTest {
 
+    /**
+     * The mapper to test. Can be overridden to run all tests with a differently configured mapper.
+     */
+    protected Mapper mapper() {
+        return Mapper.MAPPER;
+    }
+
     @Test
     public void test() {
         Destination destination = new Destination();
         SourceObject sourceObject = new SourceObject();
         sourceObject.json("{'title': 'foobar'}".getBytes(StandardCharsets.UTF_8));
 
-        MAPPER.map(sourceObject, destination);;
+        mapper().map(sourceObject, destination);;
         log.info("{}", destination);
         assertThat(destination.title()).isEqualTo("foobar");
         assertThat(destination.moreJson()).isEqualTo(sourceObject.moreJson());
@@ -40,7 +62,7 @@ class MapperTest {
         """
         );
 
-        MAPPER.map(sourceObject, destination);;
+        mapper().map(sourceObject, destination);;
         log.info("{}", destination);
         assertThat(destination.title()).isEqualTo("foobar");
     }
@@ -50,7 +72,7 @@ class MapperTest {
         String moreJson = """
             {"title": "foobar"}
             """;
-        Mapper mapper = MAPPER.withClearsJsonCacheEveryTime(false).withSupportsJaxbAnnotations(false);
+        Mapper mapper = mapper().withClearsJsonCacheEveryTime(false).withSupportsJaxbAnnotations(false);
         Instant start = Instant.now();
         for (int i = 0; i < 1_000; i++) {
             Destination destination = new Destination();
@@ -70,7 +92,7 @@ class MapperTest {
     public void toRecord() {
         SourceObject sourceObject = new SourceObject().title("bla bla");
         var builder = DestinationRecord.builder();
-        MAPPER.map(sourceObject, builder);
+        mapper().map(sourceObject, builder);
         var r = builder.build();
         assertThat(r.title()).isEqualTo("bla bla");
     }
@@ -79,20 +101,94 @@ class MapperTest {
 
    @Test
    void getMappedDestinationProperties() {
-       assertThat(MAPPER.getMappedDestinationProperties(
+       assertThat(mapper().getMappedDestinationProperties(
            ExtendedSourceObject.class,
            Destination.class
        ).keySet()).containsExactlyInAnyOrder("title", "description", "moreJson", "id", "list", "list2", "sub", "subs", "enumValue", "localDate", "duration", "subObject", "withCustomLeafMapperAndAnnotation");
 
-       assertThat(MAPPER.getMappedDestinationProperties(
+       assertThat(mapper().getMappedDestinationProperties(
            SourceObject.class,
            Destination.class
        ).keySet()).containsExactlyInAnyOrder("title", "description", "moreJson", "list", "list2", "sub", "subs", "enumValue", "localDate", "duration", "subObject", "withCustomLeafMapperAndAnnotation");
    }
 
+    @Test
+    void plan() {
+        MappingPlan plan = mapper().plan(SourceObject.class, Destination.class);
+        assertThat(plan.mappedFields().stream().map(Field::getName)).containsExactlyInAnyOrder("title", "description", "moreJson", "list", "list2", "sub", "subs", "enumValue", "localDate", "duration", "subObject", "withCustomLeafMapperAndAnnotation");
+        assertThat(mapper().plan(SourceObject.class, Destination.class)).isSameAs(plan);
+    }
+
+    @Test
+    void clearCaches() {
+        Mapper mapper = mapper().withClearsJsonCacheEveryTime(true);
+        MappingPlan plan = mapper.plan(SourceObject.class, Destination.class);
+        assertThat(mapper.cacheStats()).extracting(CacheStats::name).contains("plans", "constructors", "sourceFields", "getters", "destinationMetadata");
+
+        mapper.clearCaches();
+        assertThat(mapper.plan(SourceObject.class, Destination.class)).isNotSameAs(plan);
+        SourceObject sourceObject = new SourceObject();
+        sourceObject.json("{'title': 'foobar'}".getBytes(StandardCharsets.UTF_8));
+        assertThat(mapper.map(sourceObject, Destination.class).title()).isEqualTo("foobar");
+    }
+
+    @Test
+    void mappedFieldsAreReused() throws NoSuchFieldException {
+        Set<MappedField> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        Mapper mapper = mapper().withLeafMapper((m, effectiveSource, destinationField, o) -> {
+            if (destinationField.name().equals("title")) {
+                seen.add(destinationField);
+            }
+            return LeafMapper.NOT_MAPPED;
+        });
+        for (int i = 0; i < 3; i++) {
+            SourceObject sourceObject = new SourceObject();
+            sourceObject.json("{'title': 'foobar'}".getBytes(StandardCharsets.UTF_8));
+            mapper.map(sourceObject, Destination.class);
+        }
+        assertThat(seen).hasSize(1);
+        MappedField field = seen.iterator().next();
+        assertThat(MappedField.of(Destination.class.getDeclaredField("title"), field.source())).isEqualTo(field).hasSameHashCodeAs(field);
+    }
+
+    @Test
+    void withLookup() {
+        SourceObject sourceObject = new SourceObject();
+        sourceObject.json("{'title': 'foobar'}".getBytes(StandardCharsets.UTF_8));
+        Destination destination = mapper().withLookup(MethodHandles.lookup()).map(sourceObject, Destination.class);
+        assertThat(destination.title()).isEqualTo("foobar");
+    }
+
+    @Test
+    void mapAll() {
+        List<Object> sources = Arrays.asList(
+            new SourceObject().json("{'title': 'a'}".getBytes(StandardCharsets.UTF_8)),
+            AnotherSource.of("""
+                {"title": "b"}
+                """),
+            null,
+            new SourceObject().json("{'title': 'c'}".getBytes(StandardCharsets.UTF_8))
+        );
+        List<Destination> destinations = mapper().mapAll(sources, Destination.class);
+        assertThat(destinations).hasSize(4);
+        assertThat(destinations.get(0).title()).isEqualTo("a");
+        assertThat(destinations.get(1).title()).isEqualTo("b");
+        assertThat(destinations.get(2)).isNull();
+        assertThat(destinations.get(3).title()).isEqualTo("c");
+    }
+
+    @Test
+    void mapAllStream() {
+        List<Destination> destinations = mapper().mapAll(
+            IntStream.range(0, 100).mapToObj(i -> new SourceObject().json(("{'title': 'title " + i + "'}").getBytes(StandardCharsets.UTF_8))),
+            Destination.class);
+        assertThat(destinations).hasSize(100);
+        assertThat(destinations.get(99).title()).isEqualTo("title 99");
+    }
+
     @Test
     void getMappedDestinationProperties2() {
-        assertThat(MAPPER.getMappedDestinationProperties(AnotherSource.class , Destination.class).keySet()).containsExactlyInAnyOrder("title");
+        assertThat(mapper().getMappedDestinationProperties(AnotherSource.class , Destination.class).keySet()).containsExactlyInAnyOrder("title");
     }
 
 
@@ -106,7 +202,7 @@ class MapperTest {
             }
             """.getBytes(StandardCharsets.UTF_8));
 
-        FromJsonFieldDestination anotherDestination = MAPPER.map(sourceObject, FromJsonFieldDestination.class);
+        FromJsonFieldDestination anotherDestination = mapper().map(sourceObject, FromJsonFieldDestination.class);
         assertThat(anotherDestination.title()).isEqualTo("foo");
         assertThat(anotherDestination.description()).isEqualTo("bar");
 
@@ -115,7 +211,7 @@ class MapperTest {
     @Test
     void mapException() {
         assertThatThrownBy(() -> {
-            MAPPER.map(new Object(), ThrowingDestination.class);
+            mapper().map(new Object(), ThrowingDestination.class);
         }).isInstanceOf(MapException.class);
     }
 
@@ -123,7 +219,7 @@ class MapperTest {
     void customMapping() {
 
 
-        Mapper mapper = MAPPER.withLeafMapper(new SimplerLeafMapper<>(JsonNode.class, SubDestination.class) {
+        Mapper mapper = mapper().withLeafMapper(new SimplerLeafMapper<>(JsonNode.class, SubDestination.class) {
             @Override
             protected SubDestination map(JsonNode json) {
                 SubDestination so = new SubDestination();
@@ -149,7 +245,7 @@ class MapperTest {
     @Test
     void customMappingForList() {
 
-        Mapper mapper = MAPPER.withLeafMapper((m, s, field, value) -> {
+        Mapper mapper = mapper().withLeafMapper((m, s, field, value) -> {
             if (value instanceof JsonNode json && field.genericType().equals(SubDestination.class)) {
                 if (json.isObject() && json.has("title") && json.has("description")) {
                     SubDestination so = new SubDestination();
@@ -187,7 +283,7 @@ class MapperTest {
     @Test
     void enums() {
 
-        Mapper mapper = MAPPER;
+        Mapper mapper = mapper();
 
 
         SourceObject sourceObject = new SourceObject();
@@ -211,6 +307,32 @@ class MapperTest {
             Destination destination2 = mapper.withSupportsJaxbAnnotations(false).map(sourceObject, Destination.class);
             assertThat(destination2.enumValue()).isNull();
         }
+        {
+            sourceObject.json("""
+                { "enum" : "BETA" }
+                """.getBytes(StandardCharsets.UTF_8));
+
+            Destination destination = mapper.map(sourceObject, Destination.class);
+            assertThat(destination.enumValue()).isEqualTo(ExampleEnum.b);
+        }
+    }
+
+    @Test
+    void enumFallback() {
+        Mapper mapper = mapper().withEnumFallback(ExampleEnum.b);
+        SourceObject sourceObject = new SourceObject();
+        sourceObject.json("""
+            { "enum" : "gamma" }
+            """.getBytes(StandardCharsets.UTF_8));
+
+        assertThat(mapper().map(sourceObject, Destination.class).enumValue()).isNull();
+        assertThat(mapper.map(sourceObject, Destination.class).enumValue()).isEqualTo(ExampleEnum.b);
+        assertThat(mapper.withSupportsJaxbAnnotations(false).map(sourceObject, Destination.class).enumValue()).isEqualTo(ExampleEnum.b);
+
+        sourceObject.json("""
+            { "enum" : "alfa" }
+            """.getBytes(StandardCharsets.UTF_8));
+        assertThat(mapper.map(sourceObject, Destination.class).enumValue()).isEqualTo(ExampleEnum.a);
     }
 
 
@@ -222,7 +344,7 @@ class MapperTest {
             { "date" : "2024-12-09" }
             """);
 
-        Destination destination = MAPPER.map(sourceObject, Destination.class);
+        Destination destination = mapper().map(sourceObject, Destination.class);
         assertThat(destination.localDate()).isEqualTo("2024-12-09");
 
     }
@@ -231,7 +353,7 @@ class MapperTest {
     void customMappingDuration() {
 
 
-        Mapper mapper = MAPPER.withLeafMapper((m, s, field, value) -> {
+        Mapper mapper = mapper().withLeafMapper((m, s, field, value) -> {
                 if (field.genericType().equals(Duration.class)) {
                     if (value instanceof Number number) {
                         return LeafMapper.mapped(Duration.ofMillis(number.longValue()));
@@ -247,6 +369,220 @@ class MapperTest {
         assertThat(destination.duration()).isEqualTo(Duration.ofMillis(1000));
     }
 
+    @Test
+    void leafMapperDispatch() {
+        List<Object> calls = new ArrayList<>();
+        LeafMapper onlyForNumbers = new LeafMapper() {
+            @Override
+            public Leaf map(Mapper mapper, EffectiveSource effectiveSource, MappedField destinationField, Object o) {
+                calls.add(o);
+                return NOT_MAPPED;
+            }
+
+            @Override
+            public Class<?> sourceType() {
+                return Number.class;
+            }
+        };
+        // maps Long to Duration, after that onlyForNumbers is not applicable anymore
+        Mapper mapper = mapper()
+            .withLeafMapper(Long.class, Duration.class, l -> Optional.of(Duration.ofMillis(l)))
+            .withLeafMapper(onlyForNumbers);
+
+        SourceObject sourceObject = new SourceObject();
+        sourceObject.json("{'title': 'foobar'}".getBytes(StandardCharsets.UTF_8));
+        sourceObject.durationInMillis(1000L);
+        Destination destination = mapper.map(sourceObject, Destination.class);
+        assertThat(destination.title()).isEqualTo("foobar");
+        assertThat(destination.duration()).isEqualTo(Duration.ofMillis(1000));
+        assertThat(calls).isEmpty();
+
+        mapper.map(sourceObject.durationInMillis(null), Destination.class);
+        assertThat(calls).isEmpty();
+    }
+
+    @Test
+    void primitives() {
+        ScalarSource source = new ScalarSource("5", "1.5", "c", 7L, 8);
+        PrimitiveDestination destination = mapper().map(source, PrimitiveDestination.class);
+        assertThat(destination.a).isEqualTo(5L);
+        assertThat(destination.b).isEqualTo("1.5");
+        assertThat(destination.c).isEqualTo('c');
+        assertThat(destination.d).isEqualTo(7);
+        assertThat(destination.e).isEqualTo(8.0);
+
+        // not parseable, so not set
+        destination = mapper().map(new ScalarSource("x", null, "cc", null, null), PrimitiveDestination.class);
+        assertThat(destination.a).isEqualTo(0L);
+        assertThat(destination.c).isEqualTo('\0');
+    }
+
+    @Test
+    void primitivesWithoutBoxing() throws Exception {
+        Measurement measurement = new Measurement(10L, 20, 0.5, true, """
+            {"a": 1, "b": 2, "c": "3", "d": true}
+            """);
+        MeasurementDestination destination = mapper().map(measurement, MeasurementDestination.class);
+        assertThat(destination.count).isEqualTo(10L);
+        assertThat(destination.longSize).isEqualTo(20L);
+        assertThat(destination.ratio).isEqualTo(0.5);
+        assertThat(destination.flag).isTrue();
+        assertThat(destination.a).isEqualTo(1L);
+        assertThat(destination.b).isEqualTo(2.0);
+        assertThat(destination.c).isEqualTo(3); // textual, so via the scalar converters
+        assertThat(destination.d).isTrue();
+
+        JsonNode json = new com.fasterxml.jackson.databind.ObjectMapper().readTree("{\"a\": 4, \"b\": 5.5, \"c\": 6}");
+        MeasurementDestination fromJson = mapper().map(json, MeasurementDestination.class);
+        assertThat(fromJson.a).isEqualTo(4L);
+        assertThat(fromJson.b).isEqualTo(5.5);
+        assertThat(fromJson.c).isEqualTo(6);
+        assertThat(fromJson.d).isFalse();
+
+        // a leaf mapper for the values disables the primitive path
+        Mapper doubling = mapper()
+            .withLeafMapper(Long.class, Long.class, l -> Optional.of(l * 2))
+            .withLeafMapper(Integer.class, Long.class, i -> Optional.of(i * 2L));
+        assertThat(doubling.map(measurement, MeasurementDestination.class).count).isEqualTo(20L);
+        assertThat(doubling.map(json, MeasurementDestination.class).a).isEqualTo(8L);
+    }
+
+    @Test
+    void numbersOutOfRange() {
+        Measurement measurement = new Measurement(10L, 20, 0.5, true, """
+            {"a": 1.9, "c": 12345678901}
+            """);
+        MeasurementDestination destination = mapper().map(measurement, MeasurementDestination.class);
+        // not truncated, but not mapped
+        assertThat(destination.a).isEqualTo(0L);
+        assertThat(destination.c).isEqualTo(0);
+
+        ScalarDestination scalar = mapper().map(new ScalarSource(null, null, null, 7L, null), ScalarDestination.class);
+        assertThat(scalar.d).isEqualTo(7L);
+        PrimitiveDestination primitive = mapper().map(new ScalarSource(null, null, null, 12345678901L, null), PrimitiveDestination.class);
+        assertThat(primitive.d).isEqualTo(0);
+    }
+
+    @Test
+    void collections() throws Exception {
+        JsonNode json = new com.fasterxml.jackson.databind.ObjectMapper().readTree("""
+            {
+              "words": ["b", "a", "b"],
+              "numbers": [3, "1", 2],
+              "object": {"x": 1, "y": "2"},
+              "nested": [[1, 2], [], ["3"]],
+              "groups": {"odd": [1, 3], "even": [2]}
+            }
+            """);
+        CollectionsDestination destination = mapper().map(json, CollectionsDestination.class);
+        assertThat(destination.set).containsExactly("b", "a");
+        assertThat(destination.sorted).containsExactly(1, 2, 3);
+        assertThat(destination.collection).containsExactly(3L, 1L, 2L);
+        assertThat(destination.array).containsExactly("b", "a", "b");
+        assertThat(destination.longs).containsExactly(3L, 1L, 2L);
+        assertThat(destination.map).containsExactly(Map.entry("x", 1L), Map.entry("y", 2L));
+        assertThat(destination.nested).containsExactly(List.of(1, 2), List.of(), List.of(3));
+        assertThat(destination.groups).containsExactly(Map.entry("even", List.of(2L)), Map.entry("odd", List.of(1L, 3L)));
+    }
+
+    @Test
+    void dateTimes() throws Exception {
+        JsonNode json = new com.fasterxml.jackson.databind.ObjectMapper().readTree("""
+            {
+              "iso": "2024-05-01T10:15:30.5+02:00",
+              "local": "2024-05-01 10:15:30",
+              "dutch": "1-5-2024",
+              "partial": "2024-05",
+              "epoch": 1714551330000,
+              "seconds": "1714551330",
+              "zoned": "2024-05-01T10:15:30+02:00[Europe/Amsterdam]"
+            }
+            """);
+        DateTimeDestination destination = mapper().map(json, DateTimeDestination.class);
+        assertThat(destination.iso).isEqualTo(Instant.parse("2024-05-01T08:15:30.5Z"));
+        assertThat(destination.local).isEqualTo(LocalDateTime.of(2024, 5, 1, 10, 15, 30));
+        assertThat(destination.dutch).isEqualTo(LocalDate.of(2024, 5, 1));
+        assertThat(destination.partial).isEqualTo(LocalDate.of(2024, 5, 1));
+        assertThat(destination.epoch).isEqualTo(Instant.parse("2024-05-01T08:15:30Z"));
+        assertThat(destination.seconds).isEqualTo(OffsetDateTime.parse("2024-05-01T08:15:30Z"));
+        assertThat(destination.zoned).isEqualTo(ZonedDateTime.of(2024, 5, 1, 10, 15, 30, 0, ZoneId.of("Europe/Amsterdam")));
+
+        DateTimeDestination amsterdam = mapper().withDateTimeZone(ZoneId.of("Europe/Amsterdam")).map(json, DateTimeDestination.class);
+        assertThat(amsterdam.seconds).isEqualTo(OffsetDateTime.parse("2024-05-01T10:15:30+02:00"));
+        assertThat(amsterdam.iso).isEqualTo(destination.iso);
+    }
+
+    @Test
+    void primitivesDoNotAllocate() throws Exception {
+        JsonNode json = new com.fasterxml.jackson.databind.ObjectMapper().readTree("{\"a\": 4, \"b\": 5.5, \"c\": 6, \"d\": true}");
+        Measurement measurement = new Measurement(10L, 20, 0.5, true, null);
+        MeasurementDestination destination = new MeasurementDestination();
+        Mapper mapper = mapper();
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        for (int i = 0; i < 20_000; i++) {
+            mapper.map(json, destination);
+            mapper.map(measurement, destination);
+        }
+        int count = 100_000;
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < count; i++) {
+            mapper.map(json, destination);
+            mapper.map(measurement, destination);
+        }
+        long perMapping = (threads.getThreadAllocatedBytes(threadId) - before) / count;
+        log.info("{} bytes for 8 primitive fields", perMapping);
+        assertThat(destination.a).isEqualTo(4L);
+        assertThat(destination.count).isEqualTo(10L);
+        // at most the two LeafResults, not a box per field
+        assertThat(perMapping).isLessThan(8 * 16);
+    }
+
+    @Test
+    void scalarConverter() {
+        Mapper mapper = mapper().withScalarConverter(String.class, Long.class, s -> s.isEmpty() ? -1L : Long.parseLong(s, 16));
+        PrimitiveDestination destination = mapper.map(new ScalarSource("ff", null, null, null, null), PrimitiveDestination.class);
+        assertThat(destination.a).isEqualTo(255L);
+
+        ScalarSource source = new ScalarSource("", null, null, null, null);
+        assertThat(mapper.map(source, PrimitiveDestination.class).a).isEqualTo(-1L);
+        assertThat(mapper().map(source, PrimitiveDestination.class).a).isEqualTo(0L);
+        assertThat(Mapper.builder().scalarConverters(mapper.scalarConverters()).build().map(source, PrimitiveDestination.class).a).isEqualTo(-1L);
+    }
+
+    @Test
+    void leafDispatchKeptByPlan() {
+        Mapper mapper = mapper().withJsonCacheSize(JsonCache.DEFAULT_MAX_ENTRIES + 1);
+        ScalarDestination destination = mapper.map(new ScalarSource("a", "b", "c", 1L, 2), ScalarDestination.class);
+        assertThat(destination.d).isEqualTo(1L);
+        // not in a cache keyed on the value classes (like String), which would keep the destination fields loaded
+        CacheStats stats = mapper.cacheStats().stream().filter(s -> s.name().equals("leafDispatch")).findFirst().orElseThrow();
+        assertThat(stats.size()).isEqualTo(0);
+    }
+
+    @Test
+    void leafMappingDoesNotAllocate() {
+        ScalarSource source = new ScalarSource("a", "b", "c", 1L, 2);
+        ScalarDestination destination = new ScalarDestination();
+        Mapper mapper = mapper();
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        for (int i = 0; i < 20_000; i++) {
+            mapper.map(source, destination);
+        }
+        int count = 100_000;
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < count; i++) {
+            mapper.map(source, destination);
+        }
+        long perMapping = (threads.getThreadAllocatedBytes(threadId) - before) / count;
+        log.info("{} bytes per mapping of 5 fields", perMapping);
+        assertThat(destination.a).isEqualTo("a");
+        assertThat(destination.e).isEqualTo(2);
+        // at most the one LeafResult, not something per field
+        assertThat(perMapping).isLessThan(5 * 16);
+    }
+
     @Test
     public void subJson() {
         SourceObject source = new SourceObject();
@@ -271,13 +607,181 @@ class MapperTest {
                         ]
           }
           """);
-        Destination destination = MAPPER.map(source, Destination.class);
+        Destination destination = mapper().map(source, Destination.class);
 
         assertThat(destination.list().get(0).broadcaster()).isEqualTo("VPRO");
         //assertThat(destination.subObject().b()).isEqualTo("bar");
 
     }
 
+    @Test
+    public void blob() {
+        SourceObject source = new SourceObject();
+        source.json("""
+            {
+              "title": "foobar",
+              "items": [{"id": 1}, {"id": 2, "a": "x", "b": "y"}]
+            }
+            """.getBytes(StandardCharsets.UTF_8));
+        BlobDestination destination = mapper().map(source, BlobDestination.class);
+        assertThat(destination.title).isEqualTo("foobar");
+        assertThat(destination.secondId).isEqualTo(2L);
+        assertThat(destination.secondA).isEqualTo("x");
+        assertThat(destination.missing).isNull();
+    }
+
+    @Test
+    public void jsonSources(@TempDir Path directory) throws IOException {
+        String json = "{\"title\": \"foo\", \"description\": \"bar\"}";
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes).flip();
+        Path file = Files.write(directory.resolve("source.json"), bytes);
+        byte[] padded = (" " + json + " ").getBytes(StandardCharsets.UTF_8);
+        for (Object source : List.of(ByteBuffer.wrap(bytes), ByteBuffer.wrap(padded, 1, padded.length - 2).slice(), direct, new ByteArrayInputStream(bytes), new StringReader(json), file)) {
+            FromJsonFieldDestination destination = mapper().map(new AnyJsonSource(source), FromJsonFieldDestination.class);
+            assertThat(destination.title()).as(source.getClass().getName()).isEqualTo("foo");
+            assertThat(destination.description()).as(source.getClass().getName()).isEqualTo("bar");
+        }
+        assertThat(direct.position()).isEqualTo(0);
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void sourceGetter() throws NoSuchFieldException {
+        SourceObject source = new SourceObject().json("{'title': 'foobar'}".getBytes(StandardCharsets.UTF_8));
+        List<Optional<Mapper.ValueAndEffectiveSource>> values = mapper().sourceGetter(SourceObject.class, Destination.class, Destination.class.getDeclaredField("title"))
+            .stream()
+            .map(getter -> getter.apply(source))
+            .toList();
+        assertThat(values).hasSize(1);
+        assertThat(values.get(0).orElseThrow().value()).isEqualTo("foobar");
+        assertThat(values.get(0).orElseThrow().effectiveSource().jsonPointer()).isEqualTo("/title");
+    }
+
+    @Test
+    public void effectiveSourceWithoutDateTimeFormat() {
+        EffectiveSource effectiveSource = new EffectiveSource(SourceObject.class, UNSET, "/title", "json", List.of(), List.of());
+        assertThat(effectiveSource.dateTimeFormat()).isEqualTo(UNSET);
+    }
+
+    @Test
+    public void mappersReleased() throws InterruptedException {
+        List<WeakReference<Mapper>> references = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            references.add(mappedOnce(i));
+        }
+        for (int i = 0; i < 50 && references.stream().anyMatch(r -> r.get() != null); i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertThat(references.stream().filter(r -> r.get() != null).count()).isZero();
+    }
+
+    /**
+     * A new mapper, that mapped something. Not in a local variable of the test, which might keep it alive.
+     */
+    private WeakReference<Mapper> mappedOnce(int i) {
+        Mapper mapper = mapper().withJsonCacheSize(JsonCache.DEFAULT_MAX_ENTRIES + 1 + i);
+        mapper.map(new SourceObject().json("{'title': 'foobar'}".getBytes(StandardCharsets.UTF_8)), Destination.class);
+        return new WeakReference<>(mapper);
+    }
+
+    @Test
+    public void reusedByteBuffer() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(64);
+        try (MappingContext context = mapper().context()) {
+            for (String title : List.of("foo", "bar", "baz")) {
+                buffer.clear();
+                buffer.put(("{\"title\": \"" + title + "\"}").getBytes(StandardCharsets.UTF_8)).flip();
+                assertThat(context.map(new AnyJsonSource(buffer), FromJsonFieldDestination.class).title()).isEqualTo(title);
+                assertThat(mapper().map(new AnyJsonSource(buffer), FromJsonFieldDestination.class).title()).isEqualTo(title);
+            }
+            // not kept alive
+            assertThat(context.jsonCache().isEmpty()).isTrue();
+        }
+    }
+
+    @Test
+    public void context() {
+        SourceObject source = new SourceObject();
+        source.json("""
+            {"title": "foobar", "items": [{"id": 1}, {"id": 2, "a": "x"}]}
+            """.getBytes(StandardCharsets.UTF_8));
+        JsonUtil.clearCache();
+        MappingContext context = mapper().withJsonCacheSize(10).context();
+        try (context) {
+            BlobDestination destination = context.map(source, BlobDestination.class);
+            assertThat(destination.title).isEqualTo("foobar");
+            assertThat(destination.secondA).isEqualTo("x");
+            assertThat(context.jsonCache().maxEntries()).isEqualTo(10);
+            assertThat(context.jsonCache().isEmpty()).isFalse();
+            // the cache of the current thread is not used
+            assertThat(JsonUtil.cache().isEmpty()).isTrue();
+        }
+        assertThat(context.jsonCache().isEmpty()).isTrue();
+    }
+
+    @Test
+    public void contentJsonCache() {
+        ContentJsonCache shared = new ContentJsonCache("shared", 1_000_000);
+        Mapper mapper = mapper().withContentJsonCache(shared);
+        List<SourceObject> sources = IntStream.range(0, 10)
+            .mapToObj(i -> new SourceObject().json("{'title': 'series'}".getBytes(StandardCharsets.UTF_8)))
+            .toList();
+        assertThat(mapper.mapAll(sources, Destination.class)).allMatch(d -> d.title().equals("series"));
+        assertThat(mapper.map(sources.get(0), Destination.class).title()).isEqualTo("series");
+        assertThat(mapper.cacheStats()).contains(new CacheStats("shared", 10, 1, 1));
+        mapper.clearCaches();
+        assertThat(shared.length()).isEqualTo(0L);
+    }
+
+    @Test
+    public void contentJsonCacheTreesNotShared() {
+        Mapper mapper = mapper().withContentJsonCache(new ContentJsonCache("shared", 1_000_000));
+        // jsonPointer "/" is the property ""
+        String json = "{\"\": {\"a\": {\"b\": \"bar\"}}}";
+        Destination first = mapper.map(new SourceObject().moreJson(new String(json)), Destination.class);
+        ((ObjectNode) first.moreJson()).put("x", 1);
+        ((ObjectNode) first.moreJson().get("a")).removeAll();
+
+        Destination second = mapper.map(new SourceObject().moreJson(new String(json)), Destination.class);
+        assertThat(second.moreJson().has("x")).isFalse();
+        assertThat(second.moreJson().at("/a/b").textValue()).isEqualTo("bar");
+    }
+
+    @Test
+    public void contentJsonCacheElementsNotShared() {
+        Mapper mapper = mapper().withContentJsonCache(new ContentJsonCache("shared", 1_000_000));
+        String json = "{\"items\": [{\"x\": 1}], \"nested\": [[{\"z\": 1}]], \"m\": {\"k\": {\"y\": 1}}}";
+        JsonCollectionsDestination first = mapper.map(new AnyJsonSource(new String(json)), JsonCollectionsDestination.class);
+        ((ObjectNode) first.items.get(0)).put("x", 666);
+        ((ObjectNode) first.nodes.get(0)).put("x", 666);
+        ((ObjectNode) ((List<?>) first.nested.get(0)).get(0)).put("z", 666);
+        ((ObjectNode) first.m.get("k")).put("y", 777);
+
+        JsonCollectionsDestination second = mapper.map(new AnyJsonSource(new String(json)), JsonCollectionsDestination.class);
+        assertThat(second.items.toString()).isEqualTo("[{\"x\":1}]");
+        assertThat(second.nodes.toString()).isEqualTo("[{\"x\":1}]");
+        assertThat(second.nested.toString()).isEqualTo("[[{\"z\":1}]]");
+        assertThat(second.m.toString()).isEqualTo("{k={\"y\":1}}");
+    }
+
+    @Test
+    public void contentJsonCacheElementsNotSharedInParallel() {
+        Mapper mapper = mapper()
+            .withContentJsonCache(new ContentJsonCache("shared", 1_000_000))
+            .withParallelCollectionThreshold(1);
+        String json = "{\"items\": [{\"x\": 1}, {\"x\": 2}]}";
+        JsonCollectionsDestination first = mapper.map(new AnyJsonSource(new String(json)), JsonCollectionsDestination.class);
+        ((ObjectNode) first.nodes.get(0)).put("x", 666);
+        ((ObjectNode) first.items.get(1)).put("x", 666);
+
+        JsonCollectionsDestination second = mapper.map(new AnyJsonSource(new String(json)), JsonCollectionsDestination.class);
+        assertThat(second.nodes.toString()).isEqualTo("[{\"x\":1}, {\"x\":2}]");
+        assertThat(second.items.toString()).isEqualTo("[{\"x\":1}, {\"x\":2}]");
+    }
+
     @Test
     public void multipleSourcesA() {
         SourceObject source = new SourceObject();
@@ -287,7 +791,7 @@ class MapperTest {
             }
             """);
         {
-            MultipleSources destination = MAPPER.map(source, MultipleSources.class);
+            MultipleSources destination = mapper().map(source, MultipleSources.class);
             assertThat(destination.a).isEqualTo("x");
         }
     }
@@ -300,7 +804,7 @@ class MapperTest {
           }
           """);
         {
-            MultipleSources destination = MAPPER.map(source, MultipleSources.class);
+            MultipleSources destination = mapper().map(source, MultipleSources.class);
             assertThat(destination.a).isEqualTo("y");
         }
         source.moreJson("""
@@ -310,7 +814,7 @@ class MapperTest {
           }
           """);
         {
-            MultipleSources destination = MAPPER.map(source, MultipleSources.class);
+            MultipleSources destination = mapper().map(source, MultipleSources.class);
             assertThat(destination.a).isEqualTo("y");
         }
     }
@@ -323,7 +827,7 @@ class MapperTest {
             "custom": "foobar"
           }
           """.getBytes());
-        Destination destination = MAPPER.map(source, Destination.class);
+        Destination destination = mapper().map(source, Destination.class);
         assertThat(destination.withCustomLeafMapperAndAnnotation()).isEqualTo("{{foobar}}");
     }
 
@@ -0,0 +1,71 @@
+package nl.beeldengeluid.mapping;
+
+import org.junit.jupiter.api.Test;
+
+import nl.beeldengeluid.mapping.annotations.Source;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * {@link ToDestination} is registered in {@code META-INF/services}, as the annotation processor would do.
+ */
+class PrecompiledMapperTest {
+
+    public static class Src {
+        public String title;
+    }
+
+    public static class SubSrc extends Src {
+    }
+
+    public static class Dest {
+        @Source(sourceClass = Src.class)
+        public String title;
+    }
+
+    public static class ToDestination implements PrecompiledMapper<Src, Dest> {
+
+        @Override
+        public Class<Src> sourceClass() {
+            return Src.class;
+        }
+
+        @Override
+        public Class<Dest> destinationClass() {
+            return Dest.class;
+        }
+
+        @Override
+        public void map(Mapper mapper, Src source, Dest destination) {
+            destination.title = "precompiled " + source.title;
+        }
+    }
+
+    @Test
+    void precompiled() {
+        Src src = new Src();
+        src.title = "foo";
+        MappingPlan plan = Mapper.MAPPER.plan(Src.class, Dest.class);
+        assertThat(plan.precompiled()).containsInstanceOf(ToDestination.class);
+        assertThat(plan.mappedFields()).extracting("name").containsExactly("title");
+
+        assertThat(Mapper.MAPPER.map(src, Dest.class).title).isEqualTo("precompiled foo");
+    }
+
+    @Test
+    void notPrecompiled() {
+        Src src = new Src();
+        src.title = "foo";
+        Mapper mapper = Mapper.MAPPER.withUsesPrecompiledMappers(false);
+        assertThat(mapper.plan(Src.class, Dest.class).precompiled()).isEmpty();
+        assertThat(mapper.map(src, Dest.class).title).isEqualTo("foo");
+    }
+
+    @Test
+    void subClass() {
+        SubSrc src = new SubSrc();
+        src.title = "foo";
+        assertThat(Mapper.MAPPER.plan(SubSrc.class, Dest.class).precompiled()).isEmpty();
+        assertThat(Mapper.MAPPER.map(src, Dest.class).title).isEqualTo("foo");
+    }
+}
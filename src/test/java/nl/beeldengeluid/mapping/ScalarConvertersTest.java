@@ -0,0 +1,78 @@
+package nl.beeldengeluid.mapping;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.Duration;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ScalarConvertersTest {
+
+    final ScalarConverters converters = ScalarConverters.DEFAULT;
+
+    Object convert(Object value, Class<?> destination) {
+        return converters.converter(value.getClass(), destination).apply(value);
+    }
+
+    @Test
+    void defaults() {
+        assertThat(convert("10", long.class)).isEqualTo(10L);
+        assertThat(convert("10", Integer.class)).isEqualTo(10);
+        assertThat(convert(10L, int.class)).isEqualTo(10);
+        assertThat(convert(10, double.class)).isEqualTo(10.0);
+        assertThat(convert("true", boolean.class)).isEqualTo(true);
+        assertThat(convert("1.10", BigDecimal.class)).isEqualTo(new BigDecimal("1.10"));
+        assertThat(convert(2L, BigDecimal.class)).isEqualTo(new BigDecimal("2"));
+        assertThat(convert("PT1S", Duration.class)).isEqualTo(Duration.ofSeconds(1));
+        assertThat(convert("4a6d8a33-8e6b-4c3c-9d3e-0c1a2b3c4d5e", UUID.class)).isEqualTo(UUID.fromString("4a6d8a33-8e6b-4c3c-9d3e-0c1a2b3c4d5e"));
+        assertThat(convert(new StringBuilder("3"), Short.class)).isEqualTo((short) 3);
+    }
+
+    @Test
+    void exact() {
+        assertThat(convert(2.0, long.class)).isEqualTo(2L);
+        assertThat(convert(new BigDecimal("3.00"), int.class)).isEqualTo(3);
+        assertThat(convert(-128, byte.class)).isEqualTo((byte) -128);
+        assertThat(convert(1e20, BigInteger.class)).isEqualTo(new BigInteger("100000000000000000000"));
+
+        // overflow
+        assertThatThrownBy(() -> convert(12345678901L, int.class)).isInstanceOf(ArithmeticException.class);
+        assertThatThrownBy(() -> convert(40000, short.class)).isInstanceOf(ArithmeticException.class);
+        assertThatThrownBy(() -> convert(128, Byte.class)).isInstanceOf(ArithmeticException.class);
+        assertThatThrownBy(() -> convert(new BigInteger("123456789012345678901234567890"), long.class)).isInstanceOf(ArithmeticException.class);
+        assertThatThrownBy(() -> convert(1e30, long.class)).isInstanceOf(ArithmeticException.class);
+        // fractions
+        assertThatThrownBy(() -> convert(1.9, long.class)).isInstanceOf(ArithmeticException.class);
+        assertThatThrownBy(() -> convert(new BigDecimal("1.5"), int.class)).isInstanceOf(ArithmeticException.class);
+        assertThatThrownBy(() -> convert(1.5, BigInteger.class)).isInstanceOf(ArithmeticException.class);
+    }
+
+    @Test
+    void resolution() {
+        // anything accepting a string gets toString
+        assertThat(convert(10L, String.class)).isEqualTo("10");
+        assertThat(convert(10L, Serializable.class)).isEqualTo("10");
+        // a super type of the registered destination
+        assertThat(convert("10", Number.class)).isEqualTo(10L);
+        assertThat(converters.converter(Duration.class, UUID.class)).isNull();
+        assertThat(converters.converter(Long.class, long.class)).isSameAs(converters.converter(Long.class, long.class));
+    }
+
+    @Test
+    void with() {
+        ScalarConverters withHex = converters.with(String.class, long.class, s -> Long.parseLong(s, 16));
+        assertThat(withHex.converter(String.class, Long.class).apply("ff")).isEqualTo(255L);
+        assertThat(withHex.converter(StringBuilder.class, Long.class).apply(new StringBuilder("10"))).isEqualTo(10L);
+        assertThat(converters.converter(String.class, Long.class).apply("10")).isEqualTo(10L);
+        assertThat(withHex.registered().get(String.class)).containsExactly(Long.class);
+
+        ScalarConverters replaced = withHex.with(String.class, Long.class, s -> 0L);
+        assertThat(replaced.converter(String.class, long.class).apply("ff")).isEqualTo(0L);
+        assertThat(replaced.registered().get(String.class)).containsExactly(Long.class);
+    }
+}
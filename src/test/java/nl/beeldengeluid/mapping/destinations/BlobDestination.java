@@ -0,0 +1,23 @@
+package nl.beeldengeluid.mapping.destinations;
+
+import nl.beeldengeluid.mapping.annotations.Source;
+import nl.beeldengeluid.mapping.sources.SourceObject;
+
+@Source(sourceClass = SourceObject.class, field = "json")
+public class BlobDestination {
+
+    @Source(jsonPointer = "/title")
+    public String title;
+
+    @Source(jsonPointer = "/items/1/id")
+    public Long secondId;
+
+    @Source(jsonPointer = "/items/1")
+    public SubDestination second;
+
+    @Source(jsonPath = "$.items[1].a")
+    public String secondA;
+
+    @Source(jsonPointer = "/missing/value")
+    public String missing;
+}
@@ -0,0 +1,35 @@
+package nl.beeldengeluid.mapping.destinations;
+
+import java.util.*;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import nl.beeldengeluid.mapping.annotations.Source;
+
+@Source(sourceClass = JsonNode.class)
+public class CollectionsDestination {
+
+    @Source(jsonPointer = "/words")
+    public Set<String> set;
+
+    @Source(jsonPointer = "/numbers")
+    public SortedSet<Integer> sorted;
+
+    @Source(jsonPointer = "/numbers")
+    public Collection<Long> collection;
+
+    @Source(jsonPointer = "/words")
+    public String[] array;
+
+    @Source(jsonPointer = "/numbers")
+    public long[] longs;
+
+    @Source(jsonPointer = "/object")
+    public Map<String, Long> map;
+
+    @Source(jsonPointer = "/nested")
+    public List<List<Integer>> nested;
+
+    @Source(jsonPointer = "/groups")
+    public SortedMap<String, List<Long>> groups;
+}
@@ -0,0 +1,32 @@
+package nl.beeldengeluid.mapping.destinations;
+
+import java.time.*;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import nl.beeldengeluid.mapping.annotations.Source;
+
+@Source(sourceClass = JsonNode.class)
+public class DateTimeDestination {
+
+    @Source(jsonPointer = "/iso")
+    public Instant iso;
+
+    @Source(jsonPointer = "/local", dateTimeFormat = "yyyy-MM-dd HH:mm:ss")
+    public LocalDateTime local;
+
+    @Source(jsonPointer = "/dutch", dateTimeFormat = "d-M-yyyy")
+    public LocalDate dutch;
+
+    @Source(jsonPointer = "/partial")
+    public LocalDate partial;
+
+    @Source(jsonPointer = "/epoch")
+    public Instant epoch;
+
+    @Source(jsonPointer = "/seconds", dateTimeFormat = Source.EPOCH_SECONDS)
+    public OffsetDateTime seconds;
+
+    @Source(jsonPointer = "/zoned")
+    public ZonedDateTime zoned;
+}
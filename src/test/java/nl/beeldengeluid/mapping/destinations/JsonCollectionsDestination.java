@@ -0,0 +1,27 @@
+package nl.beeldengeluid.mapping.destinations;
+
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import nl.beeldengeluid.mapping.annotations.Source;
+
+/**
+ * Collections of which the elements are json themselves
+ */
+@Source(field = "json")
+public class JsonCollectionsDestination {
+
+    @Source(jsonPointer = "/items")
+    public List<Object> items;
+
+    @Source(jsonPointer = "/items")
+    public List<JsonNode> nodes;
+
+    @Source(jsonPointer = "/nested")
+    public List<Object> nested;
+
+    @Source(jsonPointer = "/m")
+    public Map<String, Object> m;
+}
@@ -0,0 +1,31 @@
+package nl.beeldengeluid.mapping.destinations;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import nl.beeldengeluid.mapping.annotations.Source;
+import nl.beeldengeluid.mapping.sources.Measurement;
+
+@Source(sourceClass = Measurement.class)
+public class MeasurementDestination {
+
+    @Source
+    public long count;
+    @Source(field = "size")
+    public long longSize;
+    @Source
+    public double ratio;
+    @Source
+    public boolean flag;
+    @Source(field = "json", jsonPointer = "/a")
+    @Source(sourceClass = JsonNode.class, jsonPointer = "/a")
+    public long a;
+    @Source(field = "json", jsonPointer = "/b")
+    @Source(sourceClass = JsonNode.class, jsonPointer = "/b")
+    public double b;
+    @Source(field = "json", jsonPointer = "/c")
+    @Source(sourceClass = JsonNode.class, jsonPointer = "/c")
+    public int c;
+    @Source(field = "json", jsonPointer = "/d")
+    @Source(sourceClass = JsonNode.class, jsonPointer = "/d")
+    public boolean d;
+}
@@ -0,0 +1,21 @@
+package nl.beeldengeluid.mapping.destinations;
+
+import java.math.BigDecimal;
+
+import nl.beeldengeluid.mapping.annotations.Source;
+import nl.beeldengeluid.mapping.sources.ScalarSource;
+
+@Source(sourceClass = ScalarSource.class)
+public class PrimitiveDestination {
+
+    @Source(field = "a")
+    public long a;
+    @Source(field = "b")
+    public BigDecimal b;
+    @Source(field = "c")
+    public char c;
+    @Source(field = "d")
+    public int d;
+    @Source(field = "e")
+    public double e;
+}
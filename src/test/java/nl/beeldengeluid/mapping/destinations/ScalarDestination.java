@@ -0,0 +1,19 @@
+package nl.beeldengeluid.mapping.destinations;
+
+import nl.beeldengeluid.mapping.annotations.Source;
+import nl.beeldengeluid.mapping.sources.ScalarSource;
+
+@Source(sourceClass = ScalarSource.class)
+public class ScalarDestination {
+
+    @Source
+    public String a;
+    @Source
+    public String b;
+    @Source
+    public String c;
+    @Source
+    public Long d;
+    @Source
+    public Integer e;
+}
@@ -0,0 +1,50 @@
+package nl.beeldengeluid.mapping.impl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import nl.beeldengeluid.mapping.CacheStats;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CacheTest {
+
+    @Test
+    void perClass() {
+        AtomicInteger computed = new AtomicInteger();
+        Cache<Class<?>, String> cache = Cache.perClass("test", c -> c.getSimpleName() + computed.incrementAndGet());
+        assertThat(cache.get(String.class)).isEqualTo("String1");
+        assertThat(cache.get(String.class)).isEqualTo("String1");
+        assertThat(cache.get(Integer.class)).isEqualTo("Integer2");
+
+        cache.clear();
+        assertThat(cache.get(String.class)).isEqualTo("String3");
+        assertThat(cache.stats()).isEqualTo(new CacheStats("test", 1, 3, -1));
+    }
+
+    @Test
+    void bounded() {
+        Cache<Integer, String> cache = Cache.bounded("test", 10, String::valueOf);
+        for (int i = 0; i < 100; i++) {
+            assertThat(cache.get(i)).isEqualTo(String.valueOf(i));
+        }
+        assertThat(cache.size()).isEqualTo(10);
+        assertThat(cache.get(99)).isEqualTo("99");
+        assertThat(cache.stats().hits()).isEqualTo(1);
+        assertThat(cache.stats().misses()).isEqualTo(100);
+
+        cache.clear();
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    void unbounded() {
+        Cache<Class<?>, String> cache = Cache.unbounded("test", Class::getSimpleName);
+        for (int i = 0; i < 2; i++) {
+            assertThat(cache.get(String.class)).isEqualTo("String");
+            assertThat(cache.get(Integer.class)).isEqualTo("Integer");
+        }
+        assertThat(cache.stats()).isEqualTo(new CacheStats("test", 2, 2, 2));
+    }
+}
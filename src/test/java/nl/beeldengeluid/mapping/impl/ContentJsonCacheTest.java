@@ -0,0 +1,77 @@
+package nl.beeldengeluid.mapping.impl;
+
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import nl.beeldengeluid.mapping.CacheStats;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ContentJsonCacheTest {
+
+    @Test
+    void sharedByContent() {
+        ContentJsonCache shared = new ContentJsonCache("test", 1_000);
+        String json = "{\"a\": [1, 2, 3], \"b\": \"x\"}";
+        JsonNode parsed = shared.get(json, null);
+        assertThat(shared.get(new String(json), null)).isSameAs(parsed);
+        assertThat(shared.get(json.getBytes(StandardCharsets.UTF_8), null)).isNotSameAs(parsed).isEqualTo(parsed);
+        assertThat(shared.get(json.getBytes(StandardCharsets.UTF_8), null)).isNotSameAs(parsed).isEqualTo(parsed);
+        assertThat(shared.get("{\"a\": [1, 2, 4], \"b\": \"x\"}", null)).isNotEqualTo(parsed);
+
+        JsonPointerFilter filter = JsonPointerFilter.of(List.of("/b"));
+        assertThat(shared.get(json, filter).toString()).isEqualTo("{\"b\":\"x\"}");
+
+        assertThat(shared.stats()).isEqualTo(new CacheStats("test", 2, 4, 4));
+        assertThat(shared.length()).isEqualTo(4L * json.length());
+    }
+
+    @Test
+    void byteBuffer() {
+        ContentJsonCache shared = new ContentJsonCache("test", 1_000);
+        byte[] json = "{\"a\": [1, 2, 3], \"b\": \"x\"}".getBytes(StandardCharsets.UTF_8);
+        JsonNode parsed = shared.get(json, null);
+        ByteBuffer direct = ByteBuffer.allocateDirect(json.length + 1);
+        direct.put((byte) ' ').put(json).flip().position(1);
+        assertThat(shared.get(direct, null)).isSameAs(parsed);
+        assertThat(direct.position()).isEqualTo(1);
+        // not cached
+        assertThat(shared.get(new StringReader(new String(json, StandardCharsets.UTF_8)), null)).isNotSameAs(parsed).isEqualTo(parsed);
+        assertThat(shared.stats()).isEqualTo(new CacheStats("test", 1, 1, 1));
+    }
+
+    @Test
+    void bounded() {
+        ContentJsonCache shared = new ContentJsonCache("test", 20);
+        shared.get("[1, 2, 3, 4, 5]", null);
+        shared.get("[1, 2, 3, 4]", null);
+        // the first one was evicted
+        assertThat(shared.length()).isEqualTo(12L);
+        shared.get("[1, 2, 3, 4]", null);
+        assertThat(shared.stats().size()).isEqualTo(1);
+        // too large to cache
+        shared.get("[1, 2, 3, 4, 5, 6, 7, 8, 9, 10]", null);
+        assertThat(shared.stats()).isEqualTo(new CacheStats("test", 1, 3, 1));
+        shared.clear();
+        assertThat(shared.length()).isEqualTo(0L);
+    }
+
+    @Test
+    void behindJsonCache() {
+        ContentJsonCache shared = new ContentJsonCache("test", 1_000);
+        byte[] json = "{\"a\": 1}".getBytes(StandardCharsets.UTF_8);
+        JsonCache first = new JsonCache(10, shared);
+        JsonCache second = new JsonCache(10, shared);
+        JsonNode parsed = JsonUtil.getJson(json, null, first);
+        assertThat(JsonUtil.getJson(json, null, first)).isSameAs(parsed);
+        assertThat(JsonUtil.getJson(json.clone(), null, second)).isSameAs(parsed);
+        // the identity based cache was hit the second time
+        assertThat(shared.stats()).isEqualTo(new CacheStats("test", 1, 1, 1));
+    }
+}
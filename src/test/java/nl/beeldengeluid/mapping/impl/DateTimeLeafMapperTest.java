@@ -0,0 +1,90 @@
+package nl.beeldengeluid.mapping.impl;
+
+import java.time.*;
+import java.time.format.DateTimeParseException;
+
+import org.junit.jupiter.api.Test;
+
+import nl.beeldengeluid.mapping.*;
+import nl.beeldengeluid.mapping.annotations.Source;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DateTimeLeafMapperTest {
+
+    static final ZoneId AMSTERDAM = ZoneId.of("Europe/Amsterdam");
+
+    static Object map(DateTimeLeafMapper dateTimeLeafMapper, String format, Class<?> type, Object value) {
+        EffectiveSource source = EffectiveSource.builder().dateTimeFormat(format).build();
+        MappedField field = new MappedFieldImpl("date", type, source);
+        LeafResult result = new LeafResult();
+        return dateTimeLeafMapper.mapInto(Mapper.MAPPER, source, field, value, result) ? result.value() : null;
+    }
+
+    static Object map(String format, Class<?> type, Object value) {
+        return map(DateTimeLeafMapper.INSTANCE, format, type, value);
+    }
+
+    @Test
+    void iso() {
+        assertThat(map(null, Instant.class, "2024-05-01T10:15:30Z")).isEqualTo(Instant.parse("2024-05-01T10:15:30Z"));
+        assertThat(map(null, Instant.class, "2024-05-01T10:15:30.123456789-01:30")).isEqualTo(Instant.parse("2024-05-01T11:45:30.123456789Z"));
+        assertThat(map(null, Instant.class, "2024-05-01T10:15")).isEqualTo(Instant.parse("2024-05-01T10:15:00Z"));
+        assertThat(map(null, LocalDateTime.class, "2024-05-01T10:15:30.12")).isEqualTo(LocalDateTime.of(2024, 5, 1, 10, 15, 30, 120_000_000));
+        assertThat(map(null, OffsetDateTime.class, "2024-05-01T10:15:30+02:00")).isEqualTo(OffsetDateTime.parse("2024-05-01T10:15:30+02:00"));
+        assertThat(map(null, ZonedDateTime.class, "2024-05-01T10:15:30+02:00")).isEqualTo(ZonedDateTime.parse("2024-05-01T10:15:30+02:00"));
+        assertThat(map(null, LocalDate.class, "2024-05-01")).isEqualTo(LocalDate.of(2024, 5, 1));
+        // not handled by hand
+        assertThat(map(null, ZonedDateTime.class, "2024-10-27T02:30:00+01:00[Europe/Amsterdam]")).isEqualTo(ZonedDateTime.parse("2024-10-27T02:30:00+01:00[Europe/Amsterdam]"));
+        assertThat(map(null, LocalDate.class, "+12024-05-01")).isEqualTo(LocalDate.of(12024, 5, 1));
+        assertThat(map(null, LocalDateTime.class, "2024-05-01t10:15:30")).isEqualTo(LocalDateTime.of(2024, 5, 1, 10, 15, 30));
+    }
+
+    @Test
+    void partial() {
+        assertThat(map(null, LocalDate.class, "2024")).isEqualTo(LocalDate.of(2024, 1, 1));
+        assertThat(map(null, LocalDate.class, "2024-05")).isEqualTo(LocalDate.of(2024, 5, 1));
+        assertThat(map(null, Instant.class, "2024-05-01")).isEqualTo(Instant.parse("2024-05-01T00:00:00Z"));
+        assertThat(map("MM/yyyy", LocalDate.class, "05/2024")).isEqualTo(LocalDate.of(2024, 5, 1));
+    }
+
+    @Test
+    void zone() {
+        DateTimeLeafMapper amsterdam = new DateTimeLeafMapper(AMSTERDAM);
+        assertThat(map(amsterdam, null, Instant.class, "2024-05-01T10:15:30")).isEqualTo(Instant.parse("2024-05-01T08:15:30Z"));
+        assertThat(map(amsterdam, null, Instant.class, "2024-05-01T10:15:30Z")).isEqualTo(Instant.parse("2024-05-01T10:15:30Z"));
+        assertThat(map(amsterdam, null, ZonedDateTime.class, "2024-05-01T10:15:30")).isEqualTo(ZonedDateTime.of(2024, 5, 1, 10, 15, 30, 0, AMSTERDAM));
+        assertThat(map(amsterdam, null, LocalDate.class, 1714514400000L)).isEqualTo(LocalDate.of(2024, 5, 1));
+        assertThat(map(null, LocalDate.class, 1714514400000L)).isEqualTo(LocalDate.of(2024, 4, 30));
+    }
+
+    @Test
+    void patterns() {
+        assertThat(map("yyyy-MM-dd HH:mm:ss", LocalDateTime.class, "2024-05-01 10:15:30")).isEqualTo(LocalDateTime.of(2024, 5, 1, 10, 15, 30));
+        assertThat(map("yyyy-MM-dd'T'HH:mm:ss", OffsetDateTime.class, "2024-05-01T10:15:30")).isEqualTo(OffsetDateTime.parse("2024-05-01T10:15:30Z"));
+        assertThat(map("yyyy-MM-dd", LocalDate.class, "2024-05-01")).isEqualTo(LocalDate.of(2024, 5, 1));
+        // resolved like the formatter does
+        assertThat(map("yyyy-MM-dd", LocalDate.class, "2023-02-30")).isEqualTo(LocalDate.of(2023, 2, 28));
+        assertThat(map("dd MMM yyyy HH:mm", LocalDateTime.class, "01 May 2024 10:15")).isEqualTo(LocalDateTime.of(2024, 5, 1, 10, 15));
+        assertThatThrownBy(() -> map("yyyy-MM-dd HH:mm:ss", LocalDateTime.class, "2024-05-01T10:15:30")).isInstanceOf(DateTimeParseException.class);
+        assertThatThrownBy(() -> map("yyyy-MM-dd'T'HH:mm:ss", Instant.class, "2024-05-01T10:15+01")).isInstanceOf(DateTimeParseException.class);
+        assertThatThrownBy(() -> map(null, Instant.class, "2024-13-01")).isInstanceOf(DateTimeParseException.class);
+    }
+
+    @Test
+    void epoch() {
+        assertThat(map(null, Instant.class, 1714551330123L)).isEqualTo(Instant.parse("2024-05-01T08:15:30.123Z"));
+        assertThat(map(Source.EPOCH_MILLIS, Instant.class, "1714551330123")).isEqualTo(Instant.parse("2024-05-01T08:15:30.123Z"));
+        assertThat(map(Source.EPOCH_SECONDS, Instant.class, 1714551330)).isEqualTo(Instant.parse("2024-05-01T08:15:30Z"));
+        assertThat(map(Source.EPOCH_SECONDS, Instant.class, 1714551330.25)).isEqualTo(Instant.parse("2024-05-01T08:15:30.25Z"));
+        assertThat(map(Source.EPOCH_SECONDS, LocalDateTime.class, "1714551330")).isEqualTo(LocalDateTime.of(2024, 5, 1, 8, 15, 30));
+    }
+
+    @Test
+    void otherTypes() {
+        assertThat(DateTimeLeafMapper.INSTANCE.mayMap(new MappedFieldImpl("date", Duration.class, EffectiveSource.builder().build()), String.class)).isFalse();
+        assertThat(DateTimeLeafMapper.INSTANCE.mayMap(new MappedFieldImpl("date", Instant.class, EffectiveSource.builder().build()), Boolean.class)).isFalse();
+        assertThat(map(null, Duration.class, "2024-05-01")).isNull();
+    }
+}
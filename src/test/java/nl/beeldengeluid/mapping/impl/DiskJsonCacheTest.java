@@ -0,0 +1,118 @@
+package nl.beeldengeluid.mapping.impl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import nl.beeldengeluid.mapping.CacheStats;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DiskJsonCacheTest {
+
+    static final String JSON = """
+        {"a": [1, 2.5, 12345678901, 123456789012345678901234567890, 1.50], "b": "xé€", "c": {"d": null, "e": true, "f": false}, "": []}
+        """;
+
+    @Test
+    void reopen(@TempDir Path directory) throws IOException {
+        JsonNode parsed = JsonUtil.parse(JSON, null);
+        try (DiskJsonCache disk = DiskJsonCache.open(directory)) {
+            assertThat(disk.get(JSON)).isEqualTo(parsed);
+            assertThat(disk.get(JSON)).isNotSameAs(parsed).isEqualTo(parsed);
+            assertThat(disk.get(JSON.getBytes(StandardCharsets.UTF_8))).isEqualTo(parsed);
+            assertThat(disk.stats()).isEqualTo(new CacheStats("diskJson " + directory, 1, 2, 2));
+        }
+        assertThat(Files.size(directory.resolve("segment-00000.bin"))).isLessThan(2L * JSON.length());
+
+        try (DiskJsonCache disk = DiskJsonCache.open(directory)) {
+            assertThat(disk.get(JSON)).isEqualTo(parsed);
+            assertThat(disk.get(JSON.getBytes(StandardCharsets.UTF_8))).isEqualTo(parsed);
+            assertThat(disk.get("[]")).isEqualTo(JsonUtil.parse("[]", null));
+            assertThat(disk.stats()).isEqualTo(new CacheStats("diskJson " + directory, 2, 1, 3));
+        }
+    }
+
+    @Test
+    void segments(@TempDir Path directory) throws IOException {
+        try (DiskJsonCache disk = DiskJsonCache.open(directory, 100)) {
+            for (int i = 0; i < 10; i++) {
+                disk.get("[" + i + ", \"some text to fill the segment\"]");
+            }
+            // too large, parsed, but not stored
+            assertThat(disk.get("\"" + "x".repeat(200) + "\"").textValue()).hasSize(200);
+            assertThat(disk.stats().size()).isEqualTo(10);
+        }
+        assertThat(Files.list(directory)).hasSizeGreaterThan(1);
+        try (DiskJsonCache disk = DiskJsonCache.open(directory, 100)) {
+            for (int i = 0; i < 10; i++) {
+                assertThat(disk.get("[" + i + ", \"some text to fill the segment\"]").get(0).intValue()).isEqualTo(i);
+            }
+            assertThat(disk.stats().hits()).isEqualTo(10);
+        }
+    }
+
+    @Test
+    void behindContentJsonCache(@TempDir Path directory) throws IOException {
+        try (DiskJsonCache disk = DiskJsonCache.open(directory)) {
+            ContentJsonCache shared = new ContentJsonCache("test", 1_000, disk);
+            JsonPointerFilter filter = JsonPointerFilter.of(List.of("/b"));
+            assertThat(shared.get(JSON, filter).get("b").textValue()).isEqualTo("xé€");
+            assertThat(shared.get(JSON, null).get("a").size()).isEqualTo(5);
+            assertThat(disk.stats().misses()).isEqualTo(1);
+            assertThat(disk.stats().hits()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void corrupt(@TempDir Path directory) throws IOException {
+        JsonNode parsed = JsonUtil.parse(JSON, null);
+        try (DiskJsonCache disk = DiskJsonCache.open(directory)) {
+            disk.get(JSON);
+        }
+        // a torn record is not indexed
+        corrupt(directory.resolve("segment-00000.bin"), DiskJsonCache.HEADER + 10);
+        try (DiskJsonCache disk = DiskJsonCache.open(directory)) {
+            assertThat(disk.stats().size()).isEqualTo(0);
+            assertThat(disk.get(JSON)).isEqualTo(parsed);
+            assertThat(disk.stats().misses()).isEqualTo(1);
+
+            // corrupted while in use, it is parsed again
+            corrupt(directory.resolve("segment-00000.bin"), DiskJsonCache.HEADER);
+            assertThat(disk.get(JSON)).isEqualTo(parsed);
+            assertThat(disk.stats().misses()).isEqualTo(2);
+            assertThat(disk.get(JSON)).isEqualTo(parsed);
+            assertThat(disk.stats().hits()).isEqualTo(1);
+        }
+    }
+
+    private static void corrupt(Path file, long position) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {99}), position);
+        }
+    }
+
+    @Test
+    void closed(@TempDir Path directory) throws IOException {
+        DiskJsonCache disk = DiskJsonCache.open(directory);
+        disk.get(JSON);
+        disk.close();
+        long size = Files.size(directory.resolve("segment-00000.bin"));
+
+        assertThat(disk.get(JSON)).isEqualTo(JsonUtil.parse(JSON, null));
+        assertThat(disk.get("[1]")).isEqualTo(JsonUtil.parse("[1]", null));
+        assertThat(Files.size(directory.resolve("segment-00000.bin"))).isEqualTo(size);
+        assertThat(disk.stats().size()).isZero();
+        disk.close();
+    }
+}
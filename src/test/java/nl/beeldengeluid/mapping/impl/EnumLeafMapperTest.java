@@ -0,0 +1,61 @@
+package nl.beeldengeluid.mapping.impl;
+
+import java.util.Map;
+
+import jakarta.xml.bind.annotation.XmlEnumValue;
+
+import org.junit.jupiter.api.Test;
+
+import nl.beeldengeluid.mapping.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EnumLeafMapperTest {
+
+    enum Letters {
+        @XmlEnumValue("alfa")
+        a,
+        A,
+        @XmlEnumValue("b")
+        beta,
+        b
+    }
+
+    static final EffectiveSource SOURCE = EffectiveSource.builder().build();
+    static final MappedField FIELD = new MappedFieldImpl("letter", Letters.class, SOURCE);
+
+    static Object map(EnumLeafMapper enumLeafMapper, String value) {
+        LeafResult result = new LeafResult();
+        return enumLeafMapper.mapInto(Mapper.MAPPER, SOURCE, FIELD, value, result) ? result.value() : null;
+    }
+
+    @Test
+    void caseSensitive() {
+        EnumLeafMapper mapper = new EnumLeafMapper(true, true);
+        assertThat(map(mapper, "a")).isEqualTo(Letters.a);
+        assertThat(map(mapper, "A")).isEqualTo(Letters.A);
+        assertThat(map(mapper, "alfa")).isEqualTo(Letters.a);
+        assertThat(map(mapper, "ALFA")).isNull();
+        assertThat(map(mapper, "b")).isEqualTo(Letters.beta);
+    }
+
+    @Test
+    void ignoringCase() {
+        EnumLeafMapper mapper = new EnumLeafMapper(true, false);
+        // the first constant that matches, like String#equalsIgnoreCase would find
+        assertThat(map(mapper, "A")).isEqualTo(Letters.a);
+        assertThat(map(mapper, "ALFA")).isEqualTo(Letters.a);
+        assertThat(map(mapper, "B")).isEqualTo(Letters.beta);
+        assertThat(map(new EnumLeafMapper(false, false), "B")).isEqualTo(Letters.b);
+        assertThat(map(mapper, "c")).isNull();
+    }
+
+    @Test
+    void fallback() {
+        EnumLeafMapper mapper = new EnumLeafMapper(true, false).withFallback(Letters.b);
+        assertThat(mapper.fallbacks()).isEqualTo(Map.of(Letters.class, Letters.b));
+        assertThat(map(mapper, "c")).isEqualTo(Letters.b);
+        assertThat(map(mapper, "a")).isEqualTo(Letters.a);
+        assertThat(mapper.map(Mapper.MAPPER, SOURCE, FIELD, "c").result()).isEqualTo(Letters.b);
+    }
+}
@@ -0,0 +1,46 @@
+package nl.beeldengeluid.mapping.impl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class JsonCacheTest {
+
+    @Test
+    void identity() {
+        JsonCache cache = new JsonCache();
+        String json = "{\"a\": 1}";
+        String equalJson = new String(json);
+        JsonNode parsed = JsonUtil.getJson(json, null, cache);
+        assertThat(JsonUtil.getJson(json, null, cache)).isSameAs(parsed);
+        assertThat(JsonUtil.getJson(equalJson, null, cache)).isNotSameAs(parsed).isEqualTo(parsed);
+        assertThat(cache.size()).isEqualTo(2);
+        cache.clear();
+        assertThat(cache.isEmpty()).isTrue();
+    }
+
+    @Test
+    void bounded() {
+        AtomicInteger computed = new AtomicInteger();
+        JsonCache cache = new JsonCache(2);
+        Object a = new Object();
+        Object b = new Object();
+        Object c = new Object();
+        cache.get(a, null, computed::incrementAndGet);
+        cache.get(b, null, computed::incrementAndGet);
+        assertThat(cache.<Integer>get(a, null, computed::incrementAndGet)).isEqualTo(1);
+        // evicts b, which was used least recently
+        cache.get(c, null, computed::incrementAndGet);
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.<Integer>get(a, null, computed::incrementAndGet)).isEqualTo(1);
+        assertThat(cache.<Integer>get(b, null, computed::incrementAndGet)).isEqualTo(4);
+        assertThat(cache.toString()).isEqualTo("JsonCache 2/2");
+
+        assertThatThrownBy(() -> new JsonCache(0)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
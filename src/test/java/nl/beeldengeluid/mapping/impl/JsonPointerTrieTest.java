@@ -0,0 +1,56 @@
+package nl.beeldengeluid.mapping.impl;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JsonPointerTrieTest {
+
+    @Test
+    void evaluate() {
+        JsonNode json = JsonUtil.getJson("""
+            {
+              "a": {"b": 1, "c": {"d": 2}},
+              "list": [1, {"x": 1}, [2], {"x": 3, "y": 4}],
+              "object": {"0": "zero"},
+              "a/b": 5,
+              "scalar": 1
+            }
+            """);
+        List<String> pointers = List.of("/a/b", "/a/c/d", "/a", "/list/3/x", "/list/2/0", "/list/9", "/object/0", "/a~1b", "/scalar/b", "/missing/value", "", "/a/b");
+        JsonPointerTrie trie = JsonPointerTrie.of(pointers);
+        assertThat(trie.size()).isEqualTo(pointers.size() - 1);
+        assertThat(trie.slot("/unknown")).isEqualTo(-1);
+
+        JsonNode[] result = trie.evaluate(json);
+        for (String pointer : pointers) {
+            assertThat(result[trie.slot(pointer)]).as(pointer).isEqualTo(json.at(pointer));
+        }
+        assertThat(result[trie.slot("/list/3/x")].intValue()).isEqualTo(3);
+        assertThat(result[trie.slot("/object/0")].textValue()).isEqualTo("zero");
+        assertThat(result[trie.slot("/missing/value")].isMissingNode()).isTrue();
+        JsonUtil.clearCache();
+    }
+
+    @Test
+    void getJsonNodes() {
+        String json = """
+            {"a": {"b": 1, "c": 2}, "d": 3}
+            """;
+        JsonPointerTrie trie = JsonPointerTrie.of(List.of("/a/b", "/a/c"));
+        JsonPointerFilter filter = JsonPointerFilter.of(List.of("/a/b", "/a/c"));
+        JsonUtil.clearCache();
+        JsonNode[] nodes = JsonUtil.getJsonNodes(json, filter, trie);
+        assertThat(nodes[trie.slot("/a/b")].intValue()).isEqualTo(1);
+        assertThat(nodes[trie.slot("/a/c")].intValue()).isEqualTo(2);
+
+        // evaluated only once per json
+        assertThat(JsonUtil.getJsonNodes(json, filter, trie)).isSameAs(nodes);
+        assertThat(JsonUtil.cache().size()).isEqualTo(2);
+        JsonUtil.clearCache();
+    }
+}
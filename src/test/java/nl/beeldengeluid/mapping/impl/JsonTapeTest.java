@@ -0,0 +1,73 @@
+package nl.beeldengeluid.mapping.impl;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.core.JsonPointer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class JsonTapeTest {
+
+    static final String JSON = """
+        {
+          "a": [1, -2, 2.5, 12345678901, 123456789012345678901234567890, 1e3, 0, -0],
+          "b": "xé€",
+          "c\\"d": {"e": null, "f": true, "g": false, "h": "a\\nb \\u20ac"},
+          "": [[], {}, [{"i": "j"}]],
+          "0": "zero"
+        }
+        """;
+
+    @Test
+    void tree() {
+        JsonTape tape = JsonTape.of(JSON.getBytes(StandardCharsets.UTF_8));
+        assertThat(tape.size()).isEqualTo(33);
+        assertThat(tape.tree()).isEqualTo(JsonUtil.parse(JSON, null));
+        assertThat(JsonTape.of(JSON).tree()).isEqualTo(JsonUtil.parse(JSON, null));
+    }
+
+    @Test
+    void at() {
+        JsonTape tape = JsonTape.of(JSON);
+        for (String pointer : new String[] {"", "/a", "/a/0", "/a/3", "/a/4", "/a/5", "/a/7", "/a/8", "/b", "/c\"d/h", "/c\"d/e", "/c\"d/x", "//2/0/i", "//1", "/0", "/b/0", "/x/y"}) {
+            assertThat(tape.at(pointer)).as(pointer).isEqualTo(JsonUtil.parse(JSON, null).at(JsonPointer.compile(pointer)));
+        }
+        assertThat(tape.at("/x").isMissingNode()).isTrue();
+    }
+
+    @Test
+    void lenient() {
+        String json = "{a: 'b' /* comment */}";
+        JsonTape tape = JsonTape.of(json);
+        assertThat(tape.size()).isEqualTo(-1);
+        assertThat(tape.at("/a").textValue()).isEqualTo("b");
+    }
+
+    @Test
+    void scalar() {
+        assertThat(JsonTape.of(" \"x\" ").tree().textValue()).isEqualTo("x");
+        assertThat(JsonTape.of("12").tree().intValue()).isEqualTo(12);
+    }
+
+    @Test
+    void duplicateProperties() {
+        String json = "{\"a\": 1, \"b\": {\"c\": 1}, \"a\": 2, \"b\": {\"c\": 2}}";
+        JsonTape tape = JsonTape.of(json);
+        assertThat(tape.at("/a").intValue()).isEqualTo(2);
+        assertThat(tape.at("/b/c").intValue()).isEqualTo(2);
+        assertThat(tape.at("/a")).isEqualTo(JsonUtil.parse(json, null).at("/a"));
+        assertThat(tape.tree()).isEqualTo(JsonUtil.parse(json, null));
+    }
+
+    @Test
+    void controlCharacters() {
+        // like jackson, which refuses unescaped control characters in strings
+        assertThatThrownBy(() -> JsonTape.of("{\"a\": \"x\ty\"}")).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> JsonTape.of("{\"a\u0001\": 1}")).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> JsonTape.of("[\"\\x\"]")).isInstanceOf(IllegalStateException.class);
+        assertThat(JsonTape.of("{\"a\": \"x\\ty\"}").at("/a").textValue()).isEqualTo("x\ty");
+    }
+}
@@ -5,6 +5,7 @@ import lombok.extern.log4j.Log4j2;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.function.UnaryOperator;
 
 import org.junit.jupiter.api.Test;
 
@@ -17,14 +18,17 @@ import com.jayway.jsonpath.spi.json.JsonProvider;
 import com.jayway.jsonpath.spi.mapper.JacksonMappingProvider;
 import com.jayway.jsonpath.spi.mapper.MappingProvider;
 
+import nl.beeldengeluid.mapping.EffectiveSource;
 import nl.beeldengeluid.mapping.destinations.Destination;
 import nl.beeldengeluid.mapping.destinations.SubDestinationObject;
 import nl.beeldengeluid.mapping.sources.ExtendedSourceObject;
 import nl.beeldengeluid.mapping.sources.SourceObject;
 
 import static nl.beeldengeluid.mapping.Mapper.MAPPER;
+import static nl.beeldengeluid.mapping.annotations.Source.UNSET;
 import static nl.vpro.test.util.jackson2.Jackson2TestUtil.assertThatJson;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 @Log4j2
 class JsonUtilTest {
@@ -73,6 +77,12 @@ class JsonUtilTest {
            List.of(1, 2, 3),
            "text"
        );
+       // lazy and read-only
+       assertThat(unwrapped).isInstanceOf(JsonArrayView.class);
+       assertThat(((JsonArrayView) unwrapped).node()).isSameAs(node);
+       assertThat(unwrapped.get(4)).isInstanceOf(JsonArrayView.class);
+       assertThatThrownBy(() -> unwrapped.add("x")).isInstanceOf(UnsupportedOperationException.class);
+       assertThatThrownBy(() -> unwrapped.get(6)).isInstanceOf(IndexOutOfBoundsException.class);
     }
 
     @Test
@@ -199,4 +209,64 @@ class JsonUtilTest {
 
 
 
+    @Test
+    void filtered() {
+        String json = """
+            {
+              "a": {"b": 1, "c": 2},
+              "list": [1, {"x": 1}, [2], {"x": 3, "y": 4}, 5],
+              "scalar": 1,
+              "other": {"b": 1}
+            }
+            """;
+        JsonPointerFilter filter = JsonPointerFilter.of(List.of("/a/b", "/list/3/x", "/scalar/b", "/other", "/a/b"));
+        JsonNode parsed = JsonUtil.getJson(json, filter);
+        assertThat(parsed.toString()).isEqualTo("""
+            {"a":{"b":1},"list":[1,{},[],{"x":3}],"other":{"b":1}}""");
+        for (String pointer : List.of("/a/b", "/list/3/x", "/other/b")) {
+            assertThat(parsed.at(pointer)).isEqualTo(JsonUtil.getJson(json).at(pointer));
+        }
+        assertThat(JsonUtil.getJson(json, filter)).isSameAs(parsed);
+        assertThat(JsonUtil.getJson(json)).isNotSameAs(parsed);
+        assertThat(JsonPointerFilter.of(List.of("/a", ""))).isNull();
+        JsonUtil.clearCache();
+    }
+
+    @Test
+    void definitePointer() {
+        assertThat(JsonUtil.definitePointer("date")).isEqualTo("/date");
+        assertThat(JsonUtil.definitePointer("$.a.b[0]")).isEqualTo("/a/b/0");
+        assertThat(JsonUtil.definitePointer("$['a/b~c']")).isEqualTo("/a~1b~0c");
+        assertThat(JsonUtil.definitePointer("$.a[*]")).isNull();
+        assertThat(JsonUtil.definitePointer("$..a")).isNull();
+        assertThat(JsonUtil.definitePointer("$.a[0,1]")).isNull();
+        assertThat(JsonUtil.definitePointer("$.a['x','y']")).isNull();
+        assertThat(JsonUtil.definitePointer("$.a[?(@.b)]")).isNull();
+        assertThat(JsonUtil.definitePointer("$.a[-1]")).isNull();
+        assertThat(JsonUtil.definitePointer("$.a[1:2]")).isNull();
+        assertThat(JsonUtil.definitePointer("$")).isNull();
+    }
+
+    @Test
+    void navigator() {
+        JsonNode json = JsonUtil.getJson("""
+            {"a": {"b": [1, {"c": "x"}]}, "list": [{"c": "y"}, {"c": "z"}]}
+            """);
+        assertThat(navigator("/a/b/1/c", UNSET).apply(json).textValue()).isEqualTo("x");
+        assertThat(navigator(UNSET, "$.a.b[1].c").apply(json).textValue()).isEqualTo("x");
+        assertThat(navigator(UNSET, "$.list[*].c").apply(json).toString()).isEqualTo("[\"y\",\"z\"]");
+        assertThat(navigator(UNSET, "$.list[-1].c").apply(json).textValue()).isEqualTo("z");
+
+        // missing values don't throw
+        assertThat(navigator("/a/x/y", UNSET).apply(json).isMissingNode()).isTrue();
+        assertThat(navigator(UNSET, "$.a.x.y").apply(json).isMissingNode()).isTrue();
+        assertThat(navigator(UNSET, "$.list[-1].x").apply(json).isNull()).isTrue();
+        assertThat(navigator(UNSET, "$.list[*].x").apply(json)).isEmpty();
+        JsonUtil.clearCache();
+    }
+
+    private static UnaryOperator<JsonNode> navigator(String jsonPointer, String jsonPath) {
+        return JsonUtil.navigator(EffectiveSource.builder().jsonPointer(jsonPointer).jsonPath(jsonPath).build());
+    }
+
 }
@@ -0,0 +1,67 @@
+package nl.beeldengeluid.mapping.impl;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+import nl.beeldengeluid.mapping.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UnwrapCollectionsLeafMapperTest {
+
+    static final EffectiveSource SOURCE = EffectiveSource.builder().leafMappers(List.of()).build();
+
+    List<Long> longs;
+    List<Object> list;
+    Set<Object> objects;
+    Integer[] integers;
+    Map<Integer, String> byNumber;
+
+    static Object map(UnwrapCollectionsLeafMapper unwrap, String field, Object value) {
+        LeafResult result = new LeafResult();
+        MappedField mappedField = MappedField.of(UnwrapCollectionsLeafMapperTest.class, field, SOURCE);
+        return unwrap.mapInto(Mapper.MAPPER, SOURCE, mappedField, value, result) ? result.value() : null;
+    }
+
+    @Test
+    void sources() {
+        assertThat(map(UnwrapCollectionsLeafMapper.INSTANCE, "longs", new TreeSet<>(List.of(2, 1)))).isEqualTo(List.of(1L, 2L));
+        assertThat(map(UnwrapCollectionsLeafMapper.INSTANCE, "longs", new Object[] {"1", 2})).isEqualTo(List.of(1L, 2L));
+        assertThat(map(UnwrapCollectionsLeafMapper.INSTANCE, "longs", new int[] {1, 2})).isEqualTo(List.of(1L, 2L));
+        assertThat(map(UnwrapCollectionsLeafMapper.INSTANCE, "integers", List.of("1", 2L))).isEqualTo(new Integer[] {1, 2});
+        assertThat(map(UnwrapCollectionsLeafMapper.INSTANCE, "byNumber", Map.of("1", "a"))).isEqualTo(Map.of(1, "a"));
+    }
+
+    @Test
+    void untyped() {
+        Set<Object> set = Set.of("a");
+        // nothing to do
+        assertThat(map(UnwrapCollectionsLeafMapper.INSTANCE, "objects", set)).isNull();
+        // but it can be collected in a set
+        assertThat(map(UnwrapCollectionsLeafMapper.INSTANCE, "objects", List.of("a", "a"))).isEqualTo(set);
+    }
+
+    @Test
+    void parallel() {
+        UnwrapCollectionsLeafMapper parallel = UnwrapCollectionsLeafMapper.INSTANCE.withParallelThreshold(1000);
+        assertThat(parallel.parallelThreshold()).isEqualTo(1000);
+        List<Integer> values = IntStream.range(0, 10_000).boxed().toList();
+        List<Long> expected = IntStream.range(0, 10_000).mapToObj(i -> (long) i).toList();
+        assertThat(map(parallel, "longs", values)).isEqualTo(expected);
+        assertThat(map(parallel, "longs", values.toArray())).isEqualTo(expected);
+        assertThat(map(parallel, "longs", new LinkedList<>(values))).isEqualTo(expected);
+    }
+
+    @Test
+    void jsonArrayView() {
+        Object view = JsonUtil.unwrapJson(JsonUtil.getJson("[1, \"2\", [3]]"));
+        assertThat(view).isInstanceOf(JsonArrayView.class);
+        Object mapped = map(UnwrapCollectionsLeafMapper.INSTANCE, "list", view);
+        // even if nothing needs mapping, the read-only view is copied
+        assertThat(mapped).isInstanceOf(ArrayList.class).isEqualTo(List.of(1, "2", List.of(3)));
+        assertThat(map(UnwrapCollectionsLeafMapper.INSTANCE, "longs", JsonUtil.unwrapJson(JsonUtil.getJson("[1, \"2\"]")))).isEqualTo(List.of(1L, 2L));
+        JsonUtil.clearCache();
+    }
+}
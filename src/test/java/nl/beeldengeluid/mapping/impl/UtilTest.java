@@ -2,6 +2,8 @@ package nl.beeldengeluid.mapping.impl;
 
 import lombok.extern.log4j.Log4j2;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Field;
 import java.util.List;
 import java.util.Optional;
@@ -10,6 +12,9 @@ import org.junit.jupiter.api.Test;
 
 import com.jayway.jsonpath.JsonPath;
 
+import nl.beeldengeluid.mapping.EffectiveSource;
+import nl.beeldengeluid.mapping.destinations.CustomLeafMapper;
+import nl.beeldengeluid.mapping.destinations.Destination;
 import nl.beeldengeluid.mapping.sources.*;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -33,6 +38,20 @@ class UtilTest {
        }
    }
 
+   @Test
+   void handlesPerLookup() throws Throwable {
+       Field field = SourceObject.class.getDeclaredField("title");
+       MethodHandle getter = Util.getter(MethodHandles.lookup(), field);
+       assertThat(Util.getter(MethodHandles.lookup(), field)).isSameAs(getter);
+       // not the handle created with the private access of the other lookup
+       assertThat(Util.getter(MethodHandles.publicLookup(), field)).isNotSameAs(getter);
+       assertThat(Util.setter(MethodHandles.lookup(), field)).isNotSameAs(Util.setter(MethodHandles.publicLookup(), field));
+
+       SourceObject source = new SourceObject();
+       source.title("x");
+       assertThat((Object) getter.invokeExact((Object) source)).isEqualTo("x");
+   }
+
    @Test
    void getSourceValue() {
        SourceObject source = new SourceObject();
@@ -59,6 +78,16 @@ class UtilTest {
         assertThat(id).contains(123L);
     }
 
+    @Test
+    void getAnnotationIsShared() throws NoSuchFieldException {
+        Field field = Destination.class.getDeclaredField("withCustomLeafMapperAndAnnotation");
+        List<EffectiveSource> first = Util.getAnnotation(SourceObject.class, Destination.class, field);
+        List<EffectiveSource> second = Util.getAnnotation(ExtendedSourceObject.class, Destination.class, field);
+        assertThat(first).hasSize(1);
+        assertThat(second.get(0)).isSameAs(first.get(0));
+        assertThat(first.get(0).leafMappers().get(0)).isSameAs(EffectiveSource.instantiateMapper(CustomLeafMapper.class));
+    }
+
     @Test
     void smartPath() {
        var test = """
@@ -0,0 +1,15 @@
+package nl.beeldengeluid.mapping.sources;
+
+import lombok.*;
+
+/**
+ * A source with json in any of the forms it can be parsed from, like a {@link java.nio.ByteBuffer} or a {@link java.nio.file.Path}.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class AnyJsonSource {
+
+    Object json;
+
+}
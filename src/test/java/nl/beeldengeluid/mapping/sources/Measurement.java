@@ -0,0 +1,15 @@
+package nl.beeldengeluid.mapping.sources;
+
+import lombok.*;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class Measurement {
+
+    long count;
+    int size;
+    double ratio;
+    boolean flag;
+    String json;
+}
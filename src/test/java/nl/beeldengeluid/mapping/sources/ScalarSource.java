@@ -0,0 +1,15 @@
+package nl.beeldengeluid.mapping.sources;
+
+import lombok.*;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ScalarSource {
+
+    String a;
+    String b;
+    String c;
+    Long d;
+    Integer e;
+}